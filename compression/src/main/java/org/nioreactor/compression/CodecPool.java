@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.compression;
+
+import org.nioreactor.AttributeKey;
+import org.nioreactor.SessionContext;
+import org.nioreactor.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of {@link Deflater} and {@link Inflater} instances reused across sessions.
+ * <p>
+ * Creating a codec allocates native zlib state that, unless ended explicitly, is only freed once the codec is
+ * garbage collected. A pool keeps the codecs of closed sessions, reset, for the next sessions and ends the ones it
+ * has no room for. Not thread safe: listeners are created once per worker, so a pool held by the listener is only
+ * used by that worker.
+ */
+public final class CodecPool {
+
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    private static final AttributeKey<StreamDeflater> DEFLATER =
+            new AttributeKey<>("CodecPool.DEFLATER", StreamDeflater.class);
+    private static final AttributeKey<StreamInflater> INFLATER =
+            new AttributeKey<>("CodecPool.INFLATER", StreamInflater.class);
+
+    private final ArrayDeque<Deflater> deflaters = new ArrayDeque<>();
+    private final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+    private final int level;
+    private final boolean nowrap;
+    private final int maxIdle;
+    private final ByteBuffer dictionary;
+
+    public CodecPool() {
+        this(Deflater.DEFAULT_COMPRESSION, false, DEFAULT_MAX_IDLE, null);
+    }
+
+    /**
+     * @param level      the compression level, {@link Deflater#DEFAULT_COMPRESSION} or 0 to 9.
+     * @param nowrap     {@code true} for raw deflate data, {@code false} for the zlib format.
+     * @param maxIdle    the maximum number of idle deflaters and of idle inflaters kept.
+     * @param dictionary the preset dictionary, or {@code null} for none. Its remaining bytes are copied.
+     */
+    public CodecPool(final int level, final boolean nowrap, final int maxIdle, final ByteBuffer dictionary) {
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+                || level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION, "invalid level");
+        Preconditions.checkArgument(maxIdle >= 0, "max idle < 0");
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maxIdle = maxIdle;
+        this.dictionary = dictionary == null ? null
+                : ByteBuffer.allocate(dictionary.remaining()).put(dictionary.duplicate()).flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Takes a deflater stream from the pool.
+     *
+     * @return the stream, to be handed back with {@link #release(StreamDeflater)}.
+     */
+    public StreamDeflater deflater() {
+        final Deflater deflater = this.deflaters.isEmpty() ? new Deflater(this.level, this.nowrap) : this.deflaters.pop();
+        if (this.dictionary != null) {
+            deflater.setDictionary(this.dictionary.duplicate());
+        }
+        return new StreamDeflater(deflater);
+    }
+
+    /**
+     * Takes an inflater stream from the pool.
+     *
+     * @return the stream, to be handed back with {@link #release(StreamInflater)}.
+     */
+    public StreamInflater inflater() {
+        final Inflater inflater = this.inflaters.isEmpty() ? new Inflater(this.nowrap) : this.inflaters.pop();
+        if (this.dictionary != null && this.nowrap) {
+            // raw streams do not ask for their dictionary
+            inflater.setDictionary(this.dictionary.duplicate());
+        }
+        return new StreamInflater(inflater, this.dictionary);
+    }
+
+    /**
+     * Hands a stream back to this pool. It may come from another pool with the same settings, e.g. the one of the
+     * worker a session moved from. The stream cannot be used afterwards.
+     *
+     * @param stream the stream.
+     */
+    public void release(final StreamDeflater stream) {
+        final Deflater deflater = Preconditions.checkNotNull(stream, "stream is null").detach();
+        if (deflater == null) {
+            return;
+        }
+
+        if (this.deflaters.size() < this.maxIdle) {
+            deflater.reset();
+            this.deflaters.push(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Hands a stream back to this pool. It may come from another pool with the same settings, e.g. the one of the
+     * worker a session moved from. The stream cannot be used afterwards.
+     *
+     * @param stream the stream.
+     */
+    public void release(final StreamInflater stream) {
+        final Inflater inflater = Preconditions.checkNotNull(stream, "stream is null").detach();
+        if (inflater == null) {
+            return;
+        }
+
+        if (this.inflaters.size() < this.maxIdle) {
+            inflater.reset();
+            this.inflaters.push(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the deflater stream of the given session, taking one from the pool the first time.
+     *
+     * @param session the session.
+     * @return the session deflater.
+     */
+    public StreamDeflater deflater(final SessionContext session) {
+        StreamDeflater stream = session.getAttribute(DEFLATER);
+        if (stream == null) {
+            stream = deflater();
+            session.putAttribute(DEFLATER, stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the inflater stream of the given session, taking one from the pool the first time.
+     *
+     * @param session the session.
+     * @return the session inflater.
+     */
+    public StreamInflater inflater(final SessionContext session) {
+        StreamInflater stream = session.getAttribute(INFLATER);
+        if (stream == null) {
+            stream = inflater();
+            session.putAttribute(INFLATER, stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Hands the streams of the given session back to this pool. Called from
+     * {@link org.nioreactor.EventListener#disconnected}.
+     *
+     * @param session the session.
+     */
+    public void release(final SessionContext session) {
+        final StreamDeflater deflater = session.removeAttribute(DEFLATER);
+        if (deflater != null) {
+            release(deflater);
+        }
+        final StreamInflater inflater = session.removeAttribute(INFLATER);
+        if (inflater != null) {
+            release(inflater);
+        }
+    }
+
+    /**
+     * Returns the number of idle deflaters.
+     *
+     * @return the idle count.
+     */
+    public int idleDeflaters() {
+        return this.deflaters.size();
+    }
+
+    /**
+     * Returns the number of idle inflaters.
+     *
+     * @return the idle count.
+     */
+    public int idleInflaters() {
+        return this.inflaters.size();
+    }
+
+    /**
+     * Ends the idle codecs. Streams taken afterwards get new ones.
+     */
+    public void clear() {
+        Deflater deflater;
+        while ((deflater = this.deflaters.poll()) != null) {
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = this.inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+}
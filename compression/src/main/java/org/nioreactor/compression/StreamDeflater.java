@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Compressing side of a stream, deflating straight from and into byte buffers.
+ * <p>
+ * Each {@link #deflate} call ends with a sync flush, so the peer can decode everything written so far. Not thread
+ * safe: a stream belongs to one session and is used from its callbacks.
+ */
+public final class StreamDeflater {
+
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private Deflater deflater;
+
+    StreamDeflater(final Deflater deflater) {
+        this.deflater = deflater;
+    }
+
+    /**
+     * Compresses the remaining bytes of the source into the destination. When the destination fills up, the call
+     * must be repeated with the same source once the destination has been drained.
+     *
+     * @param src the bytes to compress, consumed as they are compressed.
+     * @param dst the buffer receiving the compressed bytes.
+     * @return {@code true} if the source has been consumed and flushed, {@code false} if the destination is full.
+     */
+    public boolean deflate(final ByteBuffer src, final ByteBuffer dst) {
+        final Deflater deflater = deflater();
+        deflater.setInput(src);
+        while (dst.hasRemaining()) {
+            final int space = dst.remaining();
+            if (deflater.deflate(dst, Deflater.SYNC_FLUSH) < space) {
+                // the flush fitted, so the input has been consumed too
+                deflater.setInput(NO_INPUT);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the end of the stream. When the destination fills up, the call must be repeated once the destination
+     * has been drained.
+     *
+     * @param dst the buffer receiving the compressed bytes.
+     * @return {@code true} if the stream has been finished, {@code false} if the destination is full.
+     */
+    public boolean finish(final ByteBuffer dst) {
+        final Deflater deflater = deflater();
+        deflater.finish();
+        while (dst.hasRemaining() && !deflater.finished()) {
+            deflater.deflate(dst);
+        }
+        return deflater.finished();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes consumed so far.
+     *
+     * @return the byte count.
+     */
+    public long bytesIn() {
+        return deflater().getBytesRead();
+    }
+
+    /**
+     * Returns the number of compressed bytes produced so far.
+     *
+     * @return the byte count.
+     */
+    public long bytesOut() {
+        return deflater().getBytesWritten();
+    }
+
+    /**
+     * Releases the native state right away, for streams that will not go back to a pool.
+     */
+    public void end() {
+        if (this.deflater != null) {
+            this.deflater.end();
+            this.deflater = null;
+        }
+    }
+
+    /**
+     * Detaches the deflater, leaving this stream unusable.
+     */
+    Deflater detach() {
+        final Deflater detached = this.deflater;
+        this.deflater = null;
+        return detached;
+    }
+
+    private Deflater deflater() {
+        if (this.deflater == null) {
+            throw new IllegalStateException("stream released");
+        }
+        return this.deflater;
+    }
+}
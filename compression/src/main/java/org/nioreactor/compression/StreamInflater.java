@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompressing side of a stream, inflating straight from and into byte buffers.
+ * <p>
+ * Not thread safe: a stream belongs to one session and is used from its callbacks.
+ */
+public final class StreamInflater {
+
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final ByteBuffer dictionary;
+    private Inflater inflater;
+
+    StreamInflater(final Inflater inflater, final ByteBuffer dictionary) {
+        this.inflater = inflater;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Decompresses as much of the source as the destination can take. Bytes left in the source, because the
+     * destination is full or they follow the end of the stream, stay there for the next call.
+     *
+     * @param src the compressed bytes, consumed as they are decompressed.
+     * @param dst the buffer receiving the decompressed bytes.
+     * @return the number of bytes written to the destination.
+     * @throws DataFormatException if the source is not a valid stream or needs a dictionary this stream has not.
+     */
+    public int inflate(final ByteBuffer src, final ByteBuffer dst) throws DataFormatException {
+        final Inflater inflater = inflater();
+        inflater.setInput(src);
+        try {
+            int count = 0;
+            while (dst.hasRemaining()) {
+                final int inflated = inflater.inflate(dst);
+                count += inflated;
+                if (inflated == 0) {
+                    if (!inflater.needsDictionary()) {
+                        // needs more input or finished
+                        break;
+                    }
+                    if (this.dictionary == null) {
+                        throw new DataFormatException("stream needs a preset dictionary");
+                    }
+                    inflater.setDictionary(this.dictionary.duplicate());
+                }
+            }
+            return count;
+        } finally {
+            inflater.setInput(NO_INPUT);
+        }
+    }
+
+    /**
+     * Checks if the end of the compressed stream has been reached.
+     *
+     * @return {@code true} if the stream is finished, {@code false} otherwise.
+     */
+    public boolean isFinished() {
+        return inflater().finished();
+    }
+
+    /**
+     * Returns the number of compressed bytes consumed so far.
+     *
+     * @return the byte count.
+     */
+    public long bytesIn() {
+        return inflater().getBytesRead();
+    }
+
+    /**
+     * Returns the number of decompressed bytes produced so far.
+     *
+     * @return the byte count.
+     */
+    public long bytesOut() {
+        return inflater().getBytesWritten();
+    }
+
+    /**
+     * Releases the native state right away, for streams that will not go back to a pool.
+     */
+    public void end() {
+        if (this.inflater != null) {
+            this.inflater.end();
+            this.inflater = null;
+        }
+    }
+
+    /**
+     * Detaches the inflater, leaving this stream unusable.
+     */
+    Inflater detach() {
+        final Inflater detached = this.inflater;
+        this.inflater = null;
+        return detached;
+    }
+
+    private Inflater inflater() {
+        if (this.inflater == null) {
+            throw new IllegalStateException("stream released");
+        }
+        return this.inflater;
+    }
+}
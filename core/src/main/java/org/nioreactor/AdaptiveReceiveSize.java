@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+/**
+ * Receive buffer size of a session, adapted to how much the previous reads filled the buffer.
+ * <p>
+ * A read filling the buffer quadruples the size, so bulk transfers quickly need fewer reads per wakeup. The size is
+ * halved only after two reads in a row would have fit in half of it, so a single short read does not shrink it.
+ * Sizes are powers of two.
+ */
+final class AdaptiveReceiveSize {
+
+    private static final int GROW_STEPS = 2;
+
+    private final int minShift;
+    private final int initialShift;
+    private final int maxShift;
+
+    // accessed by one thread at a time, the event loop or the thread running the session callbacks
+    private int shift;
+    private boolean shrink = false;
+
+    AdaptiveReceiveSize(final int minShift, final int initialShift, final int maxShift) {
+        this.minShift = minShift;
+        this.initialShift = initialShift;
+        this.maxShift = maxShift;
+        this.shift = initialShift;
+    }
+
+    /**
+     * Goes back to the initial size, for a recycled session.
+     */
+    void reset() {
+        this.shift = this.initialShift;
+        this.shrink = false;
+    }
+
+    /**
+     * Returns the size of the next read.
+     *
+     * @return the buffer size.
+     */
+    int size() {
+        return 1 << this.shift;
+    }
+
+    /**
+     * Records the number of bytes of the last read.
+     *
+     * @param bytes the bytes read into a buffer of {@link #size()} bytes.
+     */
+    void record(final int bytes) {
+        if (bytes >= size()) {
+            this.shift = Math.min(this.maxShift, this.shift + GROW_STEPS);
+            this.shrink = false;
+        } else if (this.shift > this.minShift && bytes <= size() >>> 1) {
+            if (this.shrink) {
+                this.shift--;
+                this.shrink = false;
+            } else {
+                this.shrink = true;
+            }
+        } else {
+            this.shrink = false;
+        }
+    }
+}
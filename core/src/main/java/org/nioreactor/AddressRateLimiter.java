@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Per remote address connection rate and concurrency limiter.
+ * <p>
+ * Entries live in a bounded open-addressing table keyed by the address as two longs (IPv4 addresses are stored in
+ * their IPv4-mapped IPv6 form) and probing is limited to a small neighbourhood. When the neighbourhood is full the
+ * least recently used entry without open connections is evicted. The rate is enforced with GCRA, so each entry
+ * needs a single timestamp. IPv4 keys are built without allocating.
+ * <p>
+ * Acquiring is confined to the acceptor thread. Releasing can happen from any thread: entries with open
+ * connections are never evicted, so their slot is stable while being looked up.
+ */
+final class AddressRateLimiter {
+
+    private static final int MAX_PROBES = 8;
+    private static final long IPV4_MAPPED_PREFIX = 0x0000ffff00000000L;
+
+    private final long[] keyHi;
+    private final long[] keyLo;
+    private final long[] theoreticalArrival;
+    private final long[] lastAccess;
+    private final AtomicIntegerArray connections;
+    private final int mask;
+    private final long interval;
+    private final long tolerance;
+    private final int maxConnections;
+
+    // acceptor thread only
+    private long clock = 0;
+
+    AddressRateLimiter(final int capacity, final int rate, final int burst, final int maxConnections) {
+        Preconditions.checkArgument(capacity > 0, "capacity <= 0");
+        Preconditions.checkArgument(rate >= 0, "rate < 0");
+        Preconditions.checkArgument(maxConnections >= 0, "max connections < 0");
+
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, MAX_PROBES - 1)) << 1;
+        this.keyHi = new long[size];
+        this.keyLo = new long[size];
+        this.theoreticalArrival = new long[size];
+        this.lastAccess = new long[size];
+        this.connections = new AtomicIntegerArray(size);
+        this.mask = size - 1;
+        this.interval = rate == 0 ? 0 : 1_000_000_000L / rate;
+        this.tolerance = this.interval * (Math.max(burst, 1) - 1);
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Tries to admit a new connection from the given address. Must be called from the acceptor thread.
+     *
+     * @param address the remote address.
+     * @param now     the current {@link System#nanoTime()}.
+     * @return {@code true} if the connection is admitted.
+     */
+    boolean tryAcquire(final InetAddress address, final long now) {
+        if (address instanceof Inet4Address) {
+            return tryAcquire(0, ipv4(address), now);
+        }
+
+        final byte[] bytes = address.getAddress();
+        return tryAcquire(toLong(bytes, 0), toLong(bytes, 8), now);
+    }
+
+    private boolean tryAcquire(final long hi, final long lo, final long now) {
+        final int slot = claim(hi, lo);
+        if (slot < 0) {
+            // every entry in the neighbourhood has open connections, fail open
+            return true;
+        }
+
+        this.lastAccess[slot] = ++this.clock;
+
+        final long arrival = Math.max(this.theoreticalArrival[slot], now);
+        if (this.interval > 0 && arrival - now > this.tolerance) {
+            return false;
+        }
+
+        // rate is only charged for admitted connections
+        if (this.maxConnections > 0) {
+            int current;
+            do {
+                current = this.connections.get(slot);
+                if (current >= this.maxConnections) {
+                    return false;
+                }
+            } while (!this.connections.compareAndSet(slot, current, current + 1));
+        }
+
+        if (this.interval > 0) {
+            this.theoreticalArrival[slot] = arrival + this.interval;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a connection previously admitted for the given address.
+     *
+     * @param address the remote address.
+     */
+    void release(final InetAddress address) {
+        if (this.maxConnections == 0) {
+            return;
+        }
+
+        final int slot;
+        if (address instanceof Inet4Address) {
+            slot = lookup(0, ipv4(address));
+        } else {
+            final byte[] bytes = address.getAddress();
+            slot = lookup(toLong(bytes, 0), toLong(bytes, 8));
+        }
+
+        if (slot >= 0) {
+            int current;
+            do {
+                current = this.connections.get(slot);
+                if (current == 0) {
+                    return;
+                }
+            } while (!this.connections.compareAndSet(slot, current, current - 1));
+        }
+    }
+
+    private int claim(final long hi, final long lo) {
+        int index = index(hi, lo);
+        int victim = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < MAX_PROBES; i++, index = (index + 1) & this.mask) {
+            if (this.lastAccess[index] == 0) {
+                return reset(index, hi, lo);
+            }
+            if (this.keyHi[index] == hi && this.keyLo[index] == lo) {
+                return index;
+            }
+            if (this.lastAccess[index] < oldest && this.connections.get(index) == 0) {
+                oldest = this.lastAccess[index];
+                victim = index;
+            }
+        }
+
+        return victim < 0 ? -1 : reset(victim, hi, lo);
+    }
+
+    private int reset(final int index, final long hi, final long lo) {
+        this.keyHi[index] = hi;
+        this.keyLo[index] = lo;
+        this.theoreticalArrival[index] = 0;
+        return index;
+    }
+
+    private int lookup(final long hi, final long lo) {
+        int index = index(hi, lo);
+        for (int i = 0; i < MAX_PROBES; i++, index = (index + 1) & this.mask) {
+            if (this.lastAccess[index] == 0) {
+                return -1;
+            }
+            if (this.keyHi[index] == hi && this.keyLo[index] == lo) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    private int index(final long hi, final long lo) {
+        long h = (hi * 0x9e3779b97f4a7c15L) ^ lo;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & this.mask;
+    }
+
+    private static long ipv4(final InetAddress address) {
+        // Inet4Address hash code is the address itself, getAddress() would copy the bytes on every accept
+        return IPV4_MAPPED_PREFIX | (address.hashCode() & 0xffffffffL);
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.nioreactor.ReactorOption.ACCEPT_BURST_PER_ADDRESS;
+import static org.nioreactor.ReactorOption.ACCEPT_RATE_PER_ADDRESS;
+import static org.nioreactor.ReactorOption.ADDRESS_TABLE_CAPACITY;
+import static org.nioreactor.ReactorOption.CONNECTIONS_LOW_WATERMARK;
+import static org.nioreactor.ReactorOption.MAX_CONNECTIONS;
+import static org.nioreactor.ReactorOption.MAX_CONNECTIONS_PER_ADDRESS;
+import static org.nioreactor.ReactorOption.OVERLOAD_POLICY;
+
+/**
+ * Tracks the number of open connections and decides whether new ones are admitted.
+ * <p>
+ * Connections are acquired by the acceptor and released by the workers once the session is gone. Optionally,
+ * the rate and number of connections from the same remote address are limited as well.
+ */
+public final class AdmissionControl {
+
+    private final AtomicInteger connections = new AtomicInteger(0);
+    private final AtomicLong workerAvailability = new AtomicLong(0);
+    private final int maxConnections;
+    private final int lowWatermark;
+    private final OverloadPolicy policy;
+    private final AddressRateLimiter addressLimiter;
+    private volatile boolean paused = false;
+    private volatile boolean limitReached = false;
+    private volatile boolean workersFull = false;
+    private volatile Runnable resumeHook = () -> {
+    };
+
+    public AdmissionControl(final ReactorConfig config) {
+        Preconditions.checkNotNull(config, "config is null");
+
+        this.maxConnections = config.option(MAX_CONNECTIONS);
+        Preconditions.checkArgument(this.maxConnections >= 0, "max connections < 0");
+
+        final int low = config.option(CONNECTIONS_LOW_WATERMARK);
+        this.lowWatermark = low < 0 ? (int) (this.maxConnections * 0.9) : low;
+        Preconditions.checkArgument(this.maxConnections == 0 || this.lowWatermark < this.maxConnections,
+                "low watermark >= max connections");
+
+        this.policy = config.option(OVERLOAD_POLICY);
+
+        final int rate = config.option(ACCEPT_RATE_PER_ADDRESS);
+        final int maxPerAddress = config.option(MAX_CONNECTIONS_PER_ADDRESS);
+        final int burst = config.option(ACCEPT_BURST_PER_ADDRESS);
+        this.addressLimiter = rate == 0 && maxPerAddress == 0 ? null :
+                new AddressRateLimiter(config.option(ADDRESS_TABLE_CAPACITY), rate, burst < 0 ? 1 : burst, maxPerAddress);
+    }
+
+    /**
+     * Tries to reserve a connection slot.
+     *
+     * @return {@code true} if the connection is admitted, {@code false} if the limit has been reached.
+     */
+    public boolean tryAcquire() {
+        if (this.maxConnections == 0) {
+            this.connections.incrementAndGet();
+            return true;
+        }
+
+        int current;
+        do {
+            current = this.connections.get();
+            if (current >= this.maxConnections) {
+                return false;
+            }
+        } while (!this.connections.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    /**
+     * Applies the per remote address limits to an accepted connection. Must be called from the acceptor thread
+     * after {@link #tryAcquire()}; if rejected the caller must {@link #release()} the connection slot.
+     *
+     * @param remoteAddress the remote address.
+     * @return {@code true} if the connection is admitted, {@code false} if the address limits have been reached.
+     */
+    public boolean tryAcquire(final SocketAddress remoteAddress) {
+        return this.addressLimiter == null || !(remoteAddress instanceof InetSocketAddress)
+                || this.addressLimiter.tryAcquire(((InetSocketAddress) remoteAddress).getAddress(), System.nanoTime());
+    }
+
+    /**
+     * Releases a connection admitted by both {@link #tryAcquire()} and {@link #tryAcquire(SocketAddress)}.
+     *
+     * @param remoteAddress the remote address.
+     */
+    public void release(final SocketAddress remoteAddress) {
+        if (this.addressLimiter != null && remoteAddress instanceof InetSocketAddress) {
+            this.addressLimiter.release(((InetSocketAddress) remoteAddress).getAddress());
+        }
+        release();
+    }
+
+    /**
+     * Releases a connection slot previously acquired.
+     */
+    public void release() {
+        final int current = this.connections.decrementAndGet();
+        if (this.limitReached && current <= this.lowWatermark) {
+            this.resumeHook.run();
+        }
+    }
+
+    /**
+     * Called by a worker that can take connections again, after releasing one of its connection slots or draining
+     * its handoff queue. Runs the resume hook if the acceptor waits for a worker.
+     */
+    void workerAvailable() {
+        this.workerAvailability.incrementAndGet();
+        if (this.workersFull) {
+            this.workersFull = false;
+            this.resumeHook.run();
+        }
+    }
+
+    /**
+     * Marks the acceptor as paused. The resume hook runs once connections drop below the low watermark.
+     */
+    void pause() {
+        this.limitReached = true;
+        this.paused = true;
+    }
+
+    /**
+     * Returns how many times workers became available so far. Read before a handover, it tells whether a worker
+     * freed up while the handover found them all full.
+     */
+    long workerAvailability() {
+        return this.workerAvailability.get();
+    }
+
+    /**
+     * Marks the acceptor as paused because no worker could take a connection. The resume hook runs once a worker
+     * becomes available.
+     *
+     * @param availability the {@link #workerAvailability()} read before the failed handover.
+     * @return {@code false} if a worker became available since, in which case the acceptor is not paused.
+     */
+    boolean pauseUntilWorkerAvailable(final long availability) {
+        this.workersFull = true;
+        if (this.workerAvailability.get() != availability) {
+            this.workersFull = false;
+            return false;
+        }
+
+        this.paused = true;
+        return true;
+    }
+
+    /**
+     * Checks if a paused acceptor can resume, clearing the paused flag if so.
+     *
+     * @return {@code true} if accepting should resume.
+     */
+    boolean tryResume() {
+        if (this.paused && !this.workersFull
+                && (!this.limitReached || this.connections.get() <= this.lowWatermark)) {
+            this.limitReached = false;
+            this.paused = false;
+            return true;
+        }
+
+        return false;
+    }
+
+    void resumeHook(final Runnable hook) {
+        this.resumeHook = Preconditions.checkNotNull(hook, "hook is null");
+    }
+
+    public OverloadPolicy policy() {
+        return this.policy;
+    }
+
+    public boolean isPaused() {
+        return this.paused;
+    }
+
+    public int connections() {
+        return this.connections.get();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("AdmissionControl{")
+                .append("connections=").append(connections())
+                .append(", maxConnections=").append(maxConnections)
+                .append(", lowWatermark=").append(lowWatermark)
+                .append(", policy=").append(policy)
+                .append(", paused=").append(paused)
+                .append('}')
+                .toString();
+    }
+}
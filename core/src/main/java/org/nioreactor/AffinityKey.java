@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Key of an accepted connection for {@link DispatchPolicy#CONSISTENT_HASH}. Connections with equal keys are
+ * dispatched to the same worker while it is not overloaded. Called from the acceptor thread.
+ */
+@FunctionalInterface
+public interface AffinityKey {
+
+    /**
+     * Keys connections by remote IP address, ignoring the port.
+     */
+    AffinityKey REMOTE_ADDRESS = channel -> {
+        final InetAddress address = channel.socket().getInetAddress();
+        if (address == null) {
+            return 0L;
+        }
+
+        long key = 0L;
+        for (final byte b : address.getAddress()) {
+            key = key * 31 + (b & 0xff);
+        }
+        return key;
+    };
+
+    /**
+     * Returns the key of the given connection. Keys need not be well distributed, they are hashed again.
+     *
+     * @param channel the accepted channel.
+     * @return the connection key.
+     */
+    long key(SocketChannel channel);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event listener that runs each session on its own thread using blocking-style I/O.
+ * <p>
+ * The session thread parks while the channel is not ready and is resumed by the worker selector, so the selector
+ * keeps multiplexing the sockets. By default virtual threads are used when the running JVM supports them,
+ * falling back to platform threads otherwise.
+ */
+public class BlockingEventListener implements EventListener {
+
+    private static final Logger LOG = Logger.getLogger(BlockingEventListener.class.getName());
+
+    private static final AttributeKey<DefaultBlockingSession> BLOCKING_SESSION =
+            new AttributeKey<>("BlockingEventListener.BLOCKING_SESSION", DefaultBlockingSession.class);
+
+    private final BlockingSessionHandler handler;
+    private final ThreadFactory threadFactory;
+
+    public BlockingEventListener(final BlockingSessionHandler handler, final ThreadFactory threadFactory) {
+        this.handler = Preconditions.checkNotNull(handler, "handler is null");
+        this.threadFactory = Preconditions.checkNotNull(threadFactory, "thread factory is null");
+    }
+
+    /**
+     * Creates a listener factory that runs sessions on virtual threads when available.
+     *
+     * @param handler the session handler.
+     * @return the event listener factory.
+     */
+    public static EventListenerFactory factory(final BlockingSessionHandler handler) {
+        return factory(handler, SessionThreadFactory.INSTANCE);
+    }
+
+    /**
+     * Creates a listener factory that runs sessions on threads created by the given factory.
+     *
+     * @param handler       the session handler.
+     * @param threadFactory the session thread factory.
+     * @return the event listener factory.
+     */
+    public static EventListenerFactory factory(final BlockingSessionHandler handler, final ThreadFactory threadFactory) {
+        Preconditions.checkNotNull(handler, "handler is null");
+        Preconditions.checkNotNull(threadFactory, "thread factory is null");
+        return () -> new BlockingEventListener(handler, threadFactory);
+    }
+
+    @Override
+    public void connected(final SessionContext session) {
+        final DefaultBlockingSession blockingSession = new DefaultBlockingSession(session);
+        session.putAttribute(BLOCKING_SESSION, blockingSession);
+
+        // the session thread may still use the session after it has been reported disconnected
+        final Runnable release = SessionHandle.hold(session);
+        try {
+            this.threadFactory.newThread(() -> {
+                try {
+                    handle(blockingSession);
+                } finally {
+                    release.run();
+                }
+            }).start();
+        } catch (final RuntimeException ex) {
+            release.run();
+            throw ex;
+        }
+    }
+
+    private void handle(final DefaultBlockingSession session) {
+        try {
+            this.handler.handle(session);
+        } catch (final ClosedChannelException ignore) {
+            // session terminated while waiting
+        } catch (final IOException e) {
+            LOG.log(Level.FINE, "I/O error", e);
+        } catch (final RuntimeException e) {
+            LOG.log(Level.SEVERE, "Unexpected error handling session", e);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void inputReady(final SessionContext session) {
+        session.getAttribute(BLOCKING_SESSION).signal(SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void outputReady(final SessionContext session) {
+        session.getAttribute(BLOCKING_SESSION).signal(SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void shuttingDown(final SessionContext session) {
+        session.getAttribute(BLOCKING_SESSION).shuttingDown();
+    }
+
+    @Override
+    public void disconnected(final SessionContext session) {
+        final DefaultBlockingSession blockingSession = session.removeAttribute(BLOCKING_SESSION);
+        if (blockingSession != null) {
+            blockingSession.disconnect();
+        }
+    }
+
+    /**
+     * Uses {@code Thread.ofVirtual()} when running on a JVM that supports virtual threads.
+     */
+    private static final class SessionThreadFactory implements ThreadFactory {
+
+        private static final SessionThreadFactory INSTANCE = new SessionThreadFactory();
+        private static final AtomicLong COUNTER = new AtomicLong(0);
+
+        private final ThreadFactory virtualThreadFactory = virtualThreadFactory();
+
+        private static ThreadFactory virtualThreadFactory() {
+            try {
+                final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (final ReflectiveOperationException | RuntimeException e) {
+                LOG.log(Level.FINE, "Virtual threads not available, using platform threads", e);
+                return null;
+            }
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            if (this.virtualThreadFactory != null) {
+                return this.virtualThreadFactory.newThread(r);
+            }
+
+            final Thread thread = new Thread(r, "I/O session " + COUNTER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
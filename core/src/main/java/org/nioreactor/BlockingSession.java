@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Session with blocking-style I/O operations.
+ * <p>
+ * Calls park the session thread until the worker selector reports the channel as ready.
+ */
+public interface BlockingSession {
+
+    /**
+     * Reads a sequence of bytes into the given buffer, waiting until at least one byte is available.
+     *
+     * @param dst the buffer into which bytes are to be transferred.
+     * @return the number of bytes read, possibly zero if the buffer has no remaining space, or {@code -1} if the
+     * channel has reached end-of-stream.
+     * @throws IOException if an I/O error occurs or the session has been closed.
+     */
+    int read(ByteBuffer dst) throws IOException;
+
+    /**
+     * Writes all the remaining bytes of the given buffer, waiting until the channel is writable whenever the socket
+     * buffer is full.
+     *
+     * @param src the buffer from which bytes are to be retrieved.
+     * @return the number of bytes written.
+     * @throws IOException if an I/O error occurs or the session has been closed.
+     */
+    int write(ByteBuffer src) throws IOException;
+
+    /**
+     * Returns remote address.
+     *
+     * @return socket address.
+     */
+    SocketAddress remoteAddress();
+
+    /**
+     * Returns local address.
+     *
+     * @return socket address.
+     */
+    SocketAddress localAddress();
+
+    /**
+     * Returns the non-blocking session backing this session.
+     *
+     * @return the session context.
+     */
+    SessionContext session();
+
+    /**
+     * Checks if a graceful shutdown is in progress. Handlers should finish the current exchange and return.
+     *
+     * @return {@code true} if the server is shutting down, {@code false} otherwise.
+     */
+    boolean isShuttingDown();
+
+    /**
+     * Terminates the session and closes the underlying I/O channel.
+     */
+    void close();
+
+    /**
+     * Checks if the session has been terminated.
+     *
+     * @return {@code true} if the session has been terminated,
+     * {@code false} otherwise.
+     */
+    boolean isClosed();
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.io.IOException;
+
+/**
+ * Straight-line session logic executed on a dedicated session thread.
+ */
+@FunctionalInterface
+public interface BlockingSessionHandler {
+
+    /**
+     * Handles the given session. The session is closed once this method returns.
+     *
+     * @param session the blocking session.
+     * @throws IOException if an I/O error occurs.
+     */
+    void handle(BlockingSession session) throws IOException;
+}
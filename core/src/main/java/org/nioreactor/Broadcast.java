@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Payload written to many sessions. Sessions write read-only duplicates of the same buffer and hold a reference
+ * until their duplicate has been flushed; the release callback runs once the last reference is dropped.
+ */
+final class Broadcast {
+
+    private static final Logger LOG = Logger.getLogger(Broadcast.class.getName());
+
+    private final ByteBuffer payload;
+    private final Runnable release;
+    // the publisher holds the first reference until all workers have theirs
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    Broadcast(final ByteBuffer payload, final Runnable release) {
+        this.payload = payload.asReadOnlyBuffer();
+        this.release = release;
+    }
+
+    /**
+     * Returns a new view of the payload, with its own position.
+     */
+    ByteBuffer view() {
+        return this.payload.duplicate();
+    }
+
+    void retain() {
+        this.references.incrementAndGet();
+    }
+
+    void release() {
+        if (this.references.decrementAndGet() == 0 && this.release != null) {
+            try {
+                this.release.run();
+            } catch (final RuntimeException ex) {
+                LOG.log(Level.WARNING, "Broadcast release failed", ex);
+            }
+        }
+    }
+}
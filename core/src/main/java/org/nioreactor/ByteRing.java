@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded byte queue with one writer and one reader thread at a time. The positions are volatile, so bytes copied in
+ * before the writer publishes its position are visible to the reader that sees it.
+ */
+final class ByteRing {
+
+    private final byte[] buffer;
+    private final int mask;
+    // read position, written by the reader
+    private volatile long head = 0;
+    // write position, written by the writer
+    private volatile long tail = 0;
+
+    ByteRing(final int capacity) {
+        // rounded up to a power of two
+        this.buffer = new byte[1 << 32 - Integer.numberOfLeadingZeros(capacity - 1)];
+        this.mask = this.buffer.length - 1;
+    }
+
+    int available() {
+        return (int) (this.tail - this.head);
+    }
+
+    int free() {
+        return this.buffer.length - available();
+    }
+
+    /**
+     * Copies as many bytes as fit from the given buffer.
+     *
+     * @param src the bytes to copy.
+     * @return the number of bytes copied.
+     */
+    int write(final ByteBuffer src) {
+        final long position = this.tail;
+        final int count = Math.min(src.remaining(), this.buffer.length - (int) (position - this.head));
+        final int offset = (int) position & this.mask;
+        final int first = Math.min(count, this.buffer.length - offset);
+        src.get(this.buffer, offset, first);
+        src.get(this.buffer, 0, count - first);
+        this.tail = position + count;
+        return count;
+    }
+
+    /**
+     * Copies as many bytes as available into the given buffer.
+     *
+     * @param dst the buffer to copy into.
+     * @return the number of bytes copied.
+     */
+    int read(final ByteBuffer dst) {
+        final long position = this.head;
+        final int count = Math.min(dst.remaining(), (int) (this.tail - position));
+        final int offset = (int) position & this.mask;
+        final int first = Math.min(count, this.buffer.length - offset);
+        dst.put(this.buffer, offset, first);
+        dst.put(this.buffer, 0, count - first);
+        this.head = position + count;
+        return count;
+    }
+}
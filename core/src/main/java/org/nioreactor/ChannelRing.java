@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded single-producer single-consumer ring handing accepted channels over to a worker.
+ * <p>
+ * Slots are preallocated, so a handover allocates nothing, and indexes are published with ordered stores instead
+ * of CAS. The producer and consumer indexes live in the same array, far enough apart not to share a cache line. The
+ * producer is the acceptor thread, bound once the dispatcher starts; other threads must hand channels over some
+ * other way.
+ */
+final class ChannelRing {
+
+    // 128 bytes between the indexes and to the ends of the array
+    private static final int HEAD = 15;
+    private static final int TAIL = 31;
+    private static final int INDEXES = 47;
+
+    private volatile Thread producer;
+    private final AtomicLongArray indexes = new AtomicLongArray(INDEXES);
+    private final SocketChannel[] channels;
+    private final EventListenerFactory[] factories;
+    private final long[] queuedNanos;
+    private final int mask;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two.
+     */
+    ChannelRing(final int capacity) {
+        final int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.channels = new SocketChannel[size];
+        this.factories = new EventListenerFactory[size];
+        this.queuedNanos = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Makes the given thread the producer of this ring. Called before that thread offers its first channel.
+     */
+    void producer(final Thread thread) {
+        this.producer = thread;
+    }
+
+    /**
+     * Checks if the calling thread is the producer of this ring.
+     */
+    boolean isProducer() {
+        return this.producer == Thread.currentThread();
+    }
+
+    /**
+     * Adds a channel. Called from the producer thread.
+     *
+     * @return {@code false} if the ring is full.
+     */
+    boolean offer(final SocketChannel channel, final EventListenerFactory factory, final long queuedNanos) {
+        final long tail = this.indexes.get(TAIL);
+        if (tail - this.indexes.get(HEAD) > this.mask) {
+            return false;
+        }
+
+        final int slot = (int) tail & this.mask;
+        this.channels[slot] = channel;
+        this.factories[slot] = factory;
+        this.queuedNanos[slot] = queuedNanos;
+        this.indexes.lazySet(TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes up to the given number of channels, passing them to the given consumer. Called from the consumer
+     * thread.
+     *
+     * @return the number of channels removed.
+     */
+    int drain(final Consumer consumer, final int limit) {
+        long head = this.indexes.get(HEAD);
+        final long tail = this.indexes.get(TAIL);
+
+        int count = 0;
+        while (count < limit && head < tail) {
+            final int slot = (int) head & this.mask;
+            final SocketChannel channel = this.channels[slot];
+            final EventListenerFactory factory = this.factories[slot];
+            final long nanos = this.queuedNanos[slot];
+            this.channels[slot] = null;
+            this.factories[slot] = null;
+            this.indexes.lazySet(HEAD, ++head);
+            count++;
+
+            consumer.accept(channel, factory, nanos);
+        }
+
+        return count;
+    }
+
+    boolean isEmpty() {
+        return this.indexes.get(HEAD) == this.indexes.get(TAIL);
+    }
+
+    /**
+     * Receiver of the drained channels.
+     */
+    interface Consumer {
+
+        void accept(SocketChannel channel, EventListenerFactory factory, long queuedNanos);
+    }
+}
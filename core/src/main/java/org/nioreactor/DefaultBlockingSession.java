@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Default blocking session implementation.
+ * <p>
+ * A {@link ReentrantLock} is used instead of monitors so virtual threads are not pinned while parked.
+ */
+final class DefaultBlockingSession implements BlockingSession {
+
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final Condition ready = mainLock.newCondition();
+    private final SessionContext session;
+
+    // guarded by mainLock
+    private int readyOps = 0;
+    private boolean disconnected = false;
+
+    private volatile boolean shuttingDown = false;
+
+    DefaultBlockingSession(final SessionContext session) {
+        this.session = Preconditions.checkNotNull(session, "session is null");
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        Preconditions.checkNotNull(dst, "dst is null");
+
+        int count;
+        while ((count = this.session.channel().read(dst)) == 0 && dst.hasRemaining()) {
+            await(EventKey.READ);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        Preconditions.checkNotNull(src, "src is null");
+
+        int written = 0;
+        while (src.hasRemaining()) {
+            final int count = this.session.channel().write(src);
+            if (count == 0) {
+                await(EventKey.WRITE);
+            }
+            written += count;
+        }
+
+        return written;
+    }
+
+    private void await(final EventKey event) throws IOException {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.readyOps &= ~event.interestOps();
+            checkConnected();
+
+            this.session.interestEvent(event);
+            while ((this.readyOps & event.interestOps()) == 0) {
+                this.ready.await();
+                checkConnected();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for " + event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkConnected() throws ClosedChannelException {
+        if (this.disconnected) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Resumes the session thread parked on the given ready operations. Called from the event loop.
+     *
+     * @param ops the ready operations.
+     */
+    void signal(final int ops) {
+        // stop selecting until the session thread asks for more
+        this.session.interestEvent(EventKey.NONE);
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.readyOps |= ops;
+            this.ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flags the session once a graceful shutdown starts.
+     */
+    void shuttingDown() {
+        this.shuttingDown = true;
+    }
+
+    /**
+     * Wakes up the session thread after the session has been terminated.
+     */
+    void disconnect() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.disconnected = true;
+            this.ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return this.session.remoteAddress();
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return this.session.localAddress();
+    }
+
+    @Override
+    public SessionContext session() {
+        return this.session;
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return this.shuttingDown;
+    }
+
+    @Override
+    public void close() {
+        this.session.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.session.isClosed();
+    }
+
+    @Override
+    public String toString() {
+        return this.session.toString();
+    }
+}
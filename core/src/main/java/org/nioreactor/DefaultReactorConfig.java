@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+
+import org.nioreactor.util.Preconditions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Default implementation of {@link org.nioreactor.ReactorConfig}.
+ */
+public final class DefaultReactorConfig implements ReactorConfig {
+
+    private final Map<ReactorOption<?>, Object> reactorOptions;
+
+    private DefaultReactorConfig(final Builder builder) {
+        this.reactorOptions = Collections.unmodifiableMap(new HashMap<>(builder.reactorOptions));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public <T> T option(final ReactorOption<T> key) {
+        Preconditions.checkNotNull(key, "key is null");
+
+        final Object o = this.reactorOptions.get(key);
+        return o == null ? key.defaultValue() : key.cast(o);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("DefaultReactorConfig{")
+                .append("reactorOptions=")
+                .append(reactorOptions)
+                .append('}')
+                .toString();
+    }
+
+    public static final class Builder {
+
+        private final Map<ReactorOption<?>, Object> reactorOptions = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public <T> Builder option(final ReactorOption<T> key, final T value) {
+            Preconditions.checkNotNull(key, "key is null");
+            Preconditions.checkNotNull(value, "value is null");
+
+            this.reactorOptions.put(key, value);
+            return this;
+        }
+
+        public ReactorConfig build() {
+            return new DefaultReactorConfig(this);
+        }
+    }
+}
@@ -18,6 +18,10 @@ package org.nioreactor;
 
 import org.nioreactor.util.Preconditions;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -51,6 +55,52 @@ public class DefaultServerPromise implements ServerPromise {
         reactor.shutdown();
     }
 
+    @Override
+    public void shutdownGracefully(final long quietPeriod, final long timeout, final TimeUnit unit) {
+        reactor.shutdownGracefully(quietPeriod, timeout, unit);
+    }
+
+    @Override
+    public List<ServerSocketChannel> handOff(final long quietPeriod, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return reactor.handOff(quietPeriod, timeout, unit);
+    }
+
+    @Override
+    public int connections() {
+        return reactor.connections();
+    }
+
+    @Override
+    public SessionContext connectLocal(final EventListener listener) throws IOException {
+        return reactor.connectLocal(listener);
+    }
+
+    @Override
+    public void broadcast(final ByteBuffer payload) {
+        reactor.broadcast(payload, null);
+    }
+
+    @Override
+    public void broadcast(final ByteBuffer payload, final Runnable release) {
+        reactor.broadcast(payload, release);
+    }
+
+    @Override
+    public SessionContext lookup(final long id) {
+        return reactor.lookup(id);
+    }
+
+    @Override
+    public int workers() {
+        return reactor.workers();
+    }
+
+    @Override
+    public void resize(final int workers) throws IOException {
+        reactor.resize(workers);
+    }
+
     @Override
     public void await() throws InterruptedException {
         thread.join();
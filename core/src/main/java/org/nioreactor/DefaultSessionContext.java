@@ -21,11 +21,13 @@ import org.nioreactor.util.Preconditions;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,62 +41,471 @@ final class DefaultSessionContext implements SessionContext {
 
     private static final Logger LOG = Logger.getLogger(DefaultSessionContext.class.getName());
 
+    // kept when the session is recycled
     private final ReentrantLock mainLock = new ReentrantLock();
     private final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<>();
-    private final SelectionKey key;
-    private final SocketChannel channel;
-    private final DefaultWorker dispatcher;
+    private final SessionChannel byteChannel = new SessionChannel(this);
+    private AdaptiveReceiveSize receiveSize;
+
+    // incremented each time the session is recycled, before it is bound to another channel
+    private volatile int generation = 0;
+    private volatile SessionHandle handle;
+    private volatile SocketChannel channel;
+    private volatile SelectionKey key;
+    private volatile DefaultWorker dispatcher;
     private volatile boolean closed = false;
+    private volatile long id = SessionRegistry.NO_ID;
+    private EventListenerFactory listenerFactory;
+
+    // guarded by mainLock
+    private int interestOps = 0;
+    private int suspendedOps = 0;
+    private boolean detached = false;
+    private boolean closeQueued = false;
+    private int outputOps = 0;
+    private int holds = 0;
+    private boolean recyclePending = false;
+
+    // owner event loop only
+    private long events = 0;
+    private EventListener listener;
+    private int slot = -1;
 
     DefaultSessionContext(final SelectionKey key, final DefaultWorker dispatcher) {
-        this.key = Preconditions.checkNotNull(key, "key is null");
-        this.channel = (SocketChannel) this.key.channel();
-        this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher is null");
+        this(key, dispatcher, null, null);
+    }
+
+    /**
+     * Creates a session on the event loop of the given worker.
+     *
+     * @param key             the selection key.
+     * @param dispatcher      the owner worker.
+     * @param shaper          the session traffic shaper, or {@code null} if not shaped.
+     * @param listenerFactory the factory of the endpoint the session was accepted on, or {@code null} for the
+     *                        worker default listener.
+     */
+    DefaultSessionContext(final SelectionKey key, final DefaultWorker dispatcher, final TrafficShaper shaper,
+                          final EventListenerFactory listenerFactory) {
+        init(key, dispatcher, shaper, listenerFactory);
+    }
+
+    /**
+     * Binds this session to a new channel. Called from the event loop of the given worker, on creation and when
+     * reused from the worker pool.
+     */
+    void init(final SelectionKey key, final DefaultWorker dispatcher, final TrafficShaper shaper,
+              final EventListenerFactory listenerFactory) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.key = Preconditions.checkNotNull(key, "key is null");
+            this.channel = (SocketChannel) key.channel();
+            this.byteChannel.reset(this.channel, shaper, this.generation);
+            this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher is null");
+            this.listenerFactory = listenerFactory;
+            this.listener = dispatcher.listenerFor(listenerFactory);
+            if (this.receiveSize == null) {
+                this.receiveSize = dispatcher.receiveBuffers().newReceiveSize();
+            } else {
+                this.receiveSize.reset();
+            }
+
+            this.closed = false;
+            this.interestOps = 0;
+            this.outputOps = 0;
+            this.suspendedOps = 0;
+            this.detached = false;
+            this.closeQueued = false;
+            this.holds = 0;
+            this.recyclePending = false;
+            this.events = 0;
+            this.handle = new SessionHandle(this, this.generation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates the handles given out so far and drops the references to the closed channel, so this session
+     * can be reused. Called from the event loop once the session has been closed and reported.
+     */
+    void recycle() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            // stale handles check the generation after touching the session, so bump it first
+            this.generation++;
+            this.attributes.clear();
+            this.handle = null;
+            this.key.attach(null);
+            this.key = null;
+            this.channel = null;
+            this.listener = null;
+            this.listenerFactory = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the view of this session handed to listeners, valid until the session is recycled.
+     */
+    SessionContext handle() {
+        return this.handle;
+    }
+
+    boolean isGeneration(final int generation) {
+        return this.generation == generation;
+    }
+
+    /**
+     * Keeps this session from being recycled until {@link #release()}, for listeners that go on using its handle
+     * on another thread after their disconnection callback. Called from the event loop.
+     */
+    void hold() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.holds++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a hold, recycling the session on its worker if it has been reported meanwhile. Called from any
+     * thread.
+     */
+    void release() {
+        final DefaultWorker worker;
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (--this.holds > 0 || !this.recyclePending) {
+                return;
+            }
+            this.recyclePending = false;
+            worker = this.dispatcher;
+        } finally {
+            lock.unlock();
+        }
+
+        worker.recycleReleased(this);
+    }
+
+    /**
+     * Checks if this session is held, leaving its recycling to the last release. Called from the event loop once
+     * the session has been reported.
+     */
+    boolean deferRecycle() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.recyclePending = this.holds > 0;
+            return this.recyclePending;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public ByteChannel channel() {
-        return channel;
+        return byteChannel;
+    }
+
+    @Override
+    public long id() {
+        return this.id;
+    }
+
+    void id(final long id) {
+        this.id = id;
     }
 
     @Override
     public SocketAddress remoteAddress() {
-        return this.channel.socket().getRemoteSocketAddress();
+        final SocketChannel socketChannel = this.channel;
+        return socketChannel == null ? null : socketChannel.socket().getRemoteSocketAddress();
     }
 
     @Override
     public SocketAddress localAddress() {
-        return this.channel.socket().getLocalSocketAddress();
+        final SocketChannel socketChannel = this.channel;
+        return socketChannel == null ? null : socketChannel.socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public ByteBuffer receive() throws IOException {
+        return receive(this.byteChannel);
+    }
+
+    /**
+     * Reads from the given channel, captured by the caller before checking the session generation.
+     */
+    ByteBuffer receive(final ByteChannel source) throws IOException {
+        final DefaultWorker worker = this.dispatcher;
+        final AdaptiveReceiveSize size = this.receiveSize;
+        final ByteBuffer buffer = worker.inEventLoop()
+                ? worker.receiveBuffers().acquire(size.size())
+                : ByteBuffer.allocate(size.size());
+
+        final int count = source.read(buffer);
+        if (count < 0) {
+            return null;
+        }
+
+        size.record(count);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public <T> T socketOption(final SocketOption<T> option) throws IOException {
+        return Preconditions.checkNotNull(option, "option is null").get(this.channel);
     }
 
     @Override
     public void interestEvent(final EventKey op) {
+        interestEvent(this.generation, op);
+    }
+
+    void interestEvent(final int generation, final EventKey op) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (!this.closed && this.generation == generation) {
+                this.interestOps = op.interestOps();
+                updateInterest();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops selecting the given operations for a while, regardless of the interest set by the listener.
+     *
+     * @param generation the generation of the session the channel belongs to.
+     * @param ops        the operations to suspend.
+     * @param delayNanos the suspension time in nanoseconds.
+     */
+    void suspend(final int generation, final int ops, final long delayNanos) {
+        final int suspended;
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            suspended = ops & ~this.suspendedOps;
+            if (this.closed || this.generation != generation || suspended == 0) {
+                return;
+            }
+
+            this.suspendedOps |= suspended;
+            updateInterest();
+        } finally {
+            lock.unlock();
+        }
+
+        this.dispatcher.schedule(() -> resume(generation, suspended), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void resume(final int generation, final int ops) {
         final ReentrantLock lock = this.mainLock;
         lock.lock();
         try {
-            if (!this.closed) {
-                this.key.interestOps(op.interestOps());
+            if (this.generation == generation) {
+                this.suspendedOps &= ~ops;
+                updateInterest();
             }
         } finally {
             lock.unlock();
         }
     }
 
+    // must hold mainLock
+    private void updateInterest() {
+        if (this.closed || this.detached) {
+            return;
+        }
+
+        this.key.interestOps((this.interestOps | this.outputOps) & ~this.suspendedOps);
+
+        // interest changes made outside the event loop are only seen on the next select
+        if (!this.dispatcher.inEventLoop()) {
+            this.key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Cancels the selection key so the session can be moved to another worker. Interest changes made while
+     * detached are applied once attached again.
+     *
+     * @return {@code true} if detached, {@code false} if the session is closed or already detached.
+     */
+    boolean detach() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.closed || this.detached) {
+                return false;
+            }
+
+            this.detached = true;
+            this.key.cancel();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Binds a detached session to the given worker key.
+     *
+     * @param newKey        the selection key registered with the new worker.
+     * @param newDispatcher the new worker.
+     * @return {@code true} if attached, {@code false} if the session was closed while detached.
+     */
+    boolean attach(final SelectionKey newKey, final DefaultWorker newDispatcher) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.key = newKey;
+            this.dispatcher = newDispatcher;
+            // an entry queued on the previous worker is dropped there
+            this.closeQueued = false;
+            // each worker has its own listener instance
+            this.listener = newDispatcher.listenerFor(this.listenerFactory);
+            this.detached = false;
+            if (this.closed) {
+                newKey.cancel();
+                return false;
+            }
+
+            updateInterest();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flags this session as queued for the disconnection callback, so it is reported once per generation.
+     *
+     * @return {@code true} if not queued before, {@code false} otherwise.
+     */
+    boolean markCloseQueued() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.closeQueued) {
+                return false;
+            }
+            this.closeQueued = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    EventListener listener() {
+        return this.listener;
+    }
+
+    SessionChannel sessionChannel() {
+        return this.byteChannel;
+    }
+
+    /**
+     * Returns the worker running this session, or {@code null} once recycled.
+     */
+    DefaultWorker worker() {
+        return this.dispatcher;
+    }
+
+    /**
+     * Selects writes while queued output is pending, whatever the listener interest.
+     *
+     * @param pending {@code true} if output is pending, {@code false} otherwise.
+     */
+    void outputPending(final boolean pending) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.outputOps = pending ? SelectionKey.OP_WRITE : 0;
+            updateInterest();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the listener asked for write events.
+     */
+    boolean isOutputInterest() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            return (this.interestOps & SelectionKey.OP_WRITE) != 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int slot() {
+        return this.slot;
+    }
+
+    void slot(final int slot) {
+        this.slot = slot;
+    }
+
+    SocketChannel socketChannel() {
+        return this.channel;
+    }
+
+    void recordEvent() {
+        this.events++;
+    }
+
+    /**
+     * Returns the number of I/O events since the previous call.
+     *
+     * @return the event count.
+     */
+    long drainEvents() {
+        final long count = this.events;
+        this.events = 0;
+        return count;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        this.dispatcher.execute(task);
+    }
+
     @Override
     public void close() {
+        close(this.generation);
+    }
+
+    void close(final int generation) {
         final ReentrantLock lock = this.mainLock;
         lock.lock();
         try {
-            if (!this.closed) {
+            if (!this.closed && this.generation == generation) {
                 this.closed = true;
                 this.key.cancel();
 
                 try {
-                    this.key.channel().close();
+                    this.channel.close();
                 } catch (final IOException ex) {
                     LOG.log(Level.WARNING, "Could not close channel", ex);
                 }
 
+                // a detached session is reported by the worker it is moving to
+                if (this.detached) {
+                    return;
+                }
+
                 this.dispatcher.queueClosedSession(this);
                 if (this.key.selector().isOpen()) {
                     this.key.selector().wakeup();
@@ -129,6 +540,36 @@ final class DefaultSessionContext implements SessionContext {
         return key.cast(this.attributes.remove(key));
     }
 
+    /**
+     * Sets an attribute if this session has not been recycled since the given generation.
+     *
+     * @return the previous value, {@code null} if none or if the session has been recycled.
+     */
+    <T> T putAttribute(final int generation, final AttributeKey<T> key, final T value) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            return this.generation == generation ? putAttribute(key, value) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an attribute if this session has not been recycled since the given generation.
+     *
+     * @return the removed value, {@code null} if none or if the session has been recycled.
+     */
+    <T> T removeAttribute(final int generation, final AttributeKey<T> key) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            return this.generation == generation ? removeAttribute(key) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public String toString() {
         final StringBuilder buffer = new StringBuilder();
@@ -147,10 +588,11 @@ final class DefaultSessionContext implements SessionContext {
         try {
             buffer.append(closed ? "CLOSED" : "ACTIVE");
             buffer.append("][");
-            if (this.key.isValid()) {
-                buffer.append(EventKey.formatOps(this.key.interestOps()));
+            final SelectionKey selectionKey = this.key;
+            if (selectionKey != null && selectionKey.isValid()) {
+                buffer.append(EventKey.formatOps(selectionKey.interestOps()));
                 buffer.append(':');
-                buffer.append(EventKey.formatOps(this.key.readyOps()));
+                buffer.append(EventKey.formatOps(selectionKey.readyOps()));
             }
         } finally {
             lock.unlock();
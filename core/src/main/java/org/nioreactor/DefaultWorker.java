@@ -19,17 +19,29 @@ package org.nioreactor;
 import org.nioreactor.util.Preconditions;
 
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,49 +56,330 @@ public class DefaultWorker implements Runnable {
     private static final Logger LOG = Logger.getLogger(DefaultWorker.class.getName());
 
     private final ReentrantLock mainLock = new ReentrantLock();
-    private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
-    private final Queue<SessionContext> closedSessions = new ConcurrentLinkedQueue<>();
-    private final Set<SessionContext> sessions = new HashSet<>();
+    private final Queue<DefaultSessionContext> closedSessions = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+    private final AtomicInteger connections = new AtomicInteger(0);
+    // dispatches and submissions past the status check, waited for before the queued channels are taken over
+    private final AtomicInteger dispatching = new AtomicInteger(0);
+    // set once the tasks submitted from now on would never run
+    private volatile boolean tasksClosed = false;
     private final EventListener listener;
     private final Selector selector;
+    private final ReactorConfig config;
+    private final int maxConnections;
+    private final AdmissionControl admission;
+    private final TrafficShaper shaper;
+    private final ReceiveBuffers receiveBuffers;
+    private final WriteStaging staging;
+    private final int sessionPoolSize;
+    private final SessionRegistry registry;
+    private final SessionRegistry.Segment segment;
+    private final ReactorProbe probe;
+    private final int localBufferSize;
+    private final LoopBudget budget;
+    private final ChannelRing newChannels;
+    private final ChannelRing.Consumer registration = this::registerQuietly;
+    // null unless the workers accept connections themselves
+    private final SharedAcceptor acceptor;
 
     private volatile ReactorStatus status = ReactorStatus.INACTIVE;
+    private volatile Thread thread;
+    // a handover found the handoff queue full since it was last drained
+    private volatile boolean handoffFull = false;
+    private volatile long busyNanos = 0;
+    private volatile long ioNanos = 0;
+    private volatile long taskNanos = 0;
+    private volatile long sessionNanos = 0;
+
+    // event loop only
+    private final Map<EventListenerFactory, EventListener> listeners = new IdentityHashMap<>();
+    private final Deque<DefaultSessionContext> sessionPool = new ArrayDeque<>();
+    private final Set<LocalSession> localSessions = Collections.newSetFromMap(new IdentityHashMap<>());
+    // ready keys left over by the I/O budget, in arrival order
+    private final Set<SelectionKey> deferredKeys = new LinkedHashSet<>();
+    private final List<SelectionKey> acceptKeys = new ArrayList<>();
+    private int sessionCount = 0;
+    private boolean timing = false;
+    private long drainQuietPeriod;
+    private long drainDeadline;
+    private long lastActivity;
 
     public DefaultWorker(final EventListener listener) throws IOException {
+        this(listener, DefaultReactorConfig.builder().build(), new AdmissionControl(DefaultReactorConfig.builder().build()));
+    }
+
+    public DefaultWorker(final EventListener listener, final ReactorConfig config, final AdmissionControl admission)
+            throws IOException {
+        this(listener, config, admission, TrafficShaper.global(config), new SessionRegistry(), null);
+    }
+
+    DefaultWorker(final EventListener listener, final ReactorConfig config, final AdmissionControl admission,
+                  final TrafficShaper globalShaper, final SessionRegistry registry, final SharedAcceptor acceptor)
+            throws IOException {
         this.listener = Preconditions.checkNotNull(listener, "listener is null");
+        this.config = Preconditions.checkNotNull(config, "config is null");
+        this.admission = Preconditions.checkNotNull(admission, "admission control is null");
+        this.shaper = Preconditions.checkNotNull(globalShaper, "global shaper is null").worker(config);
+        this.maxConnections = config.option(ReactorOption.MAX_CONNECTIONS_PER_WORKER);
+        Preconditions.checkArgument(this.maxConnections >= 0, "max connections per worker < 0");
+        this.receiveBuffers = new ReceiveBuffers(config);
+        this.staging = new WriteStaging(config);
+        this.sessionPoolSize = config.option(ReactorOption.SESSION_POOL_SIZE);
+        Preconditions.checkArgument(this.sessionPoolSize >= 0, "session pool size < 0");
+        this.registry = Preconditions.checkNotNull(registry, "registry is null");
+        this.segment = registry.acquire();
+        this.probe = Preconditions.checkNotNull(config.option(ReactorOption.PROBE), "probe is null");
+        this.localBufferSize = config.option(ReactorOption.LOCAL_BUFFER_SIZE);
+        Preconditions.checkArgument(this.localBufferSize > 0 && this.localBufferSize <= 1 << 30,
+                "local buffer size out of range");
+        this.budget = new LoopBudget(config);
+        final int handoffQueueSize = config.option(ReactorOption.HANDOFF_QUEUE_SIZE);
+        Preconditions.checkArgument(handoffQueueSize > 0 && handoffQueueSize <= 1 << 30,
+                "handoff queue size out of range");
+        this.newChannels = new ChannelRing(handoffQueueSize);
+        this.acceptor = acceptor;
         this.selector = Selector.open();
     }
 
-    public void dispatch(final SocketChannel socketChannel) {
-        this.newChannels.add(Preconditions.checkNotNull(socketChannel));
+    /**
+     * Hands over an accepted channel to this worker.
+     *
+     * @param socketChannel the accepted channel.
+     * @return {@code true} if the channel has been queued, {@code false} if this worker is at capacity or
+     * shutting down.
+     */
+    public boolean dispatch(final SocketChannel socketChannel) {
+        return dispatch(socketChannel, null);
+    }
+
+    /**
+     * Hands over a channel accepted on an endpoint with its own listener factory. The worker creates one listener
+     * per factory, on its own thread, the first time a channel of that endpoint arrives.
+     *
+     * @param socketChannel the accepted channel.
+     * @param factory       the endpoint listener factory, or {@code null} for the worker default listener.
+     * @return {@code true} if the channel has been queued, {@code false} if this worker is at capacity, its handoff
+     * queue is full or it is shutting down.
+     */
+    public boolean dispatch(final SocketChannel socketChannel, final EventListenerFactory factory) {
+        Preconditions.checkNotNull(socketChannel);
+        this.dispatching.incrementAndGet();
+        try {
+            if (this.status.compareTo(ReactorStatus.ACTIVE) > 0 || !tryAcquireConnection()) {
+                return false;
+            }
+
+            final long queuedNanos = this.probe.isTiming() ? System.nanoTime() : 0L;
+            if (!this.newChannels.isProducer()) {
+                // channels from other threads than the acceptor, e.g. the workers accepting themselves
+                execute(() -> registerLater(socketChannel, factory, queuedNanos));
+                return true;
+            }
+
+            if (!this.newChannels.offer(socketChannel, factory, queuedNanos)) {
+                // full, let the dispatcher try another worker
+                this.handoffFull = true;
+                this.connections.decrementAndGet();
+                return false;
+            }
+        } finally {
+            this.dispatching.decrementAndGet();
+        }
+
         this.selector.wakeup();
+        return true;
+    }
+
+    /**
+     * Binds the handoff queue to the acceptor thread. Channels dispatched from any other thread go through the task
+     * queue.
+     *
+     * @param thread the thread accepting the connections dispatched to this worker.
+     */
+    void acceptorThread(final Thread thread) {
+        this.newChannels.producer(thread);
+    }
+
+    /**
+     * Waits for the dispatches that passed the status check before it changed, so that their channels are queued
+     * or their tasks submitted before this worker takes the queued channels over. Called from the event loop.
+     */
+    private void awaitDispatches() {
+        while (this.dispatching.get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the listener of this worker for the given endpoint factory. Called from the event loop.
+     */
+    EventListener listenerFor(final EventListenerFactory factory) {
+        if (factory == null) {
+            return this.listener;
+        }
+
+        return this.listeners.computeIfAbsent(factory, f -> Preconditions.checkNotNull(f.create(), "listener is null"));
+    }
+
+    /**
+     * Returns the registry segment of the sessions accepted by this worker.
+     */
+    SessionRegistry.Segment segment() {
+        return this.segment;
+    }
+
+    /**
+     * Returns the write staging of this worker, used from the event loop only.
+     */
+    WriteStaging staging() {
+        return this.staging;
+    }
+
+    /**
+     * Returns the receive buffers of this worker. Buffers can only be acquired from the event loop.
+     */
+    ReceiveBuffers receiveBuffers() {
+        return this.receiveBuffers;
+    }
+
+    private boolean tryAcquireConnection() {
+        int current;
+        do {
+            current = this.connections.get();
+            if (this.maxConnections > 0 && current >= this.maxConnections) {
+                return false;
+            }
+        } while (!this.connections.compareAndSet(current, current + 1));
+
+        return true;
+    }
+
+    private void releaseConnection(final SocketAddress remoteAddress) {
+        this.connections.decrementAndGet();
+        this.admission.release(remoteAddress);
+        this.admission.workerAvailable();
+    }
+
+    /**
+     * Returns the number of connections handed over to this worker that are still open.
+     *
+     * @return the number of connections.
+     */
+    public int connections() {
+        return this.connections.get();
+    }
+
+    /**
+     * Executes the given task on this worker's event loop.
+     *
+     * @param task the task to execute.
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(Preconditions.checkNotNull(task, "task is null"));
+        if (!inEventLoop()) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Executes the given task on this worker's event loop after the given delay.
+     *
+     * @param task  the task to execute.
+     * @param delay the time from now to delay execution.
+     * @param unit  the time unit of the delay.
+     */
+    public void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final ScheduledTask scheduledTask = new ScheduledTask(Preconditions.checkNotNull(task, "task is null"),
+                System.nanoTime() + unit.toNanos(delay));
+        if (inEventLoop()) {
+            this.scheduledTasks.add(scheduledTask);
+        } else {
+            execute(() -> this.scheduledTasks.add(scheduledTask));
+        }
+    }
+
+    /**
+     * Checks if this worker takes new connections.
+     */
+    boolean isActive() {
+        return this.status == ReactorStatus.ACTIVE;
+    }
+
+    /**
+     * Checks if the caller is running on this worker's event loop thread.
+     *
+     * @return {@code true} if called from the event loop, {@code false} otherwise.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == this.thread;
     }
 
     @Override
     public void run() {
+        this.thread = Thread.currentThread();
         this.status = ReactorStatus.ACTIVE;
 
         try {
+            joinAcceptor();
+
             // Exit select loop if graceful shutdown has been completed
-            while (this.status == ReactorStatus.ACTIVE || !this.sessions.isEmpty()) {
-                final int readyCount = this.selector.select();
+            while (this.status == ReactorStatus.ACTIVE || this.status == ReactorStatus.DRAINING
+                    || this.sessionCount > 0) {
+                final int readyCount = select();
+                final long iterationStart = System.nanoTime();
+                this.timing = this.probe.isTiming();
+                if (!this.acceptKeys.isEmpty()
+                        && (this.status != ReactorStatus.ACTIVE || this.acceptor.isClosed())) {
+                    leaveAcceptor();
+                }
                 if (this.status == ReactorStatus.SHUTTING_DOWN) {
                     closeSessions();
                     closeNewChannels();
                 }
 
                 // Process selected I/O events
-                if (readyCount > 0) {
-                    processEvents(this.selector.selectedKeys());
+                if (readyCount > 0 || !this.deferredKeys.isEmpty()) {
+                    this.lastActivity = iterationStart;
+                    processEvents(this.selector.selectedKeys(), iterationStart);
+                    // once per session for the whole ready set
+                    this.staging.flush(this);
                 }
+                final long ioEnd = System.nanoTime();
 
                 // Process closed sessions
                 processClosedSessions();
 
+                // Process tasks submitted to the event loop
+                final long tasksStart = System.nanoTime();
+                processTasks(tasksStart, this.budget.taskTime(ioEnd - iterationStart));
+                final long tasksEnd = System.nanoTime();
+
+                if (this.status == ReactorStatus.DRAINING) {
+                    checkDrained();
+                }
+
                 // If active process new channels
                 if (this.status == ReactorStatus.ACTIVE) {
                     processNewChannels();
                 }
+
+                // output staged by tasks and new sessions
+                final long flushStart = System.nanoTime();
+                this.staging.flush(this);
+                final long iterationEnd = System.nanoTime();
+
+                // single writer
+                final long io = ioEnd - iterationStart + iterationEnd - flushStart;
+                final long tasks = tasksEnd - tasksStart;
+                final long sessions = iterationEnd - iterationStart - io - tasks;
+                this.busyNanos += iterationEnd - iterationStart;
+                this.ioNanos += io;
+                this.taskNanos += tasks;
+                this.sessionNanos += sessions;
+                if (this.timing) {
+                    this.probe.loopIteration(io, tasks, sessions, readyCount);
+                }
             }
         } catch (final ClosedSelectorException ignore) {
             // ignored
@@ -97,81 +390,472 @@ public class DefaultWorker implements Runnable {
         }
     }
 
-    private void closeSessions() {
-        this.sessions.forEach(SessionContext::close);
+    private int select() throws IOException {
+        // work left over by the budgets goes on right away
+        if (!this.tasks.isEmpty() || !this.deferredKeys.isEmpty()
+                || this.status == ReactorStatus.ACTIVE && !this.newChannels.isEmpty()) {
+            return this.selector.selectNow();
+        }
+
+        final ScheduledTask next = this.scheduledTasks.peek();
+        if (next == null) {
+            return this.selector.select();
+        }
+
+        final long delay = next.deadline - System.nanoTime();
+        if (delay <= 0) {
+            return this.selector.selectNow();
+        }
+
+        // round up, otherwise the loop spins until the deadline
+        return this.selector.select(TimeUnit.NANOSECONDS.toMillis(delay + TimeUnit.MILLISECONDS.toNanos(1) - 1));
     }
 
-    private void closeNewChannels() {
-        SocketChannel entry;
-        while ((entry = this.newChannels.poll()) != null) {
+    private void startDrain(final long quietPeriod, final long timeout) {
+        if (this.status != ReactorStatus.DRAINING) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        this.drainQuietPeriod = quietPeriod;
+        this.drainDeadline = now + timeout;
+        this.lastActivity = now;
+
+        // channels queued before the drain, e.g. the listening socket backlog, are served like the others
+        awaitDispatches();
+        this.newChannels.drain(this.registration, Integer.MAX_VALUE);
+
+        for (final DefaultSessionContext session : sessionList()) {
             try {
-                entry.close();
-            } catch (final IOException ex) {
-                LOG.log(Level.WARNING, "Could not close channel", ex);
+                session.listener().shuttingDown(session.handle());
+            } catch (final CancelledKeyException ex) {
+                queueClosedSession(session);
+            }
+        }
+        for (final LocalSession session : this.localSessions) {
+            session.shuttingDown();
+        }
+
+        scheduleDrainCheck();
+    }
+
+    private void scheduleDrainCheck() {
+        if (this.status == ReactorStatus.DRAINING) {
+            final long next = Math.min(this.lastActivity + this.drainQuietPeriod, this.drainDeadline);
+            schedule(this::scheduleDrainCheck, Math.max(next - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void checkDrained() {
+        final long now = System.nanoTime();
+        final int sessions = this.sessionCount + this.localSessions.size();
+        if (sessions == 0 || now - this.lastActivity >= this.drainQuietPeriod || now - this.drainDeadline >= 0) {
+            if (sessions > 0) {
+                LOG.log(Level.INFO, "Drain period over, closing {0} sessions", sessions);
             }
+
+            shutdown();
+            closeSessions();
         }
     }
 
-    private void processEvents(final Collection<SelectionKey> selectedKeys) {
-        selectedKeys.forEach(this::processEvent);
-        selectedKeys.clear();
+    private void closeSessions() {
+        this.segment.forEach(DefaultSessionContext::close);
+        this.localSessions.forEach(LocalSession::close);
+    }
+
+    private void closeNewChannels() {
+        this.newChannels.drain((channel, factory, queuedNanos) -> closeNewChannel(channel), Integer.MAX_VALUE);
+    }
+
+    private void closeNewChannel(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ex) {
+            LOG.log(Level.WARNING, "Could not close channel", ex);
+        }
+        releaseConnection(channel.socket().getRemoteSocketAddress());
+    }
+
+    private void processEvents(final Set<SelectionKey> selectedKeys, final long start) {
+        final Iterator<SelectionKey> keys;
+        if (this.deferredKeys.isEmpty()) {
+            keys = selectedKeys.iterator();
+        } else {
+            // keys deferred by the previous iteration go first
+            this.deferredKeys.addAll(selectedKeys);
+            selectedKeys.clear();
+            keys = this.deferredKeys.iterator();
+        }
+
+        int events = 0;
+        while (keys.hasNext() && !this.budget.isIoExhausted(events, start)) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            processEvent(key);
+            events++;
+        }
+
+        if (!selectedKeys.isEmpty()) {
+            this.deferredKeys.addAll(selectedKeys);
+            selectedKeys.clear();
+        }
     }
 
     private void processClosedSessions() {
-        SessionContext session;
+        DefaultSessionContext session;
         while ((session = this.closedSessions.poll()) != null) {
-            if (this.sessions.remove(session)) {
+            if (removeSession(session)) {
+                // sessions reported after a cancelled key may still be open
+                session.close();
+                releaseConnection(session.remoteAddress());
+                this.probe.disconnected(session.handle());
                 try {
-                    this.listener.disconnected(session);
+                    session.listener().disconnected(session.handle());
                 } catch (final CancelledKeyException ex) {
                     // ignore
                 }
+                session.sessionChannel().discard(this.staging);
+                this.registry.unregister(session);
+                if (!session.deferRecycle()) {
+                    recycle(session);
+                }
             }
         }
     }
 
-    private void processNewChannels() throws IOException {
-        SocketChannel channel;
-        while ((channel = this.newChannels.poll()) != null) {
-            final SelectionKey key;
+    private void processTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
             try {
-                channel.configureBlocking(false);
-                key = channel.register(this.selector, 0);
-            } catch (final ClosedChannelException ex) {
-                // channel is closed. just process the other channels
-                continue;
+                task.run();
+            } catch (final RuntimeException ex) {
+                LOG.log(Level.WARNING, "Task failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Runs the due scheduled tasks, then the queued tasks, within the task budget of the iteration.
+     *
+     * @param start    the start of the task phase.
+     * @param taskTime the time tasks may run for.
+     */
+    private void processTasks(final long start, final long taskTime) {
+        final int maxTasks = this.budget.maxTasks();
+        int ran = 0;
+
+        ScheduledTask next;
+        while (ran < maxTasks && (next = this.scheduledTasks.peek()) != null && next.deadline - start <= 0) {
+            this.scheduledTasks.poll();
+            try {
+                next.task.run();
+            } catch (final RuntimeException ex) {
+                LOG.log(Level.WARNING, "Scheduled task failed", ex);
+            }
+            if (++ran % LoopBudget.TASK_BATCH == 0 && System.nanoTime() - start >= taskTime) {
+                return;
             }
+        }
 
-            final SessionContext session = new DefaultSessionContext(key, this);
+        Runnable task;
+        while (ran < maxTasks && (task = this.tasks.poll()) != null) {
             try {
-                this.sessions.add(session);
-                key.attach(session);
-                sessionCreated(session);
-            } catch (final CancelledKeyException ex) {
-                queueClosedSession(session);
-                key.attach(null);
+                task.run();
+            } catch (final RuntimeException ex) {
+                LOG.log(Level.WARNING, "Task failed", ex);
+            }
+            if (++ran % LoopBudget.TASK_BATCH == 0 && System.nanoTime() - start >= taskTime) {
+                return;
+            }
+        }
+    }
+
+    private void processNewChannels() {
+        if (this.newChannels.drain(this.registration, this.budget.maxRegistrations()) > 0 && this.handoffFull) {
+            this.handoffFull = false;
+            this.admission.workerAvailable();
+        }
+    }
+
+    /**
+     * Registers a channel accepted by this worker, with no handover through the new channels queue. Called from the
+     * event loop.
+     *
+     * @param socketChannel the accepted channel.
+     * @param factory       the endpoint listener factory, or {@code null} for the worker default listener.
+     * @return {@code true} if the channel has been taken, {@code false} if this worker is at capacity.
+     */
+    boolean register(final SocketChannel socketChannel, final EventListenerFactory factory) {
+        if (!tryAcquireConnection()) {
+            return false;
+        }
+
+        registerQuietly(socketChannel, factory, 0L);
+        return true;
+    }
+
+    /**
+     * Registers a channel queued through the task queue instead of the handoff ring. Called from the event loop.
+     */
+    private void registerLater(final SocketChannel socketChannel, final EventListenerFactory factory,
+                               final long queuedNanos) {
+        if (this.status == ReactorStatus.ACTIVE || this.status == ReactorStatus.DRAINING) {
+            registerQuietly(socketChannel, factory, queuedNanos);
+        } else {
+            closeNewChannel(socketChannel);
+        }
+    }
+
+    private void registerQuietly(final SocketChannel socketChannel, final EventListenerFactory factory,
+                                 final long queuedNanos) {
+        try {
+            registerChannel(socketChannel, factory, queuedNanos);
+        } catch (final IOException ex) {
+            LOG.log(Level.WARNING, "Could not register channel", ex);
+            try {
+                socketChannel.close();
+            } catch (final IOException e) {
+                LOG.log(Level.FINE, "Could not close channel", e);
+            }
+            releaseConnection(socketChannel.socket().getRemoteSocketAddress());
+        }
+    }
+
+    private void registerChannel(final SocketChannel channel, final EventListenerFactory factory,
+                                 final long queuedNanos) throws IOException {
+        final SelectionKey key;
+        try {
+            channel.configureBlocking(false);
+            key = channel.register(this.selector, 0);
+        } catch (final ClosedChannelException ex) {
+            // channel is closed. just process the other channels
+            releaseConnection(channel.socket().getRemoteSocketAddress());
+            return;
+        }
+
+        final TrafficShaper sessionShaper = this.shaper.session(this.config);
+        final DefaultSessionContext session = newSession(key,
+                sessionShaper.isEnabled() ? sessionShaper : null, factory);
+        if (!this.segment.register(session)) {
+            key.cancel();
+            recycle(session);
+            throw new IOException("too many sessions");
+        }
+        this.sessionCount++;
+        try {
+            if (this.timing && queuedNanos != 0L) {
+                this.probe.dispatched(session.handle(), System.nanoTime() - queuedNanos);
+            }
+            key.attach(session);
+            sessionCreated(session);
+        } catch (final CancelledKeyException ex) {
+            queueClosedSession(session);
+            key.attach(null);
+        }
+    }
+
+    private void joinAcceptor() {
+        if (this.acceptor == null) {
+            return;
+        }
+
+        for (final SharedAcceptor.Endpoint endpoint : this.acceptor.endpoints()) {
+            try {
+                this.acceptKeys.add(endpoint.serverChannel().register(this.selector, 0, endpoint));
+            } catch (final ClosedChannelException ex) {
+                // the server is shutting down
             }
         }
+        if (!this.acceptKeys.isEmpty()) {
+            this.acceptor.join(this);
+        }
+    }
+
+    private void leaveAcceptor() {
+        this.acceptKeys.forEach(SelectionKey::cancel);
+        this.acceptKeys.clear();
+        this.acceptor.leave(this);
+    }
+
+    /**
+     * Starts selecting the shared listening sockets once this worker holds the accept token. Called from the event
+     * loop.
+     */
+    void armAccept() {
+        if (!this.acceptor.isHolder(this)) {
+            return;
+        }
+        if (this.acceptKeys.isEmpty() || this.acceptor.isClosed()) {
+            // the token reached a worker that stopped accepting
+            this.acceptor.leave(this);
+        } else if (!this.admission.isPaused() || this.admission.tryResume()) {
+            this.acceptKeys.forEach(k -> k.interestOps(SelectionKey.OP_ACCEPT));
+        }
+    }
+
+    /**
+     * Stops selecting the shared listening sockets. Called from the event loop.
+     */
+    void disarmAccept() {
+        for (final SelectionKey key : this.acceptKeys) {
+            if (key.isValid()) {
+                key.interestOps(0);
+            }
+        }
+    }
+
+    /**
+     * Opens an in-memory connection to this worker's default listener. Both ends run on this worker.
+     *
+     * @param client the listener of the client end.
+     * @return the client end, or {@code null} if this worker is shutting down.
+     */
+    SessionContext connectLocal(final EventListener client) {
+        if (this.status.compareTo(ReactorStatus.ACTIVE) > 0) {
+            return null;
+        }
+
+        return LocalSession.connect(this, this.localBufferSize, client);
+    }
+
+    void addLocalSession(final LocalSession session) {
+        this.localSessions.add(session);
+    }
+
+    void removeLocalSession(final LocalSession session) {
+        this.localSessions.remove(session);
+    }
+
+    /**
+     * Records traffic on a local session, which goes through the task queue instead of the selector. Called from
+     * the event loop.
+     */
+    void localActivity() {
+        if (this.status == ReactorStatus.DRAINING) {
+            this.lastActivity = System.nanoTime();
+        }
+    }
+
+    /**
+     * Writes a broadcast to the open sessions of this worker. Called from the event loop.
+     */
+    void broadcast(final Broadcast broadcast) {
+        try {
+            this.segment.forEach(session -> {
+                if (!session.isClosed()) {
+                    session.sessionChannel().send(broadcast);
+                }
+            });
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    /**
+     * Submits a task unless this worker is shutting down past its last run of the task queue.
+     *
+     * @param task the task.
+     * @return {@code true} if the task will run, {@code false} if it was refused.
+     */
+    boolean submit(final Runnable task) {
+        this.dispatching.incrementAndGet();
+        try {
+            if (this.tasksClosed) {
+                return false;
+            }
+
+            execute(task);
+            return true;
+        } finally {
+            this.dispatching.decrementAndGet();
+        }
+    }
+
+    private DefaultSessionContext newSession(final SelectionKey key, final TrafficShaper sessionShaper,
+                                             final EventListenerFactory factory) {
+        final DefaultSessionContext session = this.sessionPool.poll();
+        if (session == null) {
+            return new DefaultSessionContext(key, this, sessionShaper, factory);
+        }
+
+        session.init(key, this, sessionShaper, factory);
+        return session;
+    }
+
+    /**
+     * Keeps a reported session for reuse. Listeners holding its handle see it closed from now on.
+     */
+    private void recycle(final DefaultSessionContext session) {
+        if (this.sessionPool.size() < this.sessionPoolSize) {
+            session.recycle();
+            this.sessionPool.push(session);
+        }
+    }
+
+    /**
+     * Recycles a session once the listeners holding it are done. Called from any thread.
+     */
+    void recycleReleased(final DefaultSessionContext session) {
+        execute(() -> recycle(session));
+    }
+
+    private void addSession(final DefaultSessionContext session) {
+        this.segment.add(session);
+        this.sessionCount++;
+    }
+
+    private boolean removeSession(final DefaultSessionContext session) {
+        if (!this.segment.remove(session)) {
+            return false;
+        }
+
+        this.sessionCount--;
+        return true;
+    }
+
+    /**
+     * Returns a copy of the open sessions, for loops that may remove sessions.
+     */
+    private List<DefaultSessionContext> sessionList() {
+        final List<DefaultSessionContext> list = new ArrayList<>(this.sessionCount);
+        this.segment.forEach(list::add);
+        return list;
     }
 
     private void doShutdown() {
+        if (this.acceptor != null) {
+            leaveAcceptor();
+        }
+        this.tasksClosed = true;
+        awaitDispatches();
         closeNewChannels();
         closeSelector();
         processClosedSessions();
+        // queues their disconnection, run below
+        this.localSessions.forEach(LocalSession::close);
+        processTasks();
 
+        // sessions moved off this worker keep their ids
+        this.registry.release(this.segment);
         this.status = ReactorStatus.SHUT_DOWN;
     }
 
-    private void sessionCreated(final SessionContext session) {
+    private void sessionCreated(final DefaultSessionContext session) {
         try {
-            this.listener.connected(session);
+            this.probe.connected(session.handle());
+            final long start = this.timing ? System.nanoTime() : 0L;
+            session.listener().connected(session.handle());
+            if (this.timing) {
+                this.probe.callback(session.handle(), "connected", System.nanoTime() - start);
+            }
         } catch (final CancelledKeyException ex) {
             queueClosedSession(session);
         }
     }
 
-    public void queueClosedSession(final SessionContext session) {
-        if (session != null) {
+    public void queueClosedSession(final DefaultSessionContext session) {
+        if (session != null && session.markCloseQueued()) {
             this.closedSessions.add(session);
         }
     }
@@ -179,8 +863,9 @@ public class DefaultWorker implements Runnable {
     private void closeSelector() {
         if (this.selector.isOpen()) {
             for (final SelectionKey key : this.selector.keys()) {
-                final SessionContext session = getSession(key);
-                if (session != null) {
+                // cancelled keys may belong to sessions migrated to another worker, listening sockets have none
+                final SessionContext session = key.attachment() instanceof DefaultSessionContext ? getSession(key) : null;
+                if (session != null && key.isValid()) {
                     session.close();
                 }
             }
@@ -193,24 +878,220 @@ public class DefaultWorker implements Runnable {
         }
     }
 
-    private static SessionContext getSession(final SelectionKey key) {
-        return (SessionContext) key.attachment();
+    private static DefaultSessionContext getSession(final SelectionKey key) {
+        return (DefaultSessionContext) key.attachment();
     }
 
     private void processEvent(final SelectionKey key) {
-        if (key.isValid()) {
-            final SessionContext session = getSession(key);
+        if (key.attachment() instanceof SharedAcceptor.Endpoint) {
+            if (key.isValid() && key.isAcceptable()) {
+                this.acceptor.accept(this, (SharedAcceptor.Endpoint) key.attachment());
+            }
+        } else if (key.isValid()) {
+            final DefaultSessionContext session = getSession(key);
+            session.recordEvent();
             try {
+                final SessionChannel channel = session.sessionChannel();
+                if (key.isWritable() && channel.isQueued()) {
+                    channel.flush(this);
+                }
+
+                final long start = this.timing ? System.nanoTime() : 0L;
+                final String callback;
                 if (key.isReadable()) {
-                    this.listener.inputReady(session);
-                } else if (key.isWritable()) {
-                    this.listener.outputReady(session);
+                    callback = "inputReady";
+                    session.listener().inputReady(session.handle());
+                } else if (key.isWritable() && session.isOutputInterest()) {
+                    callback = "outputReady";
+                    session.listener().outputReady(session.handle());
+                } else {
+                    callback = null;
+                }
+                if (this.timing && callback != null) {
+                    this.probe.callback(session.handle(), callback, System.nanoTime() - start);
                 }
             } catch (final CancelledKeyException ex) {
                 queueClosedSession(session);
                 key.attach(null);
+            } catch (final IOException ex) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the total time the event loop spent processing, as opposed to waiting for events.
+     *
+     * @return the busy time in nanoseconds.
+     */
+    public long busyNanos() {
+        return this.busyNanos;
+    }
+
+    /**
+     * Returns the total time the event loop spent in the given phase. The phases add up to {@link #busyNanos()}.
+     *
+     * @param phase the loop phase.
+     * @return the phase time in nanoseconds.
+     */
+    public long phaseNanos(final LoopPhase phase) {
+        switch (Preconditions.checkNotNull(phase, "phase is null")) {
+            case IO:
+                return this.ioNanos;
+            case TASKS:
+                return this.taskNanos;
+            default:
+                return this.sessionNanos;
+        }
+    }
+
+    /**
+     * Stops taking new channels and hands the queued channels and the open sessions over to the given workers,
+     * then shuts down.
+     *
+     * @param targets the workers taking over.
+     */
+    void retire(final List<DefaultWorker> targets) {
+        Preconditions.checkArgument(!targets.isEmpty(), "no workers to hand over to");
+
+        execute(() -> {
+            // refuse new channels from now on
+            shutdown();
+            awaitDispatches();
+
+            final int[] next = {0};
+            this.newChannels.drain((channel, factory, queuedNanos) -> {
+                if (targets.get(next[0]++ % targets.size()).handOver(channel, factory, queuedNanos)) {
+                    this.connections.decrementAndGet();
+                } else {
+                    closeNewChannel(channel);
+                }
+            }, Integer.MAX_VALUE);
+
+            for (final DefaultSessionContext session : sessionList()) {
+                migrate(session, targets.get(next[0]++ % targets.size()));
+            }
+        });
+    }
+
+    private boolean handOver(final SocketChannel channel, final EventListenerFactory factory, final long queuedNanos) {
+        this.dispatching.incrementAndGet();
+        try {
+            if (this.status.compareTo(ReactorStatus.DRAINING) > 0) {
+                return false;
+            }
+
+            this.connections.incrementAndGet();
+            // the ring belongs to the acceptor, take the task queue
+            execute(() -> registerLater(channel, factory, queuedNanos));
+            return true;
+        } finally {
+            this.dispatching.decrementAndGet();
+        }
+    }
+
+    /**
+     * Moves the busiest sessions to the target worker until about half of the given load difference has been
+     * transferred. Sessions busier than that are kept, moving them would only move the hot spot.
+     *
+     * @param target      the less loaded worker.
+     * @param difference  the utilization difference between this worker and the target.
+     * @param utilization the utilization of this worker.
+     */
+    void rebalance(final DefaultWorker target, final double difference, final double utilization) {
+        execute(() -> {
+            final List<DefaultSessionContext> candidates = new ArrayList<>(this.sessionCount);
+            final Map<DefaultSessionContext, Long> events = new HashMap<>();
+            long total = 0;
+            for (final DefaultSessionContext session : sessionList()) {
+                final long count = session.drainEvents();
+                if (count > 0) {
+                    candidates.add(session);
+                    events.put(session, count);
+                    total += count;
+                }
+            }
+
+            if (total == 0 || this.status != ReactorStatus.ACTIVE) {
+                return;
+            }
+
+            candidates.sort((a, b) -> Long.compare(events.get(b), events.get(a)));
+
+            double moved = 0;
+            for (final DefaultSessionContext session : candidates) {
+                final double share = utilization * events.get(session) / total;
+                if (moved + share <= difference / 2) {
+                    migrate(session, target);
+                    moved += share;
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves the given session to the target worker, keeping its attributes and interest. Must be called from this
+     * worker's event loop.
+     *
+     * @param session the session to move.
+     * @param target  the worker taking over the session.
+     */
+    void migrate(final DefaultSessionContext session, final DefaultWorker target) {
+        if (target == this || !this.segment.contains(session) || !session.detach()) {
+            return;
+        }
+
+        this.segment.leave(session);
+        this.sessionCount--;
+        this.connections.decrementAndGet();
+
+        target.connections.incrementAndGet();
+        target.execute(() -> target.adopt(session));
+    }
+
+    private void adopt(final DefaultSessionContext session) {
+        addSession(session);
+
+        final SelectionKey key;
+        try {
+            key = session.socketChannel().register(this.selector, 0, session);
+        } catch (final ClosedChannelException ex) {
+            queueClosedSession(session);
+            return;
+        }
+
+        if (!session.attach(key, this)) {
+            queueClosedSession(session);
+        }
+    }
+
+    /**
+     * Stops processing new channels and lets the open sessions finish. Sessions are closed once no I/O happened
+     * for the quiet period, or when the timeout expires.
+     *
+     * @param quietPeriod the time without I/O after which sessions are closed.
+     * @param timeout     the maximum time to wait for sessions to finish.
+     * @param unit        the time unit of the arguments.
+     */
+    public void drain(final long quietPeriod, final long timeout, final TimeUnit unit) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.status.compareTo(ReactorStatus.ACTIVE) > 0) {
+                return;
             }
+
+            // if inactive, just close the opened selector
+            if (this.status == ReactorStatus.INACTIVE) {
+                doShutdown();
+                return;
+            }
+            this.status = ReactorStatus.DRAINING;
+        } finally {
+            lock.unlock();
         }
+
+        execute(() -> startDrain(unit.toNanos(quietPeriod), unit.toNanos(timeout)));
     }
 
     /**
@@ -220,7 +1101,8 @@ public class DefaultWorker implements Runnable {
         final ReentrantLock lock = this.mainLock;
         lock.lock();
         try {
-            if (this.status.compareTo(ReactorStatus.ACTIVE) > 0) {
+            // a drain can be cut short
+            if (this.status.compareTo(ReactorStatus.DRAINING) > 0) {
                 return;
             }
 
@@ -237,5 +1119,19 @@ public class DefaultWorker implements Runnable {
         this.selector.wakeup();
     }
 
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
 
+        private final Runnable task;
+        private final long deadline;
+
+        private ScheduledTask(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(final ScheduledTask other) {
+            return Long.compare(this.deadline - other.deadline, 0);
+        }
+    }
 }
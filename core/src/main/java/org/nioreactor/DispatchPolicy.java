@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+/**
+ * How accepted connections are spread over the workers.
+ */
+public enum DispatchPolicy {
+
+    /**
+     * Each connection goes to the next worker in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Connections go to the worker owning their {@link ReactorOption#AFFINITY_KEY} on a consistent hash ring, unless
+     * it holds more than {@link ReactorOption#HASH_LOAD_FACTOR} times the average connections. Reconnecting clients
+     * find the state their worker cached for them, and resizing the pool only moves the keys of the workers added or
+     * retired.
+     */
+    CONSISTENT_HASH
+
+}
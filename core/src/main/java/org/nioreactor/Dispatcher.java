@@ -16,7 +16,11 @@
 
 package org.nioreactor;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Socket channel dispatcher. Mainly used to forward accepted requests.
@@ -25,11 +29,113 @@ import java.nio.channels.SocketChannel;
  */
 public interface Dispatcher {
 
+    /**
+     * Starts the workers. Called from the acceptor thread, the only one handing channels over through the workers'
+     * handoff queues; channels dispatched from other threads go through the workers' task queues.
+     */
     void start();
 
-    void dispatch(SocketChannel socketChannel);
+    /**
+     * Forwards the given channel to a worker.
+     *
+     * @param socketChannel the accepted channel.
+     * @return {@code true} if the channel has been dispatched, {@code false} if all workers are at capacity.
+     */
+    boolean dispatch(SocketChannel socketChannel);
+
+    /**
+     * Forwards the given channel to a worker, handling its events with listeners created by the given factory
+     * instead of the dispatcher's own. Lets several endpoints share the same workers.
+     *
+     * @param socketChannel the accepted channel.
+     * @param factory       the listener factory of the endpoint the channel was accepted on, or {@code null} for
+     *                      the dispatcher's own.
+     * @return {@code true} if the channel has been dispatched, {@code false} if all workers are at capacity.
+     */
+    boolean dispatch(SocketChannel socketChannel, EventListenerFactory factory);
+
+    /**
+     * Lets the workers accept on the given listening socket themselves, if configured to. Must be called before
+     * {@link #start()}.
+     *
+     * @param serverChannel the bound, non-blocking listening socket.
+     * @param factory       the listener factory of the endpoint, or {@code null} for the dispatcher's own.
+     * @param childConfig   the options of the accepted sockets.
+     * @return {@code true} if the workers accept on the socket, {@code false} if the caller must accept and
+     * {@link #dispatch} the connections.
+     */
+    boolean acceptOn(ServerSocketChannel serverChannel, EventListenerFactory factory, SocketConfig childConfig);
+
+    /**
+     * Returns the admission control tracking the dispatched connections.
+     *
+     * @return the admission control.
+     */
+    AdmissionControl admissionControl();
+
+    /**
+     * Opens an in-memory connection to the dispatcher's own listener, see {@link ServerPromise#connectLocal}.
+     *
+     * @param listener the listener of the client end.
+     * @return the client end.
+     * @throws IOException if no worker can take the connection.
+     */
+    SessionContext connectLocal(EventListener listener) throws IOException;
+
+    /**
+     * Writes the given payload to all the open sessions. Each worker writes read-only views of the same buffer to its
+     * own sessions.
+     *
+     * @param payload the bytes to write, from position to limit.
+     * @param release called once every session has flushed or dropped the payload, or {@code null}.
+     */
+    void broadcast(ByteBuffer payload, Runnable release);
+
+    /**
+     * Finds an open session by id. Safe to call from any thread.
+     *
+     * @param id the session id.
+     * @return the session, or {@code null} if no open session has the given id.
+     */
+    SessionContext lookup(long id);
+
+    /**
+     * Returns the current number of workers.
+     *
+     * @return the number of workers.
+     */
+    int workers();
+
+    /**
+     * Changes the number of workers. New workers take channels right away, retired workers hand their sessions over
+     * to the remaining ones.
+     *
+     * @param workers the new number of workers.
+     * @throws IOException if a new worker cannot be created.
+     */
+    void resize(int workers) throws IOException;
+
+    /**
+     * Changes the number of workers. Retired workers stop taking channels and drain their sessions.
+     *
+     * @param workers     the new number of workers.
+     * @param quietPeriod the time without I/O after which sessions of retired workers are closed.
+     * @param timeout     the maximum time to wait for sessions of retired workers to finish.
+     * @param unit        the time unit of the arguments.
+     * @throws IOException if a new worker cannot be created.
+     */
+    void resize(int workers, long quietPeriod, long timeout, TimeUnit unit) throws IOException;
 
     void shutdown();
 
+    /**
+     * Lets the dispatched connections finish before shutting down.
+     *
+     * @param quietPeriod the time without I/O after which sessions are closed.
+     * @param timeout     the maximum time to wait for sessions to finish.
+     * @param unit        the time unit of the arguments.
+     */
+    void drain(long quietPeriod, long timeout, TimeUnit unit);
+
     void await() throws InterruptedException;
 }
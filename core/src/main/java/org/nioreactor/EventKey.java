@@ -25,6 +25,10 @@ import java.nio.channels.SelectionKey;
  */
 public enum EventKey {
 
+    /**
+     * No interest in I/O events.
+     */
+    NONE(0),
     /**
      * Interest in data input.
      */
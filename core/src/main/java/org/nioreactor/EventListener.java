@@ -45,6 +45,15 @@ public interface EventListener {
      */
     void outputReady(SessionContext session);
 
+    /**
+     * Triggered when a graceful shutdown starts. The session should finish its in-flight work and close; it is
+     * closed anyway once the shutdown quiet period or deadline is reached.
+     *
+     * @param session the I/O session.
+     */
+    default void shuttingDown(final SessionContext session) {
+    }
+
     /**
      * Triggered when the given session has been terminated.
      *
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring of the workers. Each worker owns {@link #POINTS} points placed by the index of its registry
+ * segment, so a worker keeps its keys when others are added or retired. Immutable.
+ */
+final class HashRing {
+
+    // points per worker, evens out the share of the ring each worker owns
+    private static final int POINTS = 64;
+
+    private final List<DefaultWorker> workers;
+    private final long[] points;
+    private final DefaultWorker[] owners;
+
+    HashRing(final List<DefaultWorker> workers) {
+        this.workers = workers;
+
+        final long[][] entries = new long[workers.size() * POINTS][];
+        for (int w = 0; w < workers.size(); w++) {
+            final long seed = (long) workers.get(w).segment().index() * POINTS;
+            for (int p = 0; p < POINTS; p++) {
+                entries[w * POINTS + p] = new long[]{mix(seed + p), w};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[entries.length];
+        this.owners = new DefaultWorker[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            this.points[i] = entries[i][0];
+            this.owners[i] = workers.get((int) entries[i][1]);
+        }
+    }
+
+    /**
+     * Returns the workers the ring has been built from.
+     */
+    List<DefaultWorker> workers() {
+        return this.workers;
+    }
+
+    /**
+     * Returns the number of points on the ring.
+     */
+    int size() {
+        return this.points.length;
+    }
+
+    /**
+     * Returns the first point at or after the hash of the given key.
+     *
+     * @param key the key.
+     * @return the point index.
+     */
+    int first(final long key) {
+        final int index = Arrays.binarySearch(this.points, mix(key));
+        final int point = index >= 0 ? index : -index - 1;
+        return point == this.points.length ? 0 : point;
+    }
+
+    /**
+     * Returns the owner of the given point, wrapping around the ring.
+     *
+     * @param point the point index, possibly past the last point.
+     * @return the worker owning the point.
+     */
+    DefaultWorker owner(final int point) {
+        return this.owners[point % this.owners.length];
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(final long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
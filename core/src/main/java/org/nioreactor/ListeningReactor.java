@@ -20,27 +20,22 @@ import org.nioreactor.util.Preconditions;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static org.nioreactor.SocketOption.SO_KEEPALIVE;
-import static org.nioreactor.SocketOption.SO_LINGER;
-import static org.nioreactor.SocketOption.SO_RCVBUF;
-import static org.nioreactor.SocketOption.SO_REUSEADDR;
-import static org.nioreactor.SocketOption.SO_SNDBUF;
-import static org.nioreactor.SocketOption.SO_TIMEOUT;
-import static org.nioreactor.SocketOption.TCP_NODELAY;
-
 /**
  * I/O reactor that is capable of listening incoming connections and forward to workers.
  * <p>
@@ -49,42 +44,117 @@ import static org.nioreactor.SocketOption.TCP_NODELAY;
 public class ListeningReactor implements Runnable {
 
     private static final Logger LOG = Logger.getLogger(ListeningReactor.class.getName());
+    // bounds the backlog drain on shutdown under a steady flood of connections
+    private static final int BACKLOG_DRAIN_LIMIT = 65536;
 
     private final ReentrantLock mainLock = new ReentrantLock();
-    private final SocketConfig config;
+    private final SocketConfig listenerConfig;
+    private final SocketConfig childConfig;
     private final Dispatcher dispatcher;
-    private final SocketAddress socketAddress;
-    private final int backlog;
+    private final AdmissionControl admission;
+    private final List<Endpoint> endpoints = new ArrayList<>();
     private final Selector selector;
-    private final ServerSocketChannel serverChannel;
+    private final CountDownLatch released = new CountDownLatch(1);
+    private long drainQuietPeriod;
+    private long drainTimeout;
+    private boolean handingOff = false;
     private volatile ReactorStatus status = ReactorStatus.INACTIVE;
 
     public ListeningReactor(final SocketConfig config, final Dispatcher dispatcher,
                             final SocketAddress socketAddress, final int backlog) throws IOException {
-        this.config = Preconditions.checkNotNull(config);
-        this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher is null");
-        this.socketAddress = socketAddress;
-        this.backlog = backlog;
-        this.selector = Selector.open();
-        this.serverChannel = buildServerChannel();
+        this(config, config, dispatcher, socketAddress, backlog);
     }
 
-    private ServerSocketChannel buildServerChannel() throws IOException {
-        final ServerSocketChannel newChannel = ServerSocketChannel.open();
+    /**
+     * Creates a reactor with distinct options for the listening socket and the accepted sockets.
+     *
+     * @param listenerConfig the listening socket options.
+     * @param childConfig    the accepted socket options.
+     * @param dispatcher     the dispatcher accepted sockets are forwarded to.
+     * @param socketAddress  the address to bind.
+     * @param backlog        the listen backlog.
+     * @throws IOException                   if the listening socket cannot be created.
+     * @throws UnsupportedOperationException if an option is not supported by the running JVM or platform.
+     */
+    public ListeningReactor(final SocketConfig listenerConfig, final SocketConfig childConfig, final Dispatcher dispatcher,
+                            final SocketAddress socketAddress, final int backlog) throws IOException {
+        this(listenerConfig, childConfig, dispatcher);
         try {
-            final ServerSocket socket = newChannel.socket();
-            socket.setReuseAddress(this.config.option(SO_REUSEADDR));
+            this.endpoints.add(new Endpoint(buildServerChannel(), socketAddress, backlog, null));
+        } catch (final IOException ex) {
+            closeSelector(this.selector);
+            throw ex;
+        }
+    }
 
-            final int timeout = this.config.option(SO_TIMEOUT);
-            if (timeout > 0) {
-                socket.setSoTimeout(timeout);
-            }
+    /**
+     * Creates a reactor accepting on an already bound channel, e.g. inherited from the launching process or handed
+     * off by another reactor. Listening socket options are not applied to it.
+     *
+     * @param listenerConfig the listening socket options of the addresses added with {@link #listen}.
+     * @param childConfig    the accepted socket options.
+     * @param dispatcher     the dispatcher accepted sockets are forwarded to.
+     * @param serverChannel  the bound channel to accept on.
+     * @throws IOException                   if the channel cannot be made non-blocking.
+     * @throws UnsupportedOperationException if an option is not supported by the running JVM or platform.
+     */
+    public ListeningReactor(final SocketConfig listenerConfig, final SocketConfig childConfig, final Dispatcher dispatcher,
+                            final ServerSocketChannel serverChannel) throws IOException {
+        this(listenerConfig, childConfig, dispatcher);
+        try {
+            Preconditions.checkNotNull(serverChannel, "server channel is null");
+            Preconditions.checkArgument(serverChannel.socket().isBound(), "server channel is not bound");
+            serverChannel.configureBlocking(false);
+            this.endpoints.add(new Endpoint(serverChannel, null, 0, null));
+        } catch (final IOException | RuntimeException ex) {
+            closeSelector(this.selector);
+            throw ex;
+        }
+    }
 
-            final int rcvBuf = this.config.option(SO_RCVBUF);
-            if (rcvBuf > 0) {
-                socket.setReceiveBufferSize(rcvBuf);
+    private ListeningReactor(final SocketConfig listenerConfig, final SocketConfig childConfig,
+                             final Dispatcher dispatcher) throws IOException {
+        this.listenerConfig = Preconditions.checkNotNull(listenerConfig, "listener config is null");
+        this.childConfig = Preconditions.checkNotNull(childConfig, "child config is null");
+        // fail before binding rather than on the first accepted connection
+        SocketOption.checkSupported(listenerConfig, true);
+        SocketOption.checkSupported(childConfig, false);
+        this.dispatcher = Preconditions.checkNotNull(dispatcher, "dispatcher is null");
+        this.admission = dispatcher.admissionControl();
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Adds another address to listen on. Channels accepted on it are handled by listeners created by the given
+     * factory, on the same workers as the other addresses. Must be called before the reactor runs.
+     *
+     * @param socketAddress the address to bind.
+     * @param backlog       the listen backlog.
+     * @param factory       the listener factory of the address.
+     * @throws IOException if the listening socket cannot be created.
+     */
+    public void listen(final SocketAddress socketAddress, final int backlog, final EventListenerFactory factory)
+            throws IOException {
+        Preconditions.checkNotNull(socketAddress, "socket address is null");
+        Preconditions.checkNotNull(factory, "factory is null");
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.status != ReactorStatus.INACTIVE) {
+                throw new IllegalStateException("reactor already running");
             }
+            this.endpoints.add(new Endpoint(buildServerChannel(), socketAddress, backlog, factory));
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    private ServerSocketChannel buildServerChannel() throws IOException {
+        final ServerSocketChannel newChannel = ServerSocketChannel.open();
+        try {
+            // applied before bind so SO_RCVBUF is accounted for in the window scale of accepted sockets
+            SocketOption.applyAll(newChannel, this.listenerConfig, true);
             newChannel.configureBlocking(false);
 
             return newChannel;
@@ -110,11 +180,27 @@ public class ListeningReactor implements Runnable {
         this.status = ReactorStatus.ACTIVE;
 
         try {
-            this.serverChannel.socket().bind(socketAddress, backlog);
-            this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            for (final Endpoint endpoint : this.endpoints) {
+                // adopted channels are bound already
+                if (endpoint.socketAddress != null) {
+                    endpoint.serverChannel.socket().bind(endpoint.socketAddress, endpoint.backlog);
+                }
+                if (!this.dispatcher.acceptOn(endpoint.serverChannel, endpoint.factory, this.childConfig)) {
+                    endpoint.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT, endpoint);
+                }
+            }
+            // otherwise the workers accept and this thread only waits for the shutdown
+            final boolean accepting = !this.selector.keys().isEmpty();
+            if (accepting) {
+                this.admission.resumeHook(this.selector::wakeup);
+            }
             this.dispatcher.start();
 
             while (this.status == ReactorStatus.ACTIVE) {
+                if (accepting) {
+                    resumeAccept();
+                }
+
                 final int readyCount = this.selector.select();
                 if (this.status == ReactorStatus.ACTIVE) {
                     processEvents(readyCount);
@@ -127,6 +213,13 @@ public class ListeningReactor implements Runnable {
         }
     }
 
+    private void resumeAccept() {
+        if (this.admission.tryResume()) {
+            LOG.info("Resuming accept");
+            this.selector.keys().forEach(k -> k.interestOps(SelectionKey.OP_ACCEPT));
+        }
+    }
+
     private void processEvents(final int readyCount) throws IOException {
         if (readyCount > 0) {
             final Set<SelectionKey> selectedKeys = this.selector.selectedKeys();
@@ -141,11 +234,25 @@ public class ListeningReactor implements Runnable {
     private void doShutdown() {
         LOG.info("Shutting down I/O reactor");
 
-        closeChannel(this.serverChannel);
-
-        closeSelector();
+        if (this.handingOff) {
+            // deregisters the channels, leaving them open with their backlog
+            closeSelector(this.selector);
+        } else {
+            if (this.status == ReactorStatus.DRAINING) {
+                acceptBacklog();
+            }
+            this.endpoints.forEach(e -> closeChannel(e.serverChannel));
+            closeSelector();
+        }
 
-        this.dispatcher.shutdown();
+        if (this.status == ReactorStatus.DRAINING) {
+            LOG.log(Level.INFO, "Draining {0} connections", this.admission.connections());
+            this.dispatcher.drain(this.drainQuietPeriod, this.drainTimeout, TimeUnit.NANOSECONDS);
+        } else {
+            this.dispatcher.shutdown();
+        }
+        // workers accepting on the channels have been told to stop too
+        this.released.countDown();
 
         try {
             this.dispatcher.await();
@@ -161,11 +268,7 @@ public class ListeningReactor implements Runnable {
         if (key.isValid()) {
             try {
                 if (key.isAcceptable()) {
-                    final SocketChannel socketChannel = ((ServerSocketChannel) key.channel()).accept();
-                    if (socketChannel != null) {
-                        prepareSocket(socketChannel.socket());
-                        dispatcher.dispatch(socketChannel);
-                    }
+                    accept((Endpoint) key.attachment());
                 }
             } catch (final CancelledKeyException ex) {
                 LOG.log(Level.WARNING, "selection key that is no longer valid", ex);
@@ -173,38 +276,101 @@ public class ListeningReactor implements Runnable {
         }
     }
 
-    private void closeSelector() {
-        if (this.selector.isOpen()) {
-            this.selector.keys().forEach(k -> closeChannel(k.channel()));
+    /**
+     * Accepts a pending connection and forwards it to the dispatcher.
+     *
+     * @return {@code false} if the backlog is empty, the connection limit has been reached or accepting has been
+     * paused.
+     */
+    private boolean accept(final Endpoint endpoint) throws IOException {
+        if (!this.admission.tryAcquire()) {
+            overloaded(endpoint.serverChannel);
+            return false;
+        }
 
-            // Stop dispatching I/O events
-            closeSelector(this.selector);
+        final SocketChannel socketChannel = endpoint.serverChannel.accept();
+        if (socketChannel == null) {
+            this.admission.release();
+            return false;
+        }
+
+        final SocketAddress remoteAddress = socketChannel.socket().getRemoteSocketAddress();
+        if (!this.admission.tryAcquire(remoteAddress)) {
+            LOG.log(Level.FINE, "Address limits reached: {0}", remoteAddress);
+            reject(socketChannel);
+            this.admission.release();
+            return true;
         }
-    }
 
-    private void prepareSocket(final Socket socket) throws IOException {
-        socket.setTcpNoDelay(this.config.option(TCP_NODELAY));
-        socket.setKeepAlive(this.config.option(SO_KEEPALIVE));
+        prepareSocket(socketChannel);
+        final long availability = this.admission.workerAvailability();
+        if (this.dispatcher.dispatch(socketChannel, endpoint.factory)) {
+            return true;
+        }
 
-        final int timeout = this.config.option(SO_TIMEOUT);
-        if (timeout > 0) {
-            socket.setSoTimeout(timeout);
+        // all workers at capacity or with a full handoff queue
+        if (this.admission.policy() == OverloadPolicy.PAUSE_ACCEPT
+                && this.admission.pauseUntilWorkerAvailable(availability)) {
+            LOG.warning("No worker can take connections. Pausing accept");
+            this.selector.keys().forEach(k -> k.interestOps(0));
         }
+        reject(socketChannel);
+        this.admission.release(remoteAddress);
+        return !this.admission.isPaused();
+    }
 
-        final int sndBuf = this.config.option(SO_SNDBUF);
-        if (sndBuf > 0) {
-            socket.setSendBufferSize(sndBuf);
+    /**
+     * Hands the connections left in the kernel backlog to the workers before the listening sockets are closed,
+     * which would reset them.
+     */
+    private void acceptBacklog() {
+        for (final Endpoint endpoint : this.endpoints) {
+            try {
+                int accepted = 0;
+                while (accepted < BACKLOG_DRAIN_LIMIT && endpoint.serverChannel.isOpen() && accept(endpoint)) {
+                    accepted++;
+                }
+            } catch (final IOException ex) {
+                LOG.log(Level.WARNING, "Could not accept the backlog", ex);
+            }
         }
+    }
 
-        final int rcvBuf = this.config.option(SO_RCVBUF);
-        if (rcvBuf > 0) {
-            socket.setReceiveBufferSize(rcvBuf);
+    private void overloaded(final ServerSocketChannel serverChannel) throws IOException {
+        if (this.admission.policy() == OverloadPolicy.PAUSE_ACCEPT) {
+            LOG.warning("Connection limit reached. Pausing accept");
+            // leave pending connections in the kernel backlog
+            this.selector.keys().forEach(k -> k.interestOps(0));
+            this.admission.pause();
+        } else {
+            final SocketChannel socketChannel = serverChannel.accept();
+            if (socketChannel != null) {
+                reject(socketChannel);
+            }
         }
+    }
 
-        final int linger = this.config.option(SO_LINGER);
-        if (linger >= 0) {
-            socket.setSoLinger(true, linger);
+    private void reject(final SocketChannel socketChannel) {
+        try {
+            // reset the connection instead of leaving it in TIME_WAIT
+            socketChannel.socket().setSoLinger(true, 0);
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "Could not set SO_LINGER", ex);
         }
+        closeChannel(socketChannel);
+    }
+
+    private void closeSelector() {
+        if (this.selector.isOpen()) {
+            this.selector.keys().forEach(k -> closeChannel(k.channel()));
+
+            // Stop dispatching I/O events
+            closeSelector(this.selector);
+        }
+    }
+
+    private void prepareSocket(final SocketChannel socketChannel) throws IOException {
+        SocketOption.applyAll(socketChannel, this.childConfig, false);
     }
 
     private void closeSelector(final Closeable selector) {
@@ -219,10 +385,146 @@ public class ListeningReactor implements Runnable {
         return this.status;
     }
 
+    public int connections() {
+        return this.admission.connections();
+    }
+
+    /**
+     * Opens an in-memory connection to the dispatcher's own listener.
+     *
+     * @param listener the listener of the client end.
+     * @return the client end.
+     * @throws IOException if no worker can take the connection.
+     */
+    public SessionContext connectLocal(final EventListener listener) throws IOException {
+        return this.dispatcher.connectLocal(listener);
+    }
+
+    /**
+     * Writes the given payload to all the open sessions.
+     *
+     * @param payload the bytes to write, from position to limit.
+     * @param release called once the payload is no longer used, or {@code null}.
+     */
+    public void broadcast(final ByteBuffer payload, final Runnable release) {
+        this.dispatcher.broadcast(payload, release);
+    }
+
+    /**
+     * Finds an open session by id.
+     *
+     * @param id the session id.
+     * @return the session, or {@code null} if no open session has the given id.
+     */
+    public SessionContext lookup(final long id) {
+        return this.dispatcher.lookup(id);
+    }
+
+    /**
+     * Returns the current number of workers.
+     *
+     * @return the number of workers.
+     */
+    public int workers() {
+        return this.dispatcher.workers();
+    }
+
+    /**
+     * Changes the number of workers.
+     *
+     * @param workers the new number of workers.
+     * @throws IOException if a new worker cannot be created.
+     */
+    public void resize(final int workers) throws IOException {
+        this.dispatcher.resize(workers);
+    }
+
+    /**
+     * Stops accepting connections and lets the dispatched ones finish.
+     *
+     * @param quietPeriod the time without I/O after which sessions are closed.
+     * @param timeout     the maximum time to wait for sessions to finish.
+     * @param unit        the time unit of the arguments.
+     */
+    public void shutdownGracefully(final long quietPeriod, final long timeout, final TimeUnit unit) {
+        Preconditions.checkArgument(quietPeriod >= 0, "quiet period < 0");
+        Preconditions.checkArgument(timeout >= quietPeriod, "timeout < quiet period");
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.status.compareTo(ReactorStatus.ACTIVE) > 0) {
+                return;
+            }
+
+            // if inactive, just close the opened selector
+            if (this.status == ReactorStatus.INACTIVE) {
+                doShutdown();
+                return;
+            }
+
+            this.drainQuietPeriod = unit.toNanos(quietPeriod);
+            this.drainTimeout = unit.toNanos(timeout);
+            this.status = ReactorStatus.DRAINING;
+        } finally {
+            lock.unlock();
+        }
+
+        this.selector.wakeup();
+    }
+
+    /**
+     * Stops accepting and lets the dispatched connections finish like {@link #shutdownGracefully}, but leaves the
+     * listening channels open for a successor, with the connections pending in their backlog.
+     *
+     * @param quietPeriod the time without I/O after which sessions are closed.
+     * @param timeout     the maximum time to wait for sessions to finish.
+     * @param unit        the time unit of the arguments.
+     * @return the listening channels, deregistered from this reactor.
+     * @throws InterruptedException if interrupted while waiting for the acceptor to release the channels.
+     */
+    public List<ServerSocketChannel> handOff(final long quietPeriod, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        Preconditions.checkArgument(quietPeriod >= 0, "quiet period < 0");
+        Preconditions.checkArgument(timeout >= quietPeriod, "timeout < quiet period");
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.status != ReactorStatus.ACTIVE) {
+                throw new IllegalStateException("reactor not running");
+            }
+
+            this.drainQuietPeriod = unit.toNanos(quietPeriod);
+            this.drainTimeout = unit.toNanos(timeout);
+            this.handingOff = true;
+            this.status = ReactorStatus.DRAINING;
+        } finally {
+            lock.unlock();
+        }
+
+        this.selector.wakeup();
+        this.released.await();
+
+        final List<ServerSocketChannel> channels = new ArrayList<>(this.endpoints.size());
+        for (final Endpoint endpoint : this.endpoints) {
+            if (endpoint.serverChannel.isOpen()) {
+                channels.add(endpoint.serverChannel);
+            }
+        }
+        return channels;
+    }
+
     public void shutdown() {
         final ReentrantLock lock = this.mainLock;
         lock.lock();
         try {
+            // cut a drain short
+            if (this.status == ReactorStatus.DRAINING) {
+                this.dispatcher.shutdown();
+                return;
+            }
+
             if (this.status.compareTo(ReactorStatus.ACTIVE) > 0) {
                 return;
             }
@@ -240,4 +542,20 @@ public class ListeningReactor implements Runnable {
 
         this.selector.wakeup();
     }
+
+    private static final class Endpoint {
+
+        private final ServerSocketChannel serverChannel;
+        private final SocketAddress socketAddress;
+        private final int backlog;
+        private final EventListenerFactory factory;
+
+        private Endpoint(final ServerSocketChannel serverChannel, final SocketAddress socketAddress, final int backlog,
+                         final EventListenerFactory factory) {
+            this.serverChannel = serverChannel;
+            this.socketAddress = socketAddress;
+            this.backlog = backlog;
+            this.factory = factory;
+        }
+    }
 }
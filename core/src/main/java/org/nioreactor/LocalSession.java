@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One end of an in-memory connection. Each end reads from its own ring buffer and writes into its peer's, and both
+ * ends are driven by the event loop of the same worker: readiness is delivered through the worker task queue, so
+ * nothing goes through the kernel.
+ * <p>
+ * Readiness is level-triggered like the selector: a callback is repeated on the next loop iteration while the end
+ * stays ready and interested.
+ */
+final class LocalSession implements SessionContext {
+
+    private static final AtomicLong CONNECTIONS = new AtomicLong(0);
+
+    private final DefaultWorker worker;
+    private final ByteRing inbound;
+    private final SocketAddress localAddress;
+    private final SocketAddress remoteAddress;
+    private final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicBoolean signalled = new AtomicBoolean(false);
+    private final AdaptiveReceiveSize receiveSize;
+    private final ByteChannel channel = new LocalChannel();
+    private LocalSession peer;
+    private volatile EventListener listener;
+    private volatile int interestOps = 0;
+    private volatile boolean closed = false;
+
+    private LocalSession(final DefaultWorker worker, final int bufferSize, final SocketAddress localAddress,
+                         final SocketAddress remoteAddress) {
+        this.worker = worker;
+        this.inbound = new ByteRing(bufferSize);
+        this.localAddress = localAddress;
+        this.remoteAddress = remoteAddress;
+        this.receiveSize = worker.receiveBuffers().newReceiveSize();
+    }
+
+    /**
+     * Creates a connection between the given client listener and the worker default listener. Both listeners are
+     * notified from the event loop.
+     *
+     * @param worker     the worker driving both ends.
+     * @param bufferSize the bytes buffered in each direction.
+     * @param client     the client end listener.
+     * @return the client end.
+     */
+    static LocalSession connect(final DefaultWorker worker, final int bufferSize, final EventListener client) {
+        final long connection = CONNECTIONS.incrementAndGet();
+        final SocketAddress serverAddress = new LocalAddress("server", connection);
+        final SocketAddress clientAddress = new LocalAddress("client", connection);
+        final LocalSession clientEnd = new LocalSession(worker, bufferSize, clientAddress, serverAddress);
+        final LocalSession serverEnd = new LocalSession(worker, bufferSize, serverAddress, clientAddress);
+        clientEnd.peer = serverEnd;
+        serverEnd.peer = clientEnd;
+        clientEnd.listener = client;
+
+        // queued ahead of any readiness the client end signals from now on
+        worker.execute(() -> {
+            serverEnd.listener = worker.listenerFor(null);
+            worker.addLocalSession(serverEnd);
+            worker.addLocalSession(clientEnd);
+            serverEnd.listener.connected(serverEnd);
+            clientEnd.listener.connected(clientEnd);
+        });
+        return clientEnd;
+    }
+
+    /**
+     * Runs the ready callback on the event loop unless one is already on its way.
+     */
+    private void signal() {
+        if (!this.closed && this.signalled.compareAndSet(false, true)) {
+            this.worker.execute(this::fire);
+        }
+    }
+
+    private void fire() {
+        this.signalled.set(false);
+        if (this.closed) {
+            return;
+        }
+
+        if (isReadable()) {
+            this.listener.inputReady(this);
+        } else if (isWritable()) {
+            this.listener.outputReady(this);
+        } else {
+            return;
+        }
+        this.worker.localActivity();
+
+        // still ready, deliver again on the next iteration instead of looping on the task queue
+        if ((isReadable() || isWritable()) && this.signalled.compareAndSet(false, true)) {
+            this.worker.schedule(this::fire, 0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Tells the listener that the worker is draining. Called from the event loop.
+     */
+    void shuttingDown() {
+        if (!this.closed) {
+            this.listener.shuttingDown(this);
+        }
+    }
+
+    private boolean isReadable() {
+        return !this.closed && (this.interestOps & SelectionKey.OP_READ) != 0
+                && (this.inbound.available() > 0 || this.peer.closed);
+    }
+
+    private boolean isWritable() {
+        return !this.closed && (this.interestOps & SelectionKey.OP_WRITE) != 0
+                && (this.peer.inbound.free() > 0 || this.peer.closed);
+    }
+
+    @Override
+    public long id() {
+        return SessionRegistry.NO_ID;
+    }
+
+    @Override
+    public ByteChannel channel() {
+        return this.channel;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        return this.localAddress;
+    }
+
+    @Override
+    public ByteBuffer receive() throws IOException {
+        final AdaptiveReceiveSize size = this.receiveSize;
+        final ByteBuffer buffer = this.worker.inEventLoop()
+                ? this.worker.receiveBuffers().acquire(size.size())
+                : ByteBuffer.allocate(size.size());
+
+        final int count = this.channel.read(buffer);
+        if (count < 0) {
+            return null;
+        }
+
+        size.record(count);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public <T> T socketOption(final SocketOption<T> option) {
+        throw new UnsupportedOperationException("local connections have no socket");
+    }
+
+    @Override
+    public void interestEvent(final EventKey ops) {
+        this.interestOps = Preconditions.checkNotNull(ops, "ops is null").interestOps();
+        signal();
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        this.worker.execute(task);
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        // the peer reads end-of-stream once it has drained its buffer
+        this.peer.signal();
+        this.worker.execute(() -> {
+            this.worker.removeLocalSession(this);
+            this.listener.disconnected(this);
+        });
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public <T> T putAttribute(final AttributeKey<T> key, final T value) {
+        Preconditions.checkNotNull(key, "key is null");
+        Preconditions.checkNotNull(value, "value is null");
+        return key.cast(this.attributes.put(key, value));
+    }
+
+    @Override
+    public <T> T getAttribute(final AttributeKey<T> key) {
+        return key.cast(this.attributes.get(key));
+    }
+
+    @Override
+    public <T> T removeAttribute(final AttributeKey<T> key) {
+        return key.cast(this.attributes.remove(key));
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.localAddress + "->" + this.remoteAddress + "][" + (this.closed ? "CLOSED" : "ACTIVE") + "]";
+    }
+
+    private final class LocalChannel implements ByteChannel {
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final LocalSession session = LocalSession.this;
+            if (session.closed) {
+                throw new ClosedChannelException();
+            }
+
+            final int count = session.inbound.read(dst);
+            if (count > 0) {
+                // room for the peer to write again
+                if ((session.peer.interestOps & SelectionKey.OP_WRITE) != 0) {
+                    session.peer.signal();
+                }
+                return count;
+            }
+            return session.peer.closed && session.inbound.available() == 0 ? -1 : 0;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            final LocalSession session = LocalSession.this;
+            if (session.closed) {
+                throw new ClosedChannelException();
+            }
+            if (session.peer.closed) {
+                throw new IOException("Connection closed by peer");
+            }
+
+            final int count = session.peer.inbound.write(src);
+            if (count > 0 && (session.peer.interestOps & SelectionKey.OP_READ) != 0) {
+                session.peer.signal();
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !LocalSession.this.closed;
+        }
+
+        @Override
+        public void close() {
+            LocalSession.this.close();
+        }
+    }
+
+    /**
+     * Address of a local connection end.
+     */
+    private static final class LocalAddress extends SocketAddress {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String side;
+        private final long connection;
+
+        private LocalAddress(final String side, final long connection) {
+            this.side = side;
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LocalAddress)) {
+                return false;
+            }
+            final LocalAddress that = (LocalAddress) o;
+            return this.connection == that.connection && this.side.equals(that.side);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.side.hashCode() + Long.hashCode(this.connection);
+        }
+
+        @Override
+        public String toString() {
+            return "local:" + this.side + "/" + this.connection;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per iteration budgets of a worker loop, so that a flood of ready channels, tasks or new connections does not starve
+ * the other phases. Work left over by a phase is carried over to the next iteration.
+ */
+final class LoopBudget {
+
+    // tasks run between clock reads
+    static final int TASK_BATCH = 16;
+
+    private final int ioRatio;
+    private final long ioTimeNanos;
+    private final int maxEvents;
+    private final int maxTasks;
+    private final int maxRegistrations;
+
+    LoopBudget(final ReactorConfig config) {
+        this.ioRatio = config.option(ReactorOption.IO_RATIO);
+        Preconditions.checkArgument(this.ioRatio > 0 && this.ioRatio <= 100, "io ratio out of range");
+        final long ioTime = config.option(ReactorOption.IO_TIME_BUDGET);
+        Preconditions.checkArgument(ioTime >= 0, "io time budget < 0");
+        this.ioTimeNanos = TimeUnit.MICROSECONDS.toNanos(ioTime);
+        this.maxEvents = limit(config.option(ReactorOption.MAX_EVENTS_PER_ITERATION), "max events per iteration < 0");
+        this.maxTasks = limit(config.option(ReactorOption.MAX_TASKS_PER_ITERATION), "max tasks per iteration < 0");
+        this.maxRegistrations = limit(config.option(ReactorOption.MAX_REGISTRATIONS_PER_ITERATION),
+                "max registrations per iteration < 0");
+    }
+
+    private static int limit(final int value, final String message) {
+        Preconditions.checkArgument(value >= 0, message);
+        return value == 0 ? Integer.MAX_VALUE : value;
+    }
+
+    /**
+     * Checks if the ready channels left in this iteration must wait for the next one.
+     *
+     * @param events the number of channels processed in this iteration.
+     * @param start  the start of the I/O phase.
+     */
+    boolean isIoExhausted(final int events, final long start) {
+        return events >= this.maxEvents || this.ioTimeNanos > 0 && System.nanoTime() - start >= this.ioTimeNanos;
+    }
+
+    /**
+     * Returns the time tasks may run for in an iteration that spent the given time on I/O.
+     *
+     * @param ioNanos the I/O time of the iteration.
+     * @return the task time in nanoseconds, {@link Long#MAX_VALUE} if unlimited.
+     */
+    long taskTime(final long ioNanos) {
+        return this.ioRatio == 100 ? Long.MAX_VALUE : ioNanos * (100 - this.ioRatio) / this.ioRatio;
+    }
+
+    int maxTasks() {
+        return this.maxTasks;
+    }
+
+    int maxRegistrations() {
+        return this.maxRegistrations;
+    }
+}
@@ -19,35 +19,90 @@ package org.nioreactor;
 import org.nioreactor.util.Preconditions;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Sequentially forwards the socket channel to one of the workers.
  * <p/>
+ * The set of workers can be resized while running. New workers join the dispatch rotation right away, retired
+ * workers hand their sessions over to the remaining ones or drain them.
+ * <p/>
  * Created by ribeirux on 8/10/14.
  */
 public class MultiworkerDispatcher implements Dispatcher {
 
+    private final ReentrantLock mainLock = new ReentrantLock();
     private final AtomicInteger counter = new AtomicInteger(0);
-    private final List<DefaultWorker> dispatchers;
-    private final List<Thread> threads;
+    private final EventListenerFactory factory;
+    private final ThreadFactory threadFactory;
+    private final ReactorConfig config;
+    private final AdmissionControl admission;
+    private final TrafficShaper globalShaper;
+    // includes the threads of retired workers until they terminate
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final long rebalanceInterval;
+    private final double rebalanceThreshold;
+    private final long autoscaleInterval;
+    private final WorkerScaler scaler;
+    private final SessionRegistry registry = new SessionRegistry();
+    private final ReactorProbe probe;
+    // null unless dispatching by consistent hash
+    private final AffinityKey affinityKey;
+    private final double loadFactor;
+    // null unless the workers accept connections themselves
+    private final SharedAcceptor acceptor;
+    private volatile List<DefaultWorker> dispatchers;
+    private volatile HashRing ring;
+    private volatile ScheduledExecutorService balancer;
+
+    // guarded by mainLock
+    private boolean started = false;
+    private boolean stopped = false;
+    private Thread acceptorThread;
 
     public MultiworkerDispatcher(final int workers, final EventListenerFactory factory, final ThreadFactory threadFactory) throws IOException {
+        this(workers, factory, threadFactory, DefaultReactorConfig.builder().build());
+    }
+
+    public MultiworkerDispatcher(final int workers, final EventListenerFactory factory, final ThreadFactory threadFactory,
+                                 final ReactorConfig config) throws IOException {
         Preconditions.checkArgument(workers > 0, "number of workers should be higher than 0");
-        Preconditions.checkNotNull(factory, "factory is null");
+        this.factory = Preconditions.checkNotNull(factory, "factory is null");
+        this.threadFactory = Preconditions.checkNotNull(threadFactory, "thread factory is null");
+        this.config = Preconditions.checkNotNull(config, "config is null");
+        this.admission = new AdmissionControl(config);
+        this.rebalanceInterval = config.option(ReactorOption.REBALANCE_INTERVAL);
+        this.rebalanceThreshold = config.option(ReactorOption.REBALANCE_THRESHOLD);
+        this.autoscaleInterval = config.option(ReactorOption.AUTOSCALE_INTERVAL);
+        Preconditions.checkArgument(this.rebalanceInterval >= 0, "rebalance interval < 0");
+        Preconditions.checkArgument(this.autoscaleInterval >= 0, "autoscale interval < 0");
+        this.globalShaper = TrafficShaper.global(config);
+        this.probe = Preconditions.checkNotNull(config.option(ReactorOption.PROBE), "probe is null");
+        this.scaler = this.autoscaleInterval > 0 ? new WorkerScaler(this, config) : null;
+        this.affinityKey = config.option(ReactorOption.DISPATCH_POLICY) == DispatchPolicy.CONSISTENT_HASH
+                ? Preconditions.checkNotNull(config.option(ReactorOption.AFFINITY_KEY), "affinity key is null") : null;
+        this.loadFactor = config.option(ReactorOption.HASH_LOAD_FACTOR);
+        Preconditions.checkArgument(this.loadFactor >= 1, "hash load factor < 1");
+        this.acceptor = config.option(ReactorOption.WORKER_ACCEPT)
+                ? new SharedAcceptor(this::workerList, this, this.admission, this.probe) : null;
 
         final List<DefaultWorker> dispatchersInit = new ArrayList<>(workers);
-        final List<Thread> threadsInit = new ArrayList<>(workers);
         try {
             for (int i = 0; i < workers; i++) {
-                final DefaultWorker newDispatcher = new DefaultWorker(factory.create());
-                dispatchersInit.add(newDispatcher);
-                threadsInit.add(threadFactory.newThread(newDispatcher));
+                dispatchersInit.add(newWorker());
             }
         } catch (final IOException e) {
             shutdownDispatchers(dispatchersInit);
@@ -55,7 +110,19 @@ public class MultiworkerDispatcher implements Dispatcher {
         }
 
         this.dispatchers = Collections.unmodifiableList(dispatchersInit);
-        this.threads = Collections.unmodifiableList(threadsInit);
+    }
+
+    private DefaultWorker newWorker() throws IOException {
+        final DefaultWorker worker = new DefaultWorker(this.factory.create(), this.config, this.admission, this.globalShaper,
+                this.registry, this.acceptor);
+        final Thread thread = this.threadFactory.newThread(worker);
+        this.threads.add(thread);
+        if (this.started) {
+            worker.acceptorThread(this.acceptorThread);
+            thread.start();
+        }
+
+        return worker;
     }
 
     private static void shutdownDispatchers(final Iterable<DefaultWorker> dispatchers) {
@@ -64,23 +131,246 @@ public class MultiworkerDispatcher implements Dispatcher {
 
     @Override
     public void start() {
-        // start all workers
-        threads.forEach(Thread::start);
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.started = true;
+            this.acceptorThread = Thread.currentThread();
+            this.dispatchers.forEach(worker -> worker.acceptorThread(this.acceptorThread));
+            // start all workers
+            this.threads.forEach(Thread::start);
+        } finally {
+            lock.unlock();
+        }
+
+        if (this.rebalanceInterval > 0 || this.autoscaleInterval > 0) {
+            this.balancer = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "I/O balancer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (this.rebalanceInterval > 0) {
+            this.balancer.scheduleWithFixedDelay(new WorkerBalancer(this::workerList, this.rebalanceThreshold),
+                    this.rebalanceInterval, this.rebalanceInterval, TimeUnit.MILLISECONDS);
+        }
+        if (this.autoscaleInterval > 0) {
+            this.balancer.scheduleWithFixedDelay(this.scaler,
+                    this.autoscaleInterval, this.autoscaleInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopBalancer() {
+        if (this.balancer != null) {
+            this.balancer.shutdownNow();
+        }
+    }
+
+    List<DefaultWorker> workerList() {
+        return this.dispatchers;
+    }
+
+    @Override
+    public boolean dispatch(final SocketChannel socketChannel) {
+        return dispatch(socketChannel, null);
+    }
+
+    @Override
+    public boolean dispatch(final SocketChannel socketChannel, final EventListenerFactory factory) {
+        final List<DefaultWorker> current = this.dispatchers;
+        if (this.affinityKey != null && dispatchByKey(current, socketChannel, factory)) {
+            this.probe.accepted(socketChannel, true);
+            return true;
+        }
+
+        final int size = current.size();
+        final int start = this.counter.getAndIncrement() & 0x7fffffff;
+
+        // skip the workers at capacity or retiring
+        for (int i = 0; i < size; i++) {
+            if (current.get((start + i) % size).dispatch(socketChannel, factory)) {
+                this.probe.accepted(socketChannel, true);
+                return true;
+            }
+        }
+
+        this.probe.accepted(socketChannel, false);
+        return false;
+    }
+
+    @Override
+    public boolean acceptOn(final ServerSocketChannel serverChannel, final EventListenerFactory factory,
+                            final SocketConfig childConfig) {
+        if (this.acceptor == null) {
+            return false;
+        }
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.started) {
+                throw new IllegalStateException("dispatcher already started");
+            }
+            this.acceptor.add(serverChannel, factory, childConfig);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Dispatches to the first worker on the ring, from the connection key, holding less than the load factor times
+     * the average connections.
+     */
+    private boolean dispatchByKey(final List<DefaultWorker> current, final SocketChannel socketChannel,
+                                  final EventListenerFactory factory) {
+        HashRing ring = this.ring;
+        if (ring == null || ring.workers() != current) {
+            // the worker set changed
+            ring = new HashRing(current);
+            this.ring = ring;
+        }
+
+        long connections = 1;
+        for (final DefaultWorker worker : current) {
+            connections += worker.connections();
+        }
+        final double limit = Math.ceil(this.loadFactor * connections / current.size());
+
+        final int first = ring.first(this.affinityKey.key(socketChannel));
+        for (int i = 0; i < ring.size(); i++) {
+            final DefaultWorker worker = ring.owner(first + i);
+            if (worker.connections() < limit && worker.dispatch(socketChannel, factory)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public SessionContext connectLocal(final EventListener listener) throws IOException {
+        Preconditions.checkNotNull(listener, "listener is null");
+        final List<DefaultWorker> current = this.dispatchers;
+        final int size = current.size();
+        final int start = this.counter.getAndIncrement() & 0x7fffffff;
+
+        // skip the retiring workers
+        for (int i = 0; i < size; i++) {
+            final SessionContext session = current.get((start + i) % size).connectLocal(listener);
+            if (session != null) {
+                return session;
+            }
+        }
+
+        throw new IOException("no worker available");
+    }
+
+    @Override
+    public void broadcast(final ByteBuffer payload, final Runnable release) {
+        final Broadcast broadcast = new Broadcast(Preconditions.checkNotNull(payload, "payload is null"), release);
+        try {
+            for (final DefaultWorker worker : this.dispatchers) {
+                broadcast.retain();
+                if (!worker.submit(() -> worker.broadcast(broadcast))) {
+                    // shut down, the task would never run
+                    broadcast.release();
+                }
+            }
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    @Override
+    public SessionContext lookup(final long id) {
+        return this.registry.lookup(id);
+    }
+
+    @Override
+    public AdmissionControl admissionControl() {
+        return this.admission;
+    }
+
+    @Override
+    public int workers() {
+        return this.dispatchers.size();
     }
 
     @Override
-    public void dispatch(final SocketChannel socketChannel) {
-        this.dispatchers.get((this.counter.getAndIncrement() & 0x7fffffff) % dispatchers.size()).dispatch(socketChannel);
+    public void resize(final int workers) throws IOException {
+        resize(workers, retired -> retired.retire(this.dispatchers));
+    }
+
+    @Override
+    public void resize(final int workers, final long quietPeriod, final long timeout, final TimeUnit unit) throws IOException {
+        resize(workers, retired -> retired.drain(quietPeriod, timeout, unit));
+    }
+
+    private void resize(final int workers, final Consumer<DefaultWorker> retirement) throws IOException {
+        Preconditions.checkArgument(workers > 0, "number of workers should be higher than 0");
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (this.stopped) {
+                return;
+            }
+
+            final List<DefaultWorker> resized = new ArrayList<>(this.dispatchers);
+            try {
+                while (resized.size() < workers) {
+                    resized.add(newWorker());
+                }
+            } finally {
+                // publish the workers created so far, even on failure
+                this.threads.removeIf(t -> t.getState() == Thread.State.TERMINATED);
+                final List<DefaultWorker> retired = new ArrayList<>(resized.subList(Math.min(workers, resized.size()), resized.size()));
+                resized.removeAll(retired);
+                this.dispatchers = Collections.unmodifiableList(resized);
+                // remaining workers are published before the retired ones start handing over
+                retired.forEach(retirement);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void shutdown() {
+        stopBalancer();
+        stop();
+        stopAccepting();
         shutdownDispatchers(this.dispatchers);
     }
 
+    @Override
+    public void drain(final long quietPeriod, final long timeout, final TimeUnit unit) {
+        stopBalancer();
+        stop();
+        stopAccepting();
+        this.dispatchers.forEach(d -> d.drain(quietPeriod, timeout, unit));
+    }
+
+    private void stopAccepting() {
+        if (this.acceptor != null) {
+            this.acceptor.close();
+        }
+    }
+
+    private void stop() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.stopped = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void await() throws InterruptedException {
-        for (final Thread t : threads) {
+        for (final Thread t : this.threads) {
             t.join();
         }
     }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs listener work off the event loop while keeping strict per-session ordering.
+ * <p>
+ * Each session gets a serial queue on top of the shared executor, so tasks of the same session never run
+ * concurrently or out of order while different sessions run in parallel.
+ */
+public class OffloadExecutor {
+
+    private static final Logger LOG = Logger.getLogger(OffloadExecutor.class.getName());
+
+    private final AtomicLong pending = new AtomicLong(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong totalQueueNanos = new AtomicLong(0);
+    private final AtomicLong totalExecutionNanos = new AtomicLong(0);
+    private final AtomicLong maxExecutionNanos = new AtomicLong(0);
+    private final Executor executor;
+
+    public OffloadExecutor(final Executor executor) {
+        this.executor = Preconditions.checkNotNull(executor, "executor is null");
+    }
+
+    /**
+     * Creates an offload executor backed by a FIFO fork-join pool.
+     *
+     * @param parallelism the pool parallelism.
+     * @return the offload executor.
+     */
+    public static OffloadExecutor create(final int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism <= 0");
+        return new OffloadExecutor(new ForkJoinPool(parallelism,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+    }
+
+    /**
+     * Creates a new serial executor. Tasks submitted to the same serial executor run one at a time, in order.
+     *
+     * @return the serial executor.
+     */
+    Executor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    /**
+     * Returns the number of tasks waiting or running.
+     *
+     * @return the queue depth.
+     */
+    public long queueDepth() {
+        return this.pending.get();
+    }
+
+    /**
+     * Returns the number of completed tasks.
+     *
+     * @return the completed task count.
+     */
+    public long completedTasks() {
+        return this.completed.get();
+    }
+
+    /**
+     * Returns the average time tasks waited before running.
+     *
+     * @return the average queue latency in nanoseconds.
+     */
+    public long averageQueueNanos() {
+        final long count = this.completed.get();
+        return count == 0 ? 0 : this.totalQueueNanos.get() / count;
+    }
+
+    /**
+     * Returns the average task execution time.
+     *
+     * @return the average execution latency in nanoseconds.
+     */
+    public long averageExecutionNanos() {
+        final long count = this.completed.get();
+        return count == 0 ? 0 : this.totalExecutionNanos.get() / count;
+    }
+
+    /**
+     * Returns the longest task execution time.
+     *
+     * @return the maximum execution latency in nanoseconds.
+     */
+    public long maxExecutionNanos() {
+        return this.maxExecutionNanos.get();
+    }
+
+    /**
+     * Shuts down the underlying executor if it is an {@link ExecutorService}.
+     */
+    public void shutdown() {
+        if (this.executor instanceof ExecutorService) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+    private void run(final Task task) {
+        final long start = System.nanoTime();
+        try {
+            task.command.run();
+        } catch (final RuntimeException ex) {
+            LOG.log(Level.SEVERE, "Offloaded task failed", ex);
+        } finally {
+            final long end = System.nanoTime();
+            final long execution = end - start;
+
+            this.totalQueueNanos.addAndGet(start - task.queuedAt);
+            this.totalExecutionNanos.addAndGet(execution);
+            this.maxExecutionNanos.accumulateAndGet(execution, Math::max);
+            this.completed.incrementAndGet();
+            this.pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("OffloadExecutor{")
+                .append("queueDepth=").append(queueDepth())
+                .append(", completedTasks=").append(completedTasks())
+                .append(", averageQueueNanos=").append(averageQueueNanos())
+                .append(", averageExecutionNanos=").append(averageExecutionNanos())
+                .append(", maxExecutionNanos=").append(maxExecutionNanos())
+                .append('}')
+                .toString();
+    }
+
+    private static final class Task {
+
+        private final Runnable command;
+        private final long queuedAt = System.nanoTime();
+
+        private Task(final Runnable command) {
+            this.command = command;
+        }
+    }
+
+    private final class SerialExecutor implements Executor, Runnable {
+
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        @Override
+        public void execute(final Runnable command) {
+            this.tasks.add(new Task(Preconditions.checkNotNull(command, "command is null")));
+            pending.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!this.tasks.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Task task;
+                while ((task = this.tasks.poll()) != null) {
+                    OffloadExecutor.this.run(task);
+                }
+            } finally {
+                this.scheduled.set(false);
+                // a task may have been added after the last poll
+                schedule();
+            }
+        }
+    }
+}
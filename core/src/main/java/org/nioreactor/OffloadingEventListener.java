@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Event listener decorator that runs the delegate callbacks on an {@link OffloadExecutor}.
+ * <p>
+ * While a callback is in flight the session interest is suspended, so the selector does not report the same
+ * readiness again. Interest set by the delegate is applied on the owning worker once no callback is in flight.
+ * Writes are copied and written back by the owning worker, in order, so they never race the worker's own output;
+ * past {@link #MAX_PENDING_BYTES} not yet written they transfer nothing, as with a full socket buffer.
+ */
+public class OffloadingEventListener implements EventListener {
+
+    /**
+     * Bytes written by the delegate and not yet taken by the socket above which writes transfer nothing.
+     */
+    public static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private static final AttributeKey<OffloadedSession> OFFLOADED_SESSION =
+            new AttributeKey<>("OffloadingEventListener.OFFLOADED_SESSION", OffloadedSession.class);
+
+    private final EventListener listener;
+    private final OffloadExecutor executor;
+
+    public OffloadingEventListener(final EventListener listener, final OffloadExecutor executor) {
+        this.listener = Preconditions.checkNotNull(listener, "listener is null");
+        this.executor = Preconditions.checkNotNull(executor, "executor is null");
+    }
+
+    @Override
+    public void connected(final SessionContext session) {
+        final OffloadedSession offloaded = new OffloadedSession(session, this.executor.newSerialExecutor());
+        session.putAttribute(OFFLOADED_SESSION, offloaded);
+        offloaded.dispatch(this.listener::connected);
+    }
+
+    @Override
+    public void inputReady(final SessionContext session) {
+        session.getAttribute(OFFLOADED_SESSION).dispatch(this.listener::inputReady);
+    }
+
+    @Override
+    public void outputReady(final SessionContext session) {
+        final OffloadedSession offloaded = session.getAttribute(OFFLOADED_SESSION);
+        // pending writes go first, the delegate is told once they are out
+        if (offloaded.flushPending() && offloaded.wantsOutput()) {
+            offloaded.dispatch(this.listener::outputReady);
+        }
+    }
+
+    @Override
+    public void shuttingDown(final SessionContext session) {
+        session.getAttribute(OFFLOADED_SESSION).dispatch(this.listener::shuttingDown);
+    }
+
+    @Override
+    public void disconnected(final SessionContext session) {
+        final OffloadedSession offloaded = session.removeAttribute(OFFLOADED_SESSION);
+        if (offloaded != null) {
+            offloaded.discardPending();
+            // keep the session from being recycled until the delegate is done with it
+            offloaded.dispatch(this.listener::disconnected, SessionHandle.hold(session));
+        }
+    }
+
+    /**
+     * Session view handed to the delegate listener. The same instance is used for all the callbacks of a session.
+     */
+    private static final class OffloadedSession implements SessionContext {
+
+        private final SessionContext session;
+        private final Executor serialExecutor;
+        private final ByteChannel channel = new OffloadedChannel();
+        private final AtomicInteger pendingBytes = new AtomicInteger(0);
+        private volatile EventKey interest = EventKey.NONE;
+
+        // event loop only
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+        private int inFlight = 0;
+
+        private OffloadedSession(final SessionContext session, final Executor serialExecutor) {
+            this.session = session;
+            this.serialExecutor = serialExecutor;
+        }
+
+        /**
+         * Called from the event loop.
+         */
+        private void dispatch(final Consumer<SessionContext> callback) {
+            dispatch(callback, null);
+        }
+
+        /**
+         * Called from the event loop.
+         *
+         * @param done run on the executor once the callback completed, or {@code null}.
+         */
+        private void dispatch(final Consumer<SessionContext> callback, final Runnable done) {
+            this.inFlight++;
+            this.session.interestEvent(EventKey.NONE);
+            this.serialExecutor.execute(() -> {
+                try {
+                    callback.accept(this);
+                } catch (final CancelledKeyException ex) {
+                    this.session.close();
+                } finally {
+                    // after the tasks queued by the callback
+                    this.session.execute(this::callbackDone);
+                    if (done != null) {
+                        done.run();
+                    }
+                }
+            });
+        }
+
+        private void callbackDone() {
+            this.inFlight--;
+            applyInterest();
+        }
+
+        /**
+         * Applies the delegate interest, adding output while writes are pending. Called from the event loop.
+         */
+        private void applyInterest() {
+            if (this.inFlight == 0) {
+                final EventKey ops = this.interest;
+                if (this.pending.isEmpty()) {
+                    this.session.interestEvent(ops);
+                } else {
+                    this.session.interestEvent(ops == EventKey.NONE || ops == EventKey.WRITE
+                            ? EventKey.WRITE : EventKey.READ_WRITE);
+                }
+            }
+        }
+
+        private boolean wantsOutput() {
+            return (this.interest.interestOps() & SelectionKey.OP_WRITE) != 0;
+        }
+
+        /**
+         * Queues a copy of the delegate output. Called from the event loop.
+         */
+        private void write(final ByteBuffer buffer) {
+            final boolean idle = this.pending.isEmpty();
+            this.pending.add(buffer);
+            if (idle) {
+                flushPending();
+            }
+        }
+
+        /**
+         * Writes the pending output the socket takes. Called from the event loop.
+         *
+         * @return {@code true} if nothing is left pending, {@code false} otherwise.
+         */
+        private boolean flushPending() {
+            if (this.pending.isEmpty()) {
+                return true;
+            }
+
+            try {
+                ByteBuffer next;
+                while ((next = this.pending.peek()) != null) {
+                    this.pendingBytes.addAndGet(-this.session.channel().write(next));
+                    if (next.hasRemaining()) {
+                        break;
+                    }
+                    this.pending.poll();
+                }
+            } catch (final IOException ex) {
+                discardPending();
+                this.session.close();
+                return true;
+            }
+
+            applyInterest();
+            return this.pending.isEmpty();
+        }
+
+        /**
+         * Called from the event loop.
+         */
+        private void discardPending() {
+            this.pending.clear();
+            this.pendingBytes.set(0);
+        }
+
+        @Override
+        public long id() {
+            return this.session.id();
+        }
+
+        @Override
+        public ByteChannel channel() {
+            return this.channel;
+        }
+
+        @Override
+        public SocketAddress remoteAddress() {
+            return this.session.remoteAddress();
+        }
+
+        @Override
+        public SocketAddress localAddress() {
+            return this.session.localAddress();
+        }
+
+        @Override
+        public ByteBuffer receive() throws IOException {
+            return this.session.receive();
+        }
+
+        @Override
+        public <T> T socketOption(final SocketOption<T> option) throws IOException {
+            return this.session.socketOption(option);
+        }
+
+        @Override
+        public void interestEvent(final EventKey ops) {
+            this.interest = Preconditions.checkNotNull(ops, "ops is null");
+            this.session.execute(this::applyInterest);
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            this.session.execute(task);
+        }
+
+        @Override
+        public void close() {
+            this.session.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return this.session.isClosed();
+        }
+
+        @Override
+        public <T> T putAttribute(final AttributeKey<T> key, final T value) {
+            return this.session.putAttribute(key, value);
+        }
+
+        @Override
+        public <T> T getAttribute(final AttributeKey<T> key) {
+            return this.session.getAttribute(key);
+        }
+
+        @Override
+        public <T> T removeAttribute(final AttributeKey<T> key) {
+            return this.session.removeAttribute(key);
+        }
+
+        @Override
+        public String toString() {
+            return this.session.toString();
+        }
+
+        /**
+         * Channel handed to the delegate: reads go to the socket, writes are handed to the event loop.
+         */
+        private final class OffloadedChannel implements ByteChannel {
+
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+                return OffloadedSession.this.session.channel().read(dst);
+            }
+
+            @Override
+            public int write(final ByteBuffer src) throws IOException {
+                if (!isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                final int pendingBytes = OffloadedSession.this.pendingBytes.get();
+                if (pendingBytes >= MAX_PENDING_BYTES || !src.hasRemaining()) {
+                    return 0;
+                }
+
+                final int count = Math.min(src.remaining(), MAX_PENDING_BYTES - pendingBytes);
+                final ByteBuffer copy = ByteBuffer.allocate(count);
+                final int limit = src.limit();
+                src.limit(src.position() + count);
+                copy.put(src).flip();
+                src.limit(limit);
+
+                OffloadedSession.this.pendingBytes.addAndGet(count);
+                OffloadedSession.this.session.execute(() -> OffloadedSession.this.write(copy));
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return OffloadedSession.this.session.channel().isOpen();
+            }
+
+            @Override
+            public void close() {
+                OffloadedSession.this.session.close();
+            }
+        }
+    }
+}
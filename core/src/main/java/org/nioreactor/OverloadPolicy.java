@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+/**
+ * Action taken by the acceptor when the connection limits are reached.
+ */
+public enum OverloadPolicy {
+
+    /**
+     * Stop accepting and let the kernel backlog absorb the burst until connections drop below the low watermark.
+     */
+    PAUSE_ACCEPT,
+
+    /**
+     * Accept new connections and close them immediately.
+     */
+    ACCEPT_AND_CLOSE
+
+}
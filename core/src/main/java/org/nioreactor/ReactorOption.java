@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+/**
+ * Option for configuring the reactor.
+ */
+public final class ReactorOption<T> extends AbstractOption<T> {
+
+    /**
+     * Maximum number of connections across all workers. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_CONNECTIONS = new ReactorOption<>("MAX_CONNECTIONS", Integer.class, 0);
+    /**
+     * Number of connections below which accepting is resumed. {@code -1} means 90% of {@link #MAX_CONNECTIONS}.
+     */
+    public static final ReactorOption<Integer> CONNECTIONS_LOW_WATERMARK = new ReactorOption<>("CONNECTIONS_LOW_WATERMARK", Integer.class, -1);
+    /**
+     * Maximum number of connections per worker. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_CONNECTIONS_PER_WORKER = new ReactorOption<>("MAX_CONNECTIONS_PER_WORKER", Integer.class, 0);
+    /**
+     * Maximum number of concurrent connections from the same remote address. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_CONNECTIONS_PER_ADDRESS = new ReactorOption<>("MAX_CONNECTIONS_PER_ADDRESS", Integer.class, 0);
+    /**
+     * Maximum number of new connections per second from the same remote address. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> ACCEPT_RATE_PER_ADDRESS = new ReactorOption<>("ACCEPT_RATE_PER_ADDRESS", Integer.class, 0);
+    /**
+     * Number of connections from the same remote address accepted in a burst above the rate. {@code -1} means one.
+     */
+    public static final ReactorOption<Integer> ACCEPT_BURST_PER_ADDRESS = new ReactorOption<>("ACCEPT_BURST_PER_ADDRESS", Integer.class, -1);
+    /**
+     * Number of remote addresses tracked by the per address limits.
+     */
+    public static final ReactorOption<Integer> ADDRESS_TABLE_CAPACITY = new ReactorOption<>("ADDRESS_TABLE_CAPACITY", Integer.class, 65536);
+    /**
+     * Maximum bytes per second read by each session. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> SESSION_READ_RATE = new ReactorOption<>("SESSION_READ_RATE", Long.class, 0L);
+    /**
+     * Maximum bytes per second written by each session. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> SESSION_WRITE_RATE = new ReactorOption<>("SESSION_WRITE_RATE", Long.class, 0L);
+    /**
+     * Maximum bytes per second read by the sessions of each worker. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> WORKER_READ_RATE = new ReactorOption<>("WORKER_READ_RATE", Long.class, 0L);
+    /**
+     * Maximum bytes per second written by the sessions of each worker. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> WORKER_WRITE_RATE = new ReactorOption<>("WORKER_WRITE_RATE", Long.class, 0L);
+    /**
+     * Maximum bytes per second read by all the sessions. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> GLOBAL_READ_RATE = new ReactorOption<>("GLOBAL_READ_RATE", Long.class, 0L);
+    /**
+     * Maximum bytes per second written by all the sessions. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> GLOBAL_WRITE_RATE = new ReactorOption<>("GLOBAL_WRITE_RATE", Long.class, 0L);
+    /**
+     * Interval in milliseconds between worker load comparisons. {@code 0} disables session rebalancing.
+     */
+    public static final ReactorOption<Long> REBALANCE_INTERVAL = new ReactorOption<>("REBALANCE_INTERVAL", Long.class, 0L);
+    /**
+     * Loop utilization difference, between 0 and 1, above which sessions are moved between workers.
+     */
+    public static final ReactorOption<Double> REBALANCE_THRESHOLD = new ReactorOption<>("REBALANCE_THRESHOLD", Double.class, 0.25);
+    /**
+     * Interval in milliseconds between worker pool size checks. {@code 0} disables autoscaling.
+     */
+    public static final ReactorOption<Long> AUTOSCALE_INTERVAL = new ReactorOption<>("AUTOSCALE_INTERVAL", Long.class, 0L);
+    /**
+     * Minimum number of workers kept by autoscaling.
+     */
+    public static final ReactorOption<Integer> MIN_WORKERS = new ReactorOption<>("MIN_WORKERS", Integer.class, 1);
+    /**
+     * Maximum number of workers started by autoscaling. {@code 0} means the number of available processors.
+     */
+    public static final ReactorOption<Integer> MAX_WORKERS = new ReactorOption<>("MAX_WORKERS", Integer.class, 0);
+    /**
+     * Average loop utilization, between 0 and 1, above which a worker is added.
+     */
+    public static final ReactorOption<Double> SCALE_UP_UTILIZATION = new ReactorOption<>("SCALE_UP_UTILIZATION", Double.class, 0.75);
+    /**
+     * Average loop utilization, between 0 and 1, below which a worker is retired.
+     */
+    public static final ReactorOption<Double> SCALE_DOWN_UTILIZATION = new ReactorOption<>("SCALE_DOWN_UTILIZATION", Double.class, 0.25);
+    /**
+     * Smallest receive buffer handed to {@link SessionContext#receive()}, rounded up to a power of two.
+     */
+    public static final ReactorOption<Integer> RECEIVE_BUFFER_MIN = new ReactorOption<>("RECEIVE_BUFFER_MIN", Integer.class, 64);
+    /**
+     * Receive buffer size of new sessions, rounded up to a power of two.
+     */
+    public static final ReactorOption<Integer> RECEIVE_BUFFER_INITIAL = new ReactorOption<>("RECEIVE_BUFFER_INITIAL", Integer.class, 1024);
+    /**
+     * Largest receive buffer handed to {@link SessionContext#receive()}, rounded up to a power of two.
+     */
+    public static final ReactorOption<Integer> RECEIVE_BUFFER_MAX = new ReactorOption<>("RECEIVE_BUFFER_MAX", Integer.class, 65536);
+    /**
+     * Number of closed sessions each worker keeps for reuse. {@code 0} disables session recycling.
+     */
+    public static final ReactorOption<Integer> SESSION_POOL_SIZE = new ReactorOption<>("SESSION_POOL_SIZE", Integer.class, 256);
+    /**
+     * Bytes buffered in each direction of a local connection, rounded up to a power of two.
+     */
+    public static final ReactorOption<Integer> LOCAL_BUFFER_SIZE = new ReactorOption<>("LOCAL_BUFFER_SIZE", Integer.class, 65536);
+    /**
+     * Stages the writes made on the event loop and flushes them once per session at the end of the loop iteration,
+     * with gathering writes.
+     */
+    public static final ReactorOption<Boolean> FLUSH_CONSOLIDATION = new ReactorOption<>("FLUSH_CONSOLIDATION", Boolean.class, false);
+    /**
+     * Number of staged writes of a session that triggers an early flush.
+     */
+    public static final ReactorOption<Integer> FLUSH_MAX_WRITES = new ReactorOption<>("FLUSH_MAX_WRITES", Integer.class, 64);
+    /**
+     * Number of staged bytes of a session that triggers an early flush. Writes are only partially taken above it.
+     */
+    public static final ReactorOption<Integer> FLUSH_MAX_BYTES = new ReactorOption<>("FLUSH_MAX_BYTES", Integer.class, 65536);
+    /**
+     * Percentage of the loop time given to I/O, between 1 and 100. In each iteration tasks run for at most the time
+     * spent on I/O times {@code (100 - ratio) / ratio}; {@code 100} does not limit the task time.
+     */
+    public static final ReactorOption<Integer> IO_RATIO = new ReactorOption<>("IO_RATIO", Integer.class, 100);
+    /**
+     * Microseconds each loop iteration spends on ready channels before leaving the rest to the next iteration.
+     * {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Long> IO_TIME_BUDGET = new ReactorOption<>("IO_TIME_BUDGET", Long.class, 0L);
+    /**
+     * Maximum number of ready channels processed per loop iteration. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_EVENTS_PER_ITERATION = new ReactorOption<>("MAX_EVENTS_PER_ITERATION", Integer.class, 0);
+    /**
+     * Maximum number of tasks, scheduled tasks included, run per loop iteration. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_TASKS_PER_ITERATION = new ReactorOption<>("MAX_TASKS_PER_ITERATION", Integer.class, 0);
+    /**
+     * Maximum number of new channels registered per loop iteration. {@code 0} means unlimited.
+     */
+    public static final ReactorOption<Integer> MAX_REGISTRATIONS_PER_ITERATION = new ReactorOption<>("MAX_REGISTRATIONS_PER_ITERATION", Integer.class, 0);
+    /**
+     * Slots of each worker's queue of connections handed over by the acceptor, rounded up to a power of two. When a
+     * worker's queue is full the connection goes to another worker.
+     */
+    public static final ReactorOption<Integer> HANDOFF_QUEUE_SIZE = new ReactorOption<>("HANDOFF_QUEUE_SIZE", Integer.class, 1024);
+    /**
+     * Receiver of lifecycle and timing events.
+     */
+    public static final ReactorOption<ReactorProbe> PROBE = new ReactorOption<>("PROBE", ReactorProbe.class, ReactorProbe.NONE);
+    /**
+     * Lets the workers accept connections themselves, saving the handover from the acceptor thread. The worker
+     * holding the accept token registers the connections it accepts and hands the token to the least loaded worker
+     * as it gets ahead; {@link #DISPATCH_POLICY} only applies to the connections the holder cannot take.
+     */
+    public static final ReactorOption<Boolean> WORKER_ACCEPT = new ReactorOption<>("WORKER_ACCEPT", Boolean.class, false);
+    /**
+     * How accepted connections are spread over the workers.
+     */
+    public static final ReactorOption<DispatchPolicy> DISPATCH_POLICY = new ReactorOption<>("DISPATCH_POLICY", DispatchPolicy.class, DispatchPolicy.ROUND_ROBIN);
+    /**
+     * Key hashed by {@link DispatchPolicy#CONSISTENT_HASH}.
+     */
+    public static final ReactorOption<AffinityKey> AFFINITY_KEY = new ReactorOption<>("AFFINITY_KEY", AffinityKey.class, AffinityKey.REMOTE_ADDRESS);
+    /**
+     * Connections a worker may hold under {@link DispatchPolicy#CONSISTENT_HASH}, relative to the average, before its
+     * keys go to the next worker on the ring. Must be at least 1.
+     */
+    public static final ReactorOption<Double> HASH_LOAD_FACTOR = new ReactorOption<>("HASH_LOAD_FACTOR", Double.class, 1.25);
+    /**
+     * What to do with new connections once the limits are reached.
+     */
+    public static final ReactorOption<OverloadPolicy> OVERLOAD_POLICY = new ReactorOption<>("OVERLOAD_POLICY", OverloadPolicy.class, OverloadPolicy.PAUSE_ACCEPT);
+
+    private final T defaultValue;
+
+    private ReactorOption(final String name, final Class<T> type, final T defaultValue) {
+        super(name, type);
+        this.defaultValue = Preconditions.checkNotNull(defaultValue, "default value is null");
+    }
+
+    public T defaultValue() {
+        return defaultValue;
+    }
+}
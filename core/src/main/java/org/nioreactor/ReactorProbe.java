@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * Receives reactor lifecycle and timing events, e.g. to record them with JDK Flight Recorder
+ * ({@code nioreactor-jfr}). Set with {@link ReactorOption#PROBE}.
+ * <p>
+ * Methods are called from the acceptor and worker threads and must not block. Durations are only measured while
+ * {@link #isTiming()} is {@code true}, so an idle probe costs a volatile read per loop iteration.
+ */
+public interface ReactorProbe {
+
+    /**
+     * Probe that ignores all events.
+     */
+    ReactorProbe NONE = new ReactorProbe() {
+    };
+
+    /**
+     * Checks if dispatch latencies, loop iterations and listener callbacks should be timed. Polled by each worker
+     * once per loop iteration.
+     *
+     * @return {@code true} to time them, {@code false} otherwise.
+     */
+    default boolean isTiming() {
+        return false;
+    }
+
+    /**
+     * Called on the acceptor thread for each accepted channel.
+     *
+     * @param channel    the accepted channel.
+     * @param dispatched {@code true} if handed over to a worker, {@code false} if all workers were at capacity.
+     */
+    default void accepted(final SocketChannel channel, final boolean dispatched) {
+    }
+
+    /**
+     * Called once a worker picks up a dispatched channel, while timing.
+     *
+     * @param session      the new session.
+     * @param latencyNanos the time the channel waited in the worker queue.
+     */
+    default void dispatched(final SessionContext session, final long latencyNanos) {
+    }
+
+    /**
+     * Called before the listener is notified of a new session.
+     *
+     * @param session the session.
+     */
+    default void connected(final SessionContext session) {
+    }
+
+    /**
+     * Called before the listener is notified of a closed session.
+     *
+     * @param session the session.
+     */
+    default void disconnected(final SessionContext session) {
+    }
+
+    /**
+     * Called after each worker loop iteration, while timing. The phase times add up to the time spent processing,
+     * select excluded.
+     *
+     * @param ioNanos      the time spent on ready channels and output flushing.
+     * @param taskNanos    the time spent running tasks.
+     * @param sessionNanos the time spent cleaning up closed sessions and registering new channels.
+     * @param readyKeys    the number of channels selected in the iteration.
+     */
+    default void loopIteration(final long ioNanos, final long taskNanos, final long sessionNanos, final int readyKeys) {
+    }
+
+    /**
+     * Called after each I/O listener callback, while timing.
+     *
+     * @param session       the session.
+     * @param callback      the callback name, e.g. {@code inputReady}.
+     * @param durationNanos the callback duration.
+     */
+    default void callback(final SessionContext session, final String callback, final long durationNanos) {
+    }
+}
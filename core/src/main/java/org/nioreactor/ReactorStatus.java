@@ -33,6 +33,11 @@ public enum ReactorStatus {
      */
     ACTIVE,
 
+    /**
+     * The reactor stopped taking new connections and waits for the existing ones to finish.
+     */
+    DRAINING,
+
     /**
      * The reactor is shutting down.
      */
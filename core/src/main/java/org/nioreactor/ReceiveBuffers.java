@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receive buffers of a worker: one direct buffer per power of two size within the configured bounds, allocated on
+ * first use. Sessions on the same worker share them since only one callback runs at a time on the event loop.
+ */
+final class ReceiveBuffers {
+
+    private final int minShift;
+    private final int initialShift;
+    private final int maxShift;
+    private final ByteBuffer[] buffers;
+
+    ReceiveBuffers(final ReactorConfig config) {
+        final int min = config.option(ReactorOption.RECEIVE_BUFFER_MIN);
+        final int initial = config.option(ReactorOption.RECEIVE_BUFFER_INITIAL);
+        final int max = config.option(ReactorOption.RECEIVE_BUFFER_MAX);
+        Preconditions.checkArgument(min > 0, "receive buffer min <= 0");
+        Preconditions.checkArgument(max <= 1 << 30, "receive buffer max > 2^30");
+        Preconditions.checkArgument(min <= initial && initial <= max, "receive buffer sizes out of order");
+
+        this.minShift = shift(min);
+        this.initialShift = shift(initial);
+        this.maxShift = shift(max);
+        this.buffers = new ByteBuffer[this.maxShift + 1];
+    }
+
+    private static int shift(final int size) {
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Creates the size tracker of a new session.
+     */
+    AdaptiveReceiveSize newReceiveSize() {
+        return new AdaptiveReceiveSize(this.minShift, this.initialShift, this.maxShift);
+    }
+
+    /**
+     * Returns the cleared buffer of the given size. Called from the event loop.
+     *
+     * @param size a power of two within the bounds.
+     * @return the buffer, valid until the event loop reads for another session.
+     */
+    ByteBuffer acquire(final int size) {
+        final int shift = Math.min(this.maxShift, shift(size));
+        ByteBuffer buffer = this.buffers[shift];
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << shift);
+            this.buffers[shift] = buffer;
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -21,6 +21,10 @@ import org.nioreactor.util.Preconditions;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -36,10 +40,14 @@ public class ServerBuilder {
     private final EventListenerFactory eventListenerFactory;
 
     // optional
-    private final DefaultSocketConfig.Builder socketConfigBuilder = DefaultSocketConfig.builder();
+    private final DefaultSocketConfig.Builder listenerConfigBuilder = DefaultSocketConfig.builder();
+    private final DefaultSocketConfig.Builder childConfigBuilder = DefaultSocketConfig.builder();
+    private final DefaultReactorConfig.Builder reactorConfigBuilder = DefaultReactorConfig.builder();
+    private final Map<SocketAddress, EventListenerFactory> endpoints = new LinkedHashMap<>();
     private ThreadFactory acceptorThreadFactory = new AcceptorThreadFactory();
     private ThreadFactory dispatcherThreadFactory = new DispatcherThreadFactory();
     private int workers = Runtime.getRuntime().availableProcessors();
+    private OffloadExecutor offloadExecutor;
 
     protected ServerBuilder(final EventListenerFactory factory) {
         this.eventListenerFactory = Preconditions.checkNotNull(factory, "eventListenerFactory is null");
@@ -49,8 +57,63 @@ public class ServerBuilder {
         return new ServerBuilder(factory);
     }
 
+    /**
+     * Sets a socket option on the listening socket and on the accepted sockets, wherever it applies.
+     *
+     * @param key   the option.
+     * @param value the option value.
+     * @return this builder.
+     * @throws UnsupportedOperationException if the option is not supported by the running JVM or platform.
+     */
     public <T> ServerBuilder socketOption(final SocketOption<T> key, final T value) {
-        socketConfigBuilder.option(key, value);
+        checkSupported(key);
+        if (key.isListenerOption()) {
+            listenerConfigBuilder.option(key, value);
+        }
+        if (key.isChildOption()) {
+            childConfigBuilder.option(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Sets a socket option on the listening socket only.
+     *
+     * @param key   the option.
+     * @param value the option value.
+     * @return this builder.
+     * @throws UnsupportedOperationException if the option is not supported by the running JVM or platform.
+     */
+    public <T> ServerBuilder listenerOption(final SocketOption<T> key, final T value) {
+        checkSupported(key);
+        Preconditions.checkArgument(key.isListenerOption(), key + " does not apply to the listening socket");
+        listenerConfigBuilder.option(key, value);
+        return this;
+    }
+
+    /**
+     * Sets a socket option on the accepted sockets only.
+     *
+     * @param key   the option.
+     * @param value the option value.
+     * @return this builder.
+     * @throws UnsupportedOperationException if the option is not supported by the running JVM or platform.
+     */
+    public <T> ServerBuilder childOption(final SocketOption<T> key, final T value) {
+        checkSupported(key);
+        Preconditions.checkArgument(key.isChildOption(), key + " does not apply to the accepted sockets");
+        childConfigBuilder.option(key, value);
+        return this;
+    }
+
+    private static void checkSupported(final SocketOption<?> key) {
+        if (!Preconditions.checkNotNull(key, "key is null").isSupported()) {
+            throw new UnsupportedOperationException(key + " not supported");
+        }
+    }
+
+    public <T> ServerBuilder reactorOption(final ReactorOption<T> key, final T value) {
+        reactorConfigBuilder.option(key, value);
         return this;
     }
 
@@ -70,6 +133,54 @@ public class ServerBuilder {
         return this;
     }
 
+    /**
+     * Runs the listener callbacks on the given executor instead of the worker threads. The executor is not shut
+     * down by the server.
+     *
+     * @param executor the offload executor.
+     * @return this builder.
+     */
+    public ServerBuilder offload(final OffloadExecutor executor) {
+        this.offloadExecutor = Preconditions.checkNotNull(executor, "offload executor is null");
+        return this;
+    }
+
+    /**
+     * Listens on another address, sharing the acceptor and the workers with the bound address. Channels accepted
+     * on it are handled by listeners created by the given factory, one per worker.
+     *
+     * @param port    the port to listen on.
+     * @param factory the listener factory of the address.
+     * @return this builder.
+     */
+    public ServerBuilder listen(final int port, final EventListenerFactory factory) {
+        return listen(new InetSocketAddress(port), factory);
+    }
+
+    /**
+     * Listens on another address, sharing the acceptor and the workers with the bound address. Channels accepted
+     * on it are handled by listeners created by the given factory, one per worker.
+     *
+     * @param address the address to listen on.
+     * @param factory the listener factory of the address.
+     * @return this builder.
+     */
+    public ServerBuilder listen(final SocketAddress address, final EventListenerFactory factory) {
+        Preconditions.checkNotNull(address, "address is null");
+        Preconditions.checkNotNull(factory, "factory is null");
+        this.endpoints.put(address, factory);
+        return this;
+    }
+
+    private EventListenerFactory listenerFactory(final EventListenerFactory factory) {
+        final OffloadExecutor executor = this.offloadExecutor;
+        if (executor == null) {
+            return factory;
+        }
+
+        return () -> new OffloadingEventListener(factory.create(), executor);
+    }
+
     public ServerPromise bind(final int port) throws IOException {
         return bind(new InetSocketAddress(port));
     }
@@ -79,12 +190,59 @@ public class ServerBuilder {
     }
 
     public ServerPromise bind(final SocketAddress address, final int backlog) throws IOException {
-        final SocketConfig socketConfig = this.socketConfigBuilder.build();
-        final Dispatcher dispatcher = new MultiworkerDispatcher(workers, eventListenerFactory, dispatcherThreadFactory);
+        return start((listenerConfig, childConfig, dispatcher) ->
+                new ListeningReactor(listenerConfig, childConfig, dispatcher, address, backlog), backlog);
+    }
+
+    /**
+     * Accepts on an already bound channel instead of binding a new one, e.g. one handed off by
+     * {@link ServerPromise#handOff} so that no connection is refused while the server is replaced. Listener options
+     * are not applied to the channel.
+     *
+     * @param serverChannel the bound channel.
+     * @return the server promise.
+     * @throws IOException if the server cannot be started.
+     */
+    public ServerPromise bind(final ServerSocketChannel serverChannel) throws IOException {
+        Preconditions.checkNotNull(serverChannel, "server channel is null");
+        return start((listenerConfig, childConfig, dispatcher) ->
+                new ListeningReactor(listenerConfig, childConfig, dispatcher, serverChannel), DEFAULT_BACKLOG);
+    }
+
+    /**
+     * Accepts on the listening socket inherited from the process that launched the JVM, as with systemd socket
+     * activation or inetd. The launcher keeps the socket and its backlog open across restarts.
+     *
+     * @return the server promise.
+     * @throws IOException if no listening socket has been inherited or the server cannot be started.
+     */
+    public ServerPromise bindInherited() throws IOException {
+        final Channel inherited = System.inheritedChannel();
+        if (!(inherited instanceof ServerSocketChannel)) {
+            throw new IOException("No inherited server socket channel");
+        }
+        return bind((ServerSocketChannel) inherited);
+    }
+
+    private ServerPromise start(final ReactorFactory reactorFactory, final int backlog) throws IOException {
+        final SocketConfig listenerConfig = this.listenerConfigBuilder.build();
+        final SocketConfig childConfig = this.childConfigBuilder.build();
+        final ReactorConfig reactorConfig = this.reactorConfigBuilder.build();
+        final Dispatcher dispatcher = new MultiworkerDispatcher(workers, listenerFactory(this.eventListenerFactory),
+                dispatcherThreadFactory, reactorConfig);
         try {
-            final ListeningReactor listeningReactor = new ListeningReactor(socketConfig, dispatcher, address, backlog);
+            final ListeningReactor listeningReactor = reactorFactory.create(listenerConfig, childConfig, dispatcher);
+            try {
+                for (final Map.Entry<SocketAddress, EventListenerFactory> endpoint : this.endpoints.entrySet()) {
+                    listeningReactor.listen(endpoint.getKey(), backlog, listenerFactory(endpoint.getValue()));
+                }
+            } catch (final IOException e) {
+                // cleanup listening sockets
+                listeningReactor.shutdown();
+                throw e;
+            }
             return new DefaultServerPromise(listeningReactor, acceptorThreadFactory).bind();
-        } catch (final IOException e) {
+        } catch (final IOException | RuntimeException e) {
             // cleanup dispatcher
             dispatcher.shutdown();
             throw e;
@@ -95,4 +253,10 @@ public class ServerBuilder {
         return bind(new InetSocketAddress(host, port));
     }
 
+    private interface ReactorFactory {
+
+        ListeningReactor create(SocketConfig listenerConfig, SocketConfig childConfig, Dispatcher dispatcher)
+                throws IOException;
+    }
+
 }
@@ -16,6 +16,10 @@
 
 package org.nioreactor;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,6 +33,90 @@ public interface ServerPromise {
 
     void shutdown();
 
+    /**
+     * Stops accepting connections and lets the open ones finish. Sessions are closed once no I/O happened for the
+     * quiet period, or when the timeout expires. Calling {@link #shutdown()} afterwards closes them immediately.
+     *
+     * @param quietPeriod the time without I/O after which sessions are closed.
+     * @param timeout     the maximum time to wait for sessions to finish.
+     * @param unit        the time unit of the arguments.
+     */
+    void shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit);
+
+    /**
+     * Stops accepting and lets the open connections finish like {@link #shutdownGracefully}, but leaves the listening
+     * sockets open so that a successor can accept the connections queued in their backlog, e.g. with
+     * {@link ServerBuilder#bind(ServerSocketChannel)}. Returns once this server no longer accepts on them.
+     *
+     * @param quietPeriod the time without I/O after which connections are closed.
+     * @param timeout     the maximum time to wait for connections to finish.
+     * @param unit        the time unit of the arguments.
+     * @return the listening channels.
+     * @throws InterruptedException  if interrupted while waiting for the acceptor to release the channels.
+     * @throws IllegalStateException if the server is not running.
+     */
+    List<ServerSocketChannel> handOff(long quietPeriod, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns the number of open connections. Useful to follow the progress of a graceful shutdown.
+     *
+     * @return the number of open connections.
+     */
+    int connections();
+
+    /**
+     * Opens an in-memory connection to the server, handled by the listeners of the bound address. Both ends follow
+     * the usual session contract and are driven by the event loop of one worker, exchanging bytes through a pair of
+     * ring buffers ({@link ReactorOption#LOCAL_BUFFER_SIZE}) instead of a socket. Local connections have no socket
+     * options, are not counted by the connection limits and stay on their worker.
+     *
+     * @param listener the listener of the client end, notified from the worker event loop.
+     * @return the client end.
+     * @throws IOException if no worker can take the connection.
+     */
+    SessionContext connectLocal(EventListener listener) throws IOException;
+
+    /**
+     * Writes the given payload to all the open sessions, see {@link #broadcast(ByteBuffer, Runnable)}.
+     *
+     * @param payload the bytes to write, from position to limit.
+     */
+    void broadcast(ByteBuffer payload);
+
+    /**
+     * Writes the given payload to all the open sessions without copying it. Each worker picks the payload up from its
+     * task queue and writes read-only views of it to its sessions; what the socket does not take is flushed ahead of
+     * the listener's next writes. The payload must not be modified until the release callback runs, once the last
+     * session has flushed it or has been closed.
+     *
+     * @param payload the bytes to write, from position to limit.
+     * @param release called once the payload is no longer used, or {@code null}.
+     */
+    void broadcast(ByteBuffer payload, Runnable release);
+
+    /**
+     * Finds an open session by id, as returned by {@link SessionContext#id()}. Safe to call from any thread.
+     *
+     * @param id the session id.
+     * @return the session, or {@code null} if no open session has the given id.
+     */
+    SessionContext lookup(long id);
+
+    /**
+     * Returns the current number of workers.
+     *
+     * @return the number of workers.
+     */
+    int workers();
+
+    /**
+     * Changes the number of workers while running. Sessions of retired workers move to the remaining ones.
+     *
+     * @param workers the new number of workers.
+     * @throws IOException if a new worker cannot be created.
+     */
+    void resize(int workers) throws IOException;
+
     void await() throws InterruptedException;
 
     void await(long timeout, TimeUnit unit) throws InterruptedException;
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Channel handed to listeners, one per connection. Output that cannot go straight to the socket is queued here in
+ * order: broadcasts, bytes the socket did not take and, with {@link ReactorOption#FLUSH_CONSOLIDATION}, the writes
+ * staged during the loop iteration. The queue is flushed with gathering writes at the end of the iteration, or when
+ * the socket becomes writable again.
+ * <p>
+ * While output is queued, writes made outside the event loop transfer nothing, as if the socket buffer was full;
+ * they go through once the worker has flushed the queue. Output is only queued once such a write in progress has
+ * returned, so the worker never flushes in the middle of it.
+ * <p>
+ * The channel is kept when its session is recycled and bound to the next connection. Handles reach it with their
+ * generation, so a handle of a recycled session never transfers bytes of the connection that reused it.
+ */
+final class SessionChannel implements ByteChannel {
+
+    private final DefaultSessionContext session;
+    // serializes the writes made outside the event loop with the queuing of output
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private volatile ByteChannel channel;
+    private volatile boolean queued = false;
+
+    // event loop only
+    private Deque<PendingWrite> outbound;
+    private long queuedBytes = 0;
+    private int stagedWrites = 0;
+    // waiting in the worker flush list
+    private boolean dirty = false;
+    // waiting for the socket to become writable
+    private boolean armed = false;
+
+    // kept across connections of a shaped session
+    private ShapedChannel shaped;
+
+    SessionChannel(final DefaultSessionContext session) {
+        this.session = session;
+    }
+
+    /**
+     * Binds this channel to a new connection of its session. Called from the event loop, once the output of the
+     * previous connection has been discarded.
+     *
+     * @param socketChannel the connection.
+     * @param shaper        the session traffic shaper, or {@code null} if not shaped.
+     * @param generation    the session generation of the connection.
+     */
+    void reset(final SocketChannel socketChannel, final TrafficShaper shaper, final int generation) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (shaper == null) {
+                this.channel = socketChannel;
+            } else {
+                if (this.shaped == null) {
+                    this.shaped = new ShapedChannel(this.session);
+                }
+                this.shaped.reset(socketChannel, shaper, generation);
+                this.channel = this.shaped;
+            }
+            this.armed = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    DefaultSessionContext session() {
+        return this.session;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        return this.channel.read(dst);
+    }
+
+    /**
+     * Reads on behalf of a handle, failing if the session has been recycled since the handle was given out.
+     */
+    int read(final ByteBuffer dst, final int generation) throws IOException {
+        if (isEventLoop()) {
+            checkGeneration(generation);
+            return this.channel.read(dst);
+        }
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            checkGeneration(generation);
+            return this.channel.read(dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes on behalf of a handle, failing if the session has been recycled since the handle was given out.
+     */
+    int write(final ByteBuffer src, final int generation) throws IOException {
+        if (isEventLoop()) {
+            checkGeneration(generation);
+            return write(src);
+        }
+
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            checkGeneration(generation);
+            return this.queued ? 0 : this.channel.write(src);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEventLoop() {
+        final DefaultWorker worker = this.session.worker();
+        return worker != null && worker.inEventLoop();
+    }
+
+    // the lock keeps the channel from being bound to the next connection meanwhile
+    private void checkGeneration(final int generation) throws ClosedChannelException {
+        if (!this.session.isGeneration(generation)) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final DefaultWorker worker = this.session.worker();
+        if (worker == null || !worker.inEventLoop()) {
+            return writeOffLoop(src);
+        }
+
+        final WriteStaging staging = worker.staging();
+        if (staging.isConsolidating()) {
+            return stage(src, staging, worker);
+        }
+        if (this.queued && !flush(worker)) {
+            return 0;
+        }
+        return this.channel.write(src);
+    }
+
+    private int writeOffLoop(final ByteBuffer src) throws IOException {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            return this.queued ? 0 : this.channel.write(src);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks output as queued, once the write made outside the event loop in progress, if any, has returned.
+     */
+    private void markQueued() {
+        if (!this.queued) {
+            final ReentrantLock lock = this.mainLock;
+            lock.lock();
+            try {
+                this.queued = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies the given bytes to the queue, up to the staged bytes limit, and flushes early once a limit is reached.
+     */
+    private int stage(final ByteBuffer src, final WriteStaging staging, final DefaultWorker worker) throws IOException {
+        if (!this.channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        if (!src.hasRemaining()) {
+            return 0;
+        }
+        if (this.queuedBytes >= staging.maxBytes()) {
+            flush(worker);
+            if (this.queuedBytes >= staging.maxBytes()) {
+                return 0;
+            }
+        }
+
+        final int count = (int) Math.min(src.remaining(), staging.maxBytes() - this.queuedBytes);
+        final int limit = src.limit();
+        src.limit(src.position() + count);
+        try {
+            while (src.hasRemaining()) {
+                append(src, staging);
+            }
+        } finally {
+            src.limit(limit);
+        }
+
+        this.queuedBytes += count;
+        this.stagedWrites++;
+        markQueued();
+        if (this.stagedWrites >= staging.maxWrites() || this.queuedBytes >= staging.maxBytes()) {
+            flush(worker);
+        } else {
+            flushLater(staging);
+        }
+        return count;
+    }
+
+    private void append(final ByteBuffer src, final WriteStaging staging) {
+        final Deque<PendingWrite> queue = outbound();
+        final PendingWrite last = queue.peekLast();
+        final ByteBuffer chunk;
+        if (last != null && last.chunk && last.buffer.limit() < last.buffer.capacity()) {
+            chunk = last.buffer;
+        } else {
+            chunk = staging.acquire();
+            queue.add(new PendingWrite(chunk, null, true));
+        }
+
+        // the chunk is kept in read mode, append after its content
+        final int position = chunk.position();
+        final int limit = src.limit();
+        chunk.position(chunk.limit()).limit(chunk.capacity());
+        if (src.remaining() > chunk.remaining()) {
+            src.limit(src.position() + chunk.remaining());
+        }
+        chunk.put(src);
+        src.limit(limit);
+        chunk.limit(chunk.position()).position(position);
+    }
+
+    /**
+     * Queues a broadcast, written at the end of the loop iteration. Called from the event loop.
+     *
+     * @param broadcast the broadcast.
+     */
+    void send(final Broadcast broadcast) {
+        final ByteBuffer view = broadcast.view();
+        if (!view.hasRemaining()) {
+            return;
+        }
+
+        broadcast.retain();
+        outbound().add(new PendingWrite(view, broadcast, false));
+        this.queuedBytes += view.remaining();
+        markQueued();
+        flushLater(this.session.worker().staging());
+    }
+
+    private Deque<PendingWrite> outbound() {
+        if (this.outbound == null) {
+            this.outbound = new ArrayDeque<>();
+        }
+        return this.outbound;
+    }
+
+    private void flushLater(final WriteStaging staging) {
+        if (!this.dirty) {
+            this.dirty = true;
+            staging.flushLater(this);
+        }
+    }
+
+    /**
+     * Writes the queued output, gathering the queued buffers when the channel supports it. What the socket does not
+     * take waits for it to become writable. Called from the event loop.
+     *
+     * @param worker the worker running the loop.
+     * @return {@code true} if nothing is left queued, {@code false} otherwise.
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean flush(final DefaultWorker worker) throws IOException {
+        this.dirty = false;
+        if (!this.queued) {
+            return true;
+        }
+        // moved to another worker meanwhile, flushed there once writable
+        if (this.session.worker() != worker) {
+            arm(true);
+            return false;
+        }
+
+        final WriteStaging staging = worker.staging();
+        final Deque<PendingWrite> queue = this.outbound;
+        boolean complete = true;
+        while (complete && !queue.isEmpty()) {
+            final long written;
+            if (queue.size() > 1 && this.channel instanceof GatheringByteChannel) {
+                final ByteBuffer[] buffers = staging.gather();
+                int count = 0;
+                for (final PendingWrite pending : queue) {
+                    if (count == buffers.length) {
+                        break;
+                    }
+                    buffers[count++] = pending.buffer;
+                }
+                long expected = 0;
+                for (int i = 0; i < count; i++) {
+                    expected += buffers[i].remaining();
+                }
+                try {
+                    written = ((GatheringByteChannel) this.channel).write(buffers, 0, count);
+                } finally {
+                    Arrays.fill(buffers, 0, count, null);
+                }
+                complete = written == expected;
+            } else {
+                final ByteBuffer buffer = queue.peek().buffer;
+                final int expected = buffer.remaining();
+                written = this.channel.write(buffer);
+                complete = written == expected;
+            }
+
+            this.queuedBytes -= written;
+            PendingWrite next;
+            while ((next = queue.peek()) != null && !next.buffer.hasRemaining()) {
+                queue.poll();
+                release(next, staging);
+            }
+        }
+
+        this.stagedWrites = 0;
+        if (!queue.isEmpty()) {
+            arm(true);
+            return false;
+        }
+
+        this.queued = false;
+        arm(false);
+        return true;
+    }
+
+    private void arm(final boolean armed) {
+        if (this.armed != armed) {
+            this.armed = armed;
+            this.session.outputPending(armed);
+        }
+    }
+
+    boolean isQueued() {
+        return this.queued;
+    }
+
+    /**
+     * Drops the queued output of a closed connection. Called from the event loop.
+     *
+     * @param staging the staging of the worker running the loop.
+     */
+    void discard(final WriteStaging staging) {
+        if (this.outbound != null) {
+            PendingWrite next;
+            while ((next = this.outbound.poll()) != null) {
+                release(next, staging);
+            }
+        }
+        this.queuedBytes = 0;
+        this.stagedWrites = 0;
+        this.queued = false;
+    }
+
+    private static void release(final PendingWrite pending, final WriteStaging staging) {
+        if (pending.broadcast != null) {
+            pending.broadcast.release();
+        } else if (pending.chunk) {
+            staging.release(pending.buffer);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private static final class PendingWrite {
+
+        private final ByteBuffer buffer;
+        private final Broadcast broadcast;
+        private final boolean chunk;
+
+        private PendingWrite(final ByteBuffer buffer, final Broadcast broadcast, final boolean chunk) {
+            this.buffer = buffer;
+            this.broadcast = broadcast;
+            this.chunk = chunk;
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package org.nioreactor;
 
+import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 
 /**
@@ -26,6 +28,14 @@ import java.nio.channels.ByteChannel;
  */
 public interface SessionContext {
 
+    /**
+     * Returns the id of this session, unique among the open sessions of the server. Ids of closed sessions are not
+     * reused right away, so a session can be found again with {@link ServerPromise#lookup(long)} from any thread.
+     *
+     * @return the session id.
+     */
+    long id();
+
     /**
      * Returns the underlying I/O channel.
      *
@@ -47,6 +57,31 @@ public interface SessionContext {
      */
     SocketAddress localAddress();
 
+    /**
+     * Reads from the channel into a receive buffer owned by the worker.
+     * <p>
+     * The buffer size adapts to the session traffic: it grows when reads fill it and shrinks when they keep using
+     * less than half of it, within {@link ReactorOption#RECEIVE_BUFFER_MIN} and
+     * {@link ReactorOption#RECEIVE_BUFFER_MAX}. The buffer is shared by the sessions of the worker, so its content
+     * is only valid until the callback returns and bytes not consumed by then must be copied. Called outside the
+     * event loop, a new heap buffer is returned instead.
+     *
+     * @return the bytes read, ready to be consumed, possibly none, or {@code null} if the channel has reached
+     * end-of-stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    ByteBuffer receive() throws IOException;
+
+    /**
+     * Reads a socket option of the underlying channel.
+     *
+     * @param option the socket option.
+     * @return the option value.
+     * @throws IOException                   if an I/O error occurs.
+     * @throws UnsupportedOperationException if the option is not supported.
+     */
+    <T> T socketOption(SocketOption<T> option) throws IOException;
+
     /**
      * Sets the interest in an I/O event.
      *
@@ -54,6 +89,13 @@ public interface SessionContext {
      */
     void interestEvent(EventKey ops);
 
+    /**
+     * Executes the given task on the event loop that owns this session.
+     *
+     * @param task the task to execute.
+     */
+    void execute(Runnable task);
+
     /**
      * Terminates the session and closes the underlying I/O channel.
      */
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * View of a pooled session handed to listeners, bound to one generation of the session. The handle is also the
+ * channel of that generation, the session channel itself being kept across connections.
+ * <p>
+ * Once the session is recycled for another connection the handle behaves as a closed session: interest changes,
+ * close and tasks are ignored, attributes are gone and I/O fails with {@link ClosedChannelException}. Reads of
+ * session state check the generation after the fact, so a handle never returns state of the connection that reused
+ * the session. Listeners finishing a session on another thread {@link #hold} it so it is not recycled meanwhile.
+ */
+final class SessionHandle implements SessionContext, ByteChannel {
+
+    private final DefaultSessionContext session;
+    private final int generation;
+
+    SessionHandle(final DefaultSessionContext session, final int generation) {
+        this.session = session;
+        this.generation = generation;
+    }
+
+    private boolean isStale() {
+        return !this.session.isGeneration(this.generation);
+    }
+
+    /**
+     * Keeps the session behind the given handle from being recycled until the returned callback runs, so the
+     * handle stays valid for listeners finishing the session on another thread. Called from the event loop.
+     *
+     * @param session the session handed to the listener.
+     * @return the callback releasing the session, to be run exactly once.
+     */
+    static Runnable hold(final SessionContext session) {
+        if (session instanceof SessionHandle && !((SessionHandle) session).isStale()) {
+            final DefaultSessionContext held = ((SessionHandle) session).session;
+            held.hold();
+            return held::release;
+        }
+        // not pooled
+        return () -> {
+        };
+    }
+
+    @Override
+    public long id() {
+        final long id = this.session.id();
+        return isStale() ? SessionRegistry.NO_ID : id;
+    }
+
+    @Override
+    public ByteChannel channel() {
+        return isStale() ? ClosedByteChannel.INSTANCE : this;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        return this.session.sessionChannel().read(dst, this.generation);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        return this.session.sessionChannel().write(src, this.generation);
+    }
+
+    @Override
+    public boolean isOpen() {
+        final boolean open = this.session.sessionChannel().isOpen();
+        return open && !isStale();
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        final SocketAddress address = this.session.remoteAddress();
+        return isStale() ? null : address;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        final SocketAddress address = this.session.localAddress();
+        return isStale() ? null : address;
+    }
+
+    @Override
+    public ByteBuffer receive() throws IOException {
+        if (isStale()) {
+            throw new ClosedChannelException();
+        }
+        // reads fail if the session is recycled meanwhile
+        return this.session.receive(this);
+    }
+
+    @Override
+    public <T> T socketOption(final SocketOption<T> option) throws IOException {
+        Preconditions.checkNotNull(option, "option is null");
+        final SocketChannel channel = this.session.socketChannel();
+        if (isStale()) {
+            throw new ClosedChannelException();
+        }
+        return option.get(channel);
+    }
+
+    @Override
+    public void interestEvent(final EventKey ops) {
+        this.session.interestEvent(this.generation, ops);
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        Preconditions.checkNotNull(task, "task is null");
+        if (!isStale()) {
+            this.session.execute(() -> {
+                if (!isStale()) {
+                    task.run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        this.session.close(this.generation);
+    }
+
+    @Override
+    public boolean isClosed() {
+        final boolean closed = this.session.isClosed();
+        return closed || isStale();
+    }
+
+    @Override
+    public <T> T putAttribute(final AttributeKey<T> key, final T value) {
+        Preconditions.checkNotNull(key, "key is null");
+        Preconditions.checkNotNull(value, "value is null");
+        return this.session.putAttribute(this.generation, key, value);
+    }
+
+    @Override
+    public <T> T getAttribute(final AttributeKey<T> key) {
+        final T value = isStale() ? null : this.session.getAttribute(key);
+        return isStale() ? null : value;
+    }
+
+    @Override
+    public <T> T removeAttribute(final AttributeKey<T> key) {
+        Preconditions.checkNotNull(key, "key is null");
+        return this.session.removeAttribute(this.generation, key);
+    }
+
+    @Override
+    public String toString() {
+        final String value = isStale() ? null : this.session.toString();
+        return isStale() ? "[RECYCLED]" : value;
+    }
+
+    /**
+     * Channel of a recycled session.
+     */
+    private static final class ClosedByteChannel implements ByteChannel {
+
+        private static final ClosedByteChannel INSTANCE = new ClosedByteChannel();
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            throw new ClosedChannelException();
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            throw new ClosedChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // already closed
+        }
+    }
+}
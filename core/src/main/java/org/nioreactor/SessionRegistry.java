@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server-wide session index, split in one segment per worker.
+ * <p>
+ * Session ids pack the segment index, the slot within the segment and a tag that changes each time a slot is reused,
+ * so the id of a closed session does not find the session that took its slot. A session keeps its slot until it is
+ * disconnected, even when moved to another worker. Each worker also iterates its own sessions through its segment.
+ * Lookups read the segment without locking and can be made from any thread.
+ */
+final class SessionRegistry {
+
+    /**
+     * Id of the sessions not registered.
+     */
+    static final long NO_ID = -1L;
+
+    private static final int SEGMENT_SHIFT = 48;
+    private static final int SLOT_SHIFT = 24;
+    private static final int MAX_SEGMENTS = 1 << 15;
+    private static final int MAX_SLOTS = 1 << 24;
+    private static final int TAG_MASK = (1 << 24) - 1;
+
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private volatile Segment[] segments = new Segment[0];
+
+    // guarded by mainLock
+    private final Deque<Segment> released = new ArrayDeque<>();
+
+    /**
+     * Returns a segment for a new worker, reusing one released by a retired worker if possible.
+     *
+     * @return the segment.
+     */
+    Segment acquire() {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            final Segment reused = this.released.poll();
+            if (reused != null) {
+                return reused;
+            }
+
+            final Segment[] current = this.segments;
+            if (current.length == MAX_SEGMENTS) {
+                throw new IllegalStateException("too many workers");
+            }
+            final Segment segment = new Segment(current.length);
+            final Segment[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[segment.index] = segment;
+            this.segments = grown;
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the segment of a stopped worker. Its sessions moved to other workers stay registered until they
+     * disconnect.
+     *
+     * @param segment the segment.
+     */
+    void release(final Segment segment) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.released.add(segment);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a disconnected session, whatever worker it ended on.
+     *
+     * @param session the session.
+     */
+    void unregister(final DefaultSessionContext session) {
+        final long id = session.id();
+        if (id != NO_ID) {
+            this.segments[segmentOf(id)].free(slotOf(id), session);
+            session.id(NO_ID);
+        }
+    }
+
+    /**
+     * Finds an open session by id.
+     *
+     * @param id the session id.
+     * @return the session handle, or {@code null} if no open session has the given id.
+     */
+    SessionContext lookup(final long id) {
+        final Segment[] current = this.segments;
+        if (id < 0 || segmentOf(id) >= current.length) {
+            return null;
+        }
+
+        final DefaultSessionContext session = current[segmentOf(id)].get(slotOf(id));
+        if (session == null) {
+            return null;
+        }
+        // the handle checks its generation, so it cannot answer for a session reused in between
+        final SessionContext handle = session.handle();
+        return handle != null && handle.id() == id ? handle : null;
+    }
+
+    private static int segmentOf(final long id) {
+        return (int) (id >>> SEGMENT_SHIFT);
+    }
+
+    private static int slotOf(final long id) {
+        return (int) (id >>> SLOT_SHIFT) & (MAX_SLOTS - 1);
+    }
+
+    /**
+     * Growable slot array of one worker, holding both the sessions the worker runs and the lookup entries of the
+     * sessions it registered. A session moved to another worker keeps its entry here, marked away, and takes a slot
+     * without id on the new worker. Written under the segment lock, read without it; slots are only taken, and
+     * iterated, by the event loop of the owning worker.
+     */
+    static final class Segment {
+
+        private final ReentrantLock mainLock = new ReentrantLock();
+        private final int index;
+        private volatile AtomicReferenceArray<DefaultSessionContext> slots = new AtomicReferenceArray<>(64);
+
+        // guarded by mainLock
+        private int[] freeSlots = new int[16];
+        private int freeSlotCount = 0;
+        private int slotCount = 0;
+        private int tag = 0;
+
+        // event loop of the owning worker only, entries of the sessions moved to another worker
+        private boolean[] away = new boolean[64];
+
+        private Segment(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * Returns the position of this segment in the registry, reused once the segment is released.
+         */
+        int index() {
+            return this.index;
+        }
+
+        /**
+         * Adds a new session and assigns its id. Called from the event loop of the owning worker.
+         *
+         * @param session the session.
+         * @return {@code false} if the segment is full.
+         */
+        boolean register(final DefaultSessionContext session) {
+            final ReentrantLock lock = this.mainLock;
+            lock.lock();
+            try {
+                final int next = this.freeSlotCount > 0 ? this.freeSlots[this.freeSlotCount - 1] : this.slotCount;
+                if (next >= MAX_SLOTS) {
+                    return false;
+                }
+
+                final int slot = allocate();
+                this.tag = (this.tag + 1) & TAG_MASK;
+                session.id(((long) this.index << SEGMENT_SHIFT) | ((long) slot << SLOT_SHIFT) | this.tag);
+                this.slots.set(slot, session);
+                session.slot(slot);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Adds a session moved from another worker. A session coming back takes its own entry again, the others a
+         * slot without id. Called from the event loop of the owning worker.
+         *
+         * @param session the session.
+         */
+        void add(final DefaultSessionContext session) {
+            final long id = session.id();
+            if (id != NO_ID && segmentOf(id) == this.index && get(slotOf(id)) == session) {
+                this.away[slotOf(id)] = false;
+                session.slot(slotOf(id));
+                return;
+            }
+
+            final ReentrantLock lock = this.mainLock;
+            lock.lock();
+            try {
+                final int slot = allocate();
+                this.slots.set(slot, session);
+                session.slot(slot);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes a disconnected session. Called from the event loop of the owning worker.
+         *
+         * @param session the session.
+         * @return {@code false} if the session does not run on the owning worker.
+         */
+        boolean remove(final DefaultSessionContext session) {
+            if (!contains(session)) {
+                return false;
+            }
+
+            free(session.slot(), session);
+            session.slot(-1);
+            return true;
+        }
+
+        /**
+         * Removes a session moving to another worker. Its lookup entry stays until it disconnects. Called from the
+         * event loop of the owning worker.
+         *
+         * @param session the session.
+         */
+        void leave(final DefaultSessionContext session) {
+            final int slot = session.slot();
+            final long id = session.id();
+            if (id != NO_ID && segmentOf(id) == this.index && slotOf(id) == slot) {
+                this.away[slot] = true;
+            } else {
+                free(slot, session);
+            }
+            session.slot(-1);
+        }
+
+        /**
+         * Checks if a session runs on the owning worker. Called from its event loop.
+         */
+        boolean contains(final DefaultSessionContext session) {
+            final int slot = session.slot();
+            return slot >= 0 && slot < this.slotCount && !this.away[slot] && this.slots.get(slot) == session;
+        }
+
+        /**
+         * Runs the given action for each session of the owning worker, in slot order. Called from its event loop;
+         * the action must not add or remove sessions.
+         *
+         * @param action the action.
+         */
+        void forEach(final Consumer<DefaultSessionContext> action) {
+            final AtomicReferenceArray<DefaultSessionContext> current = this.slots;
+            final int count = this.slotCount;
+            for (int slot = 0; slot < count; slot++) {
+                final DefaultSessionContext session = current.get(slot);
+                if (session != null && !this.away[slot]) {
+                    action.accept(session);
+                }
+            }
+        }
+
+        // guarded by mainLock
+        private int allocate() {
+            final int slot;
+            if (this.freeSlotCount > 0) {
+                slot = this.freeSlots[--this.freeSlotCount];
+            } else {
+                if (this.slotCount == this.slots.length()) {
+                    grow();
+                }
+                slot = this.slotCount++;
+            }
+            // an entry freed by the session's last worker may still be marked away
+            this.away[slot] = false;
+            return slot;
+        }
+
+        private void grow() {
+            final AtomicReferenceArray<DefaultSessionContext> current = this.slots;
+            final AtomicReferenceArray<DefaultSessionContext> grown = new AtomicReferenceArray<>(current.length() * 2);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            this.away = Arrays.copyOf(this.away, grown.length());
+            this.slots = grown;
+        }
+
+        private void free(final int slot, final DefaultSessionContext session) {
+            final ReentrantLock lock = this.mainLock;
+            lock.lock();
+            try {
+                if (this.slots.get(slot) == session) {
+                    this.slots.set(slot, null);
+                    if (this.freeSlotCount == this.freeSlots.length) {
+                        this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotCount * 2);
+                    }
+                    this.freeSlots[this.freeSlotCount++] = slot;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private DefaultSessionContext get(final int slot) {
+            final AtomicReferenceArray<DefaultSessionContext> current = this.slots;
+            return slot < current.length() ? current.get(slot) : null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Channel that transfers no more bytes than allowed by the session traffic shaper. Once the limits are exhausted
+ * the matching interest is suspended until the worker timer resumes it. Kept by the session channel across the
+ * connections of a pooled session.
+ */
+final class ShapedChannel implements ByteChannel {
+
+    private final DefaultSessionContext session;
+    // set by the session channel, under its lock
+    private SocketChannel channel;
+    private TrafficShaper shaper;
+    private int generation;
+    private boolean readShaped;
+    private boolean writeShaped;
+
+    ShapedChannel(final DefaultSessionContext session) {
+        this.session = session;
+    }
+
+    void reset(final SocketChannel channel, final TrafficShaper shaper, final int generation) {
+        this.channel = channel;
+        this.shaper = shaper;
+        this.generation = generation;
+        this.readShaped = shaper.isEnabled(SelectionKey.OP_READ);
+        this.writeShaped = shaper.isEnabled(SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        if (!this.readShaped) {
+            return this.channel.read(dst);
+        }
+
+        final int allowed = allowed(SelectionKey.OP_READ, dst.remaining());
+        if (allowed == 0) {
+            return 0;
+        }
+
+        final int limit = dst.limit();
+        dst.limit(dst.position() + allowed);
+        try {
+            final int count = this.channel.read(dst);
+            if (count > 0) {
+                this.shaper.consume(SelectionKey.OP_READ, count);
+            }
+            return count;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        if (!this.writeShaped) {
+            return this.channel.write(src);
+        }
+
+        final int allowed = allowed(SelectionKey.OP_WRITE, src.remaining());
+        if (allowed == 0) {
+            return 0;
+        }
+
+        final int limit = src.limit();
+        src.limit(src.position() + allowed);
+        try {
+            final int count = this.channel.write(src);
+            if (count > 0) {
+                this.shaper.consume(SelectionKey.OP_WRITE, count);
+            }
+            return count;
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    private int allowed(final int op, final int remaining) {
+        if (remaining == 0) {
+            return 0;
+        }
+
+        final long now = System.nanoTime();
+        final long available = this.shaper.available(op, now);
+        if (available <= 0) {
+            this.session.suspend(this.generation, op, this.shaper.delayNanos(op, now));
+            return 0;
+        }
+
+        return (int) Math.min(remaining, available);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Listening sockets the workers accept on themselves, see {@link ReactorOption#WORKER_ACCEPT}.
+ * <p>
+ * Every worker registers the sockets with its own selector, but only the worker holding the accept token selects
+ * {@code OP_ACCEPT}, so a new connection wakes up a single worker instead of all of them. The holder registers the
+ * connections it accepts on its own selector and passes the token on to the least loaded worker once it holds
+ * {@link #SLACK} connections more than it, which costs one wakeup per handover instead of one per connection.
+ */
+final class SharedAcceptor {
+
+    private static final Logger LOG = Logger.getLogger(SharedAcceptor.class.getName());
+
+    // connections accepted per wakeup
+    static final int ACCEPT_BATCH = 16;
+    // connections the holder may be ahead of the least loaded worker before handing the token over
+    private static final int SLACK = 8;
+
+    private final List<Endpoint> endpoints = new CopyOnWriteArrayList<>();
+    private final AtomicReference<DefaultWorker> holder = new AtomicReference<>();
+    private final Supplier<List<DefaultWorker>> workers;
+    private final Dispatcher dispatcher;
+    private final AdmissionControl admission;
+    private final ReactorProbe probe;
+    private volatile boolean closed = false;
+
+    SharedAcceptor(final Supplier<List<DefaultWorker>> workers, final Dispatcher dispatcher,
+                   final AdmissionControl admission, final ReactorProbe probe) {
+        this.workers = workers;
+        this.dispatcher = dispatcher;
+        this.admission = admission;
+        this.probe = probe;
+        admission.resumeHook(this::resume);
+    }
+
+    /**
+     * Adds a bound listening socket. Must be called before the workers start.
+     */
+    void add(final ServerSocketChannel serverChannel, final EventListenerFactory factory, final SocketConfig childConfig) {
+        this.endpoints.add(new Endpoint(serverChannel, factory, childConfig));
+    }
+
+    List<Endpoint> endpoints() {
+        return this.endpoints;
+    }
+
+    /**
+     * Stops accepting. Workers drop their registrations on their next iteration.
+     */
+    void close() {
+        this.closed = true;
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    boolean isHolder(final DefaultWorker worker) {
+        return this.holder.get() == worker;
+    }
+
+    /**
+     * Called by a worker once it has registered the listening sockets, from its event loop. Takes the token if no
+     * worker holds it.
+     */
+    void join(final DefaultWorker worker) {
+        if (this.holder.compareAndSet(null, worker)) {
+            worker.armAccept();
+        }
+    }
+
+    /**
+     * Called by a worker that stops accepting, from its event loop. Hands the token over if it holds it.
+     */
+    void leave(final DefaultWorker worker) {
+        if (this.holder.get() == worker) {
+            pass(worker, leastLoaded(worker));
+        }
+    }
+
+    /**
+     * Accepts the pending connections of an endpoint. Called from the event loop of the token holder; a worker that
+     * has passed the token on may still have the endpoint key selected and returns right away.
+     */
+    void accept(final DefaultWorker worker, final Endpoint endpoint) {
+        if (!isHolder(worker)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < ACCEPT_BATCH && !this.closed && !this.admission.isPaused() && isHolder(worker); i++) {
+                if (!this.admission.tryAcquire()) {
+                    overloaded(worker, endpoint);
+                    return;
+                }
+
+                final SocketChannel socketChannel = endpoint.serverChannel.accept();
+                if (socketChannel == null) {
+                    this.admission.release();
+                    break;
+                }
+
+                accepted(worker, endpoint, socketChannel);
+            }
+        } catch (final IOException ex) {
+            LOG.log(Level.WARNING, "Could not accept connection", ex);
+        }
+
+        final DefaultWorker next = leastLoaded(worker);
+        if (next != null && worker.connections() - next.connections() > SLACK) {
+            pass(worker, next);
+        }
+    }
+
+    private void accepted(final DefaultWorker worker, final Endpoint endpoint, final SocketChannel socketChannel) {
+        final SocketAddress remoteAddress = socketChannel.socket().getRemoteSocketAddress();
+        if (!this.admission.tryAcquire(remoteAddress)) {
+            LOG.log(Level.FINE, "Address limits reached: {0}", remoteAddress);
+            reject(socketChannel);
+            this.admission.release();
+            return;
+        }
+
+        try {
+            SocketOption.applyAll(socketChannel, endpoint.childConfig, false);
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "Could not set socket options", ex);
+            reject(socketChannel);
+            this.admission.release(remoteAddress);
+            return;
+        }
+
+        // registered right here unless this worker is at capacity
+        final long availability = this.admission.workerAvailability();
+        if (worker.register(socketChannel, endpoint.factory)) {
+            this.probe.accepted(socketChannel, true);
+            return;
+        }
+        // the dispatcher reports the connection, whether it finds a worker or not
+        if (this.dispatcher.dispatch(socketChannel, endpoint.factory)) {
+            return;
+        }
+
+        // all workers at capacity
+        if (this.admission.policy() == OverloadPolicy.PAUSE_ACCEPT
+                && this.admission.pauseUntilWorkerAvailable(availability)) {
+            LOG.warning("No worker can take connections. Pausing accept");
+            worker.disarmAccept();
+        }
+        reject(socketChannel);
+        this.admission.release(remoteAddress);
+    }
+
+    private void overloaded(final DefaultWorker worker, final Endpoint endpoint) throws IOException {
+        if (this.admission.policy() == OverloadPolicy.PAUSE_ACCEPT) {
+            LOG.warning("Connection limit reached. Pausing accept");
+            // leave pending connections in the kernel backlog
+            worker.disarmAccept();
+            this.admission.pause();
+        } else {
+            final SocketChannel socketChannel = endpoint.serverChannel.accept();
+            if (socketChannel != null) {
+                reject(socketChannel);
+            }
+        }
+    }
+
+    private void resume() {
+        final DefaultWorker current = this.holder.get();
+        if (current != null) {
+            current.execute(current::armAccept);
+        }
+    }
+
+    private void pass(final DefaultWorker from, final DefaultWorker to) {
+        if (!this.holder.compareAndSet(from, to)) {
+            return;
+        }
+        from.disarmAccept();
+
+        DefaultWorker current = to;
+        while (current != null) {
+            if (current.isActive()) {
+                // if it stops from now on, it hands the token over itself when leaving
+                current.execute(current::armAccept);
+                return;
+            }
+
+            // stopped after it was picked, it may have left already
+            final DefaultWorker next = leastLoaded(current);
+            if (!this.holder.compareAndSet(current, next)) {
+                return;
+            }
+            current = next;
+        }
+    }
+
+    private DefaultWorker leastLoaded(final DefaultWorker exclude) {
+        DefaultWorker least = null;
+        for (final DefaultWorker worker : this.workers.get()) {
+            if (worker != exclude && worker.isActive()
+                    && (least == null || worker.connections() < least.connections())) {
+                least = worker;
+            }
+        }
+        return least;
+    }
+
+    private static void reject(final SocketChannel socketChannel) {
+        try {
+            // reset the connection instead of leaving it in TIME_WAIT
+            socketChannel.socket().setSoLinger(true, 0);
+            socketChannel.close();
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "Could not close channel", ex);
+        }
+    }
+
+    /**
+     * Listening socket shared by the workers, attached to their accept keys.
+     */
+    static final class Endpoint {
+
+        private final ServerSocketChannel serverChannel;
+        private final EventListenerFactory factory;
+        private final SocketConfig childConfig;
+
+        private Endpoint(final ServerSocketChannel serverChannel, final EventListenerFactory factory,
+                         final SocketConfig childConfig) {
+            this.serverChannel = Preconditions.checkNotNull(serverChannel, "server channel is null");
+            this.factory = factory;
+            this.childConfig = Preconditions.checkNotNull(childConfig, "child config is null");
+        }
+
+        ServerSocketChannel serverChannel() {
+            return this.serverChannel;
+        }
+    }
+}
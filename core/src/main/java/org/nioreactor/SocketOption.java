@@ -18,29 +18,239 @@ package org.nioreactor;
 
 import org.nioreactor.util.Preconditions;
 
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Option for configuring the socket.
  * <p>
+ * Options map onto {@link NetworkChannel#setOption}, including the {@code jdk.net.ExtendedSocketOptions} of the
+ * running JVM. Each option applies to the listening socket, to the accepted sockets, or to both. Values that fail
+ * the option's applicability check (e.g. a buffer size of {@code 0}) leave the system default in place.
+ * <p>
  * Created by ribeirux on 8/17/14.
  */
 public final class SocketOption<T> extends AbstractOption<T> {
 
-    public static final SocketOption<Integer> SO_TIMEOUT = new SocketOption<>("SO_TIMEOUT", Integer.class, 0);
-    public static final SocketOption<Boolean> SO_REUSEADDR = new SocketOption<>("SO_REUSEADDR", Boolean.class, false);
-    public static final SocketOption<Integer> SO_LINGER = new SocketOption<>("SO_LINGER", Integer.class, -1);
-    public static final SocketOption<Boolean> SO_KEEPALIVE = new SocketOption<>("SO_KEEPALIVE", Boolean.class, false);
-    public static final SocketOption<Boolean> TCP_NODELAY = new SocketOption<>("TCP_NODELAY", Boolean.class, true);
-    public static final SocketOption<Integer> SO_SNDBUF = new SocketOption<>("SO_SNDBUF", Integer.class, 0);
-    public static final SocketOption<Integer> SO_RCVBUF = new SocketOption<>("SO_RCVBUF", Integer.class, 0);
+    private static final Logger LOG = Logger.getLogger(SocketOption.class.getName());
+
+    private static final int LISTENER = 1;
+    private static final int CHILD = 2;
+
+    // must be initialized before the options
+    private static final List<SocketOption<?>> VALUES = new ArrayList<>();
+
+    public static final SocketOption<Integer> SO_TIMEOUT = new SocketOption<>("SO_TIMEOUT", Integer.class, 0, null, v -> v > 0, LISTENER | CHILD);
+    public static final SocketOption<Boolean> SO_REUSEADDR = new SocketOption<>("SO_REUSEADDR", Boolean.class, false, StandardSocketOptions.SO_REUSEADDR, v -> true, LISTENER);
+    public static final SocketOption<Integer> SO_LINGER = new SocketOption<>("SO_LINGER", Integer.class, -1, StandardSocketOptions.SO_LINGER, v -> v >= 0, CHILD);
+    public static final SocketOption<Boolean> SO_KEEPALIVE = new SocketOption<>("SO_KEEPALIVE", Boolean.class, false, StandardSocketOptions.SO_KEEPALIVE, v -> true, CHILD);
+    public static final SocketOption<Boolean> TCP_NODELAY = new SocketOption<>("TCP_NODELAY", Boolean.class, true, StandardSocketOptions.TCP_NODELAY, v -> true, CHILD);
+    public static final SocketOption<Integer> SO_SNDBUF = new SocketOption<>("SO_SNDBUF", Integer.class, 0, StandardSocketOptions.SO_SNDBUF, v -> v > 0, CHILD);
+    /**
+     * Receive buffer size. Set on the listening socket before bind, so accepted sockets negotiate the matching TCP
+     * window scale.
+     */
+    public static final SocketOption<Integer> SO_RCVBUF = new SocketOption<>("SO_RCVBUF", Integer.class, 0, StandardSocketOptions.SO_RCVBUF, v -> v > 0, LISTENER | CHILD);
+    /**
+     * Lets several listening sockets bind the same address, with the kernel balancing connections between them.
+     * Requires Java 9.
+     */
+    public static final SocketOption<Boolean> SO_REUSEPORT = new SocketOption<>("SO_REUSEPORT", Boolean.class, false, resolve("java.net.StandardSocketOptions", "SO_REUSEPORT"), v -> v, LISTENER);
+    /**
+     * Type of service or traffic class of the IP packets. {@code -1} leaves the system default.
+     */
+    public static final SocketOption<Integer> IP_TOS = new SocketOption<>("IP_TOS", Integer.class, -1, StandardSocketOptions.IP_TOS, v -> v >= 0, CHILD);
+    /**
+     * Idle seconds before keep alive probes are sent. {@code 0} leaves the system default.
+     */
+    public static final SocketOption<Integer> TCP_KEEPIDLE = new SocketOption<>("TCP_KEEPIDLE", Integer.class, 0, resolve("jdk.net.ExtendedSocketOptions", "TCP_KEEPIDLE"), v -> v > 0, CHILD);
+    /**
+     * Seconds between keep alive probes. {@code 0} leaves the system default.
+     */
+    public static final SocketOption<Integer> TCP_KEEPINTERVAL = new SocketOption<>("TCP_KEEPINTERVAL", Integer.class, 0, resolve("jdk.net.ExtendedSocketOptions", "TCP_KEEPINTERVAL"), v -> v > 0, CHILD);
+    /**
+     * Unanswered keep alive probes before the connection is dropped. {@code 0} leaves the system default.
+     */
+    public static final SocketOption<Integer> TCP_KEEPCOUNT = new SocketOption<>("TCP_KEEPCOUNT", Integer.class, 0, resolve("jdk.net.ExtendedSocketOptions", "TCP_KEEPCOUNT"), v -> v > 0, CHILD);
+    /**
+     * Sends acknowledgements immediately instead of delaying them. Linux only.
+     */
+    public static final SocketOption<Boolean> TCP_QUICKACK = new SocketOption<>("TCP_QUICKACK", Boolean.class, false, resolve("jdk.net.ExtendedSocketOptions", "TCP_QUICKACK"), v -> v, CHILD);
+    /**
+     * Identifier of the NIC queue the connection was last received on. Read only, see
+     * {@link SessionContext#socketOption(SocketOption)}. Linux only.
+     */
+    public static final SocketOption<Integer> SO_INCOMING_NAPI_ID = new SocketOption<>("SO_INCOMING_NAPI_ID", Integer.class, 0, resolve("jdk.net.ExtendedSocketOptions", "SO_INCOMING_NAPI_ID"), v -> false, CHILD);
 
     private final T defaultValue;
+    private final java.net.SocketOption<T> socketOption;
+    private final Predicate<T> applicable;
+    private final int levels;
 
-    private SocketOption(final String name, final Class<T> type, final T defaultValue) {
+    private SocketOption(final String name, final Class<T> type, final T defaultValue,
+                         final java.net.SocketOption<T> socketOption, final Predicate<T> applicable, final int levels) {
         super(name, type);
         this.defaultValue = Preconditions.checkNotNull(defaultValue, "default value is null");
+        this.socketOption = socketOption;
+        this.applicable = applicable;
+        this.levels = levels;
+        VALUES.add(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> java.net.SocketOption<T> resolve(final String className, final String fieldName) {
+        try {
+            return (java.net.SocketOption<T>) Class.forName(className).getField(fieldName).get(null);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.log(Level.FINE, "Socket option {0} not available", fieldName);
+            return null;
+        }
+    }
+
+    /**
+     * Returns all the socket options.
+     *
+     * @return the socket options.
+     */
+    public static List<SocketOption<?>> values() {
+        return Collections.unmodifiableList(VALUES);
     }
 
     public T defaultValue() {
         return defaultValue;
     }
+
+    /**
+     * Checks if this option applies to the listening socket.
+     *
+     * @return {@code true} if it applies to the listening socket, {@code false} otherwise.
+     */
+    public boolean isListenerOption() {
+        return (this.levels & LISTENER) != 0;
+    }
+
+    /**
+     * Checks if this option applies to the accepted sockets.
+     *
+     * @return {@code true} if it applies to the accepted sockets, {@code false} otherwise.
+     */
+    public boolean isChildOption() {
+        return (this.levels & CHILD) != 0;
+    }
+
+    /**
+     * Checks if this option can be set on the running JVM and platform at every level it applies to.
+     *
+     * @return {@code true} if supported, {@code false} otherwise.
+     */
+    public boolean isSupported() {
+        if (this == SO_TIMEOUT) {
+            // set through the socket adaptor
+            return true;
+        }
+
+        return this.socketOption != null && this != SO_INCOMING_NAPI_ID
+                && (!isListenerOption() || SupportedOptions.LISTENER.contains(this.socketOption))
+                && (!isChildOption() || SupportedOptions.CHILD.contains(this.socketOption));
+    }
+
+    private boolean appliesTo(final boolean listener) {
+        return listener ? isListenerOption() : isChildOption();
+    }
+
+    /**
+     * Fails if the given configuration sets an option that cannot be applied on the running JVM and platform.
+     *
+     * @param config   the socket configuration.
+     * @param listener {@code true} to check the listening socket options, {@code false} for the accepted sockets.
+     * @throws UnsupportedOperationException if a configured option is not supported.
+     */
+    static void checkSupported(final SocketConfig config, final boolean listener) {
+        for (final SocketOption<?> option : VALUES) {
+            if (option.appliesTo(listener) && option.isConfigured(config) && !option.isSupported()) {
+                throw new UnsupportedOperationException(option.name() + " not supported");
+            }
+        }
+    }
+
+    /**
+     * Sets the configured options on the given channel.
+     *
+     * @param channel  the channel.
+     * @param config   the socket configuration.
+     * @param listener {@code true} if the channel is the listening socket, {@code false} if it is an accepted socket.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void applyAll(final NetworkChannel channel, final SocketConfig config, final boolean listener) throws IOException {
+        for (final SocketOption<?> option : VALUES) {
+            if (option.appliesTo(listener)) {
+                option.apply(channel, config);
+            }
+        }
+    }
+
+    private boolean isConfigured(final SocketConfig config) {
+        return this.applicable.test(config.option(this));
+    }
+
+    private void apply(final NetworkChannel channel, final SocketConfig config) throws IOException {
+        final T value = config.option(this);
+        if (!this.applicable.test(value)) {
+            return;
+        }
+
+        if (this == SO_TIMEOUT) {
+            if (channel instanceof ServerSocketChannel) {
+                ((ServerSocketChannel) channel).socket().setSoTimeout((Integer) value);
+            } else {
+                ((SocketChannel) channel).socket().setSoTimeout((Integer) value);
+            }
+        } else if (this.socketOption == null) {
+            throw new UnsupportedOperationException(name() + " not supported");
+        } else {
+            channel.setOption(this.socketOption, value);
+        }
+    }
+
+    /**
+     * Reads this option from the given channel.
+     */
+    T get(final NetworkChannel channel) throws IOException {
+        if (this == SO_TIMEOUT) {
+            return cast(((SocketChannel) channel).socket().getSoTimeout());
+        }
+        if (this.socketOption == null) {
+            throw new UnsupportedOperationException(name() + " not supported");
+        }
+
+        return channel.getOption(this.socketOption);
+    }
+
+    /**
+     * Options supported by the channels of the running JVM, resolved on first use.
+     */
+    private static final class SupportedOptions {
+
+        private static final Set<java.net.SocketOption<?>> LISTENER = supportedOptions(true);
+        private static final Set<java.net.SocketOption<?>> CHILD = supportedOptions(false);
+
+        private static Set<java.net.SocketOption<?>> supportedOptions(final boolean listener) {
+            try (NetworkChannel channel = listener ? ServerSocketChannel.open() : SocketChannel.open()) {
+                return channel.supportedOptions();
+            } catch (final IOException e) {
+                LOG.log(Level.WARNING, "Could not query the supported socket options", e);
+                return Collections.emptySet();
+            }
+        }
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte rate token bucket. The bucket holds up to 100ms worth of bytes and may go into debt when an I/O operation
+ * transfers more than what was available.
+ * <p>
+ * The global and worker buckets are shared by many sessions, so the bucket takes no lock: bytes are taken with a
+ * single atomic add and tokens are added at most once a millisecond, by the thread that wins the refill.
+ */
+final class TokenBucket {
+
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long REFILL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    private final AtomicLong tokens;
+    private final AtomicLong lastRefill;
+
+    TokenBucket(final long bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond > 0, "bytes per second <= 0");
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(1, bytesPerSecond * BURST_NANOS / TimeUnit.SECONDS.toNanos(1));
+        this.tokens = new AtomicLong(this.capacity);
+        this.lastRefill = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the number of bytes that can be transferred now.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     * @return the available bytes, zero or negative if the bucket is empty.
+     */
+    long available(final long now) {
+        refill(now);
+        return this.tokens.get();
+    }
+
+    /**
+     * Takes the given number of bytes from the bucket.
+     *
+     * @param bytes the transferred bytes.
+     */
+    void consume(final long bytes) {
+        this.tokens.addAndGet(-bytes);
+    }
+
+    /**
+     * Returns how long until at least one byte can be transferred.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     * @return the delay in nanoseconds.
+     */
+    long delayNanos(final long now) {
+        refill(now);
+        final long current = this.tokens.get();
+        if (current > 0) {
+            return 0;
+        }
+
+        final long delay = (long) Math.ceil((1 - current) * (double) TimeUnit.SECONDS.toNanos(1) / this.bytesPerSecond);
+        // tokens come in batches, not before the next refill
+        return Math.max(delay, this.lastRefill.get() + REFILL_NANOS - now);
+    }
+
+    private void refill(final long now) {
+        final long last = this.lastRefill.get();
+        final long elapsed = now - last;
+        if (elapsed < REFILL_NANOS) {
+            return;
+        }
+
+        long added = (long) (elapsed * (this.bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1)));
+        final long next;
+        if (added >= this.capacity) {
+            added = this.capacity;
+            next = now;
+        } else if (added > 0) {
+            // keep the time not yet converted into tokens
+            next = last + (long) (added * (double) TimeUnit.SECONDS.toNanos(1) / this.bytesPerSecond);
+        } else {
+            return;
+        }
+        if (!this.lastRefill.compareAndSet(last, next)) {
+            // refilled by another thread
+            return;
+        }
+
+        long current;
+        do {
+            current = this.tokens.get();
+            if (current >= this.capacity) {
+                return;
+            }
+        } while (!this.tokens.compareAndSet(current, Math.min(this.capacity, current + added)));
+    }
+}
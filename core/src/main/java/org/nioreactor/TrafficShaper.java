@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Chain of read and write byte rate limits. A session shaper is chained to its worker shaper, which is chained to
+ * the global shaper, so a transfer is allowed only when every level has bytes available.
+ */
+final class TrafficShaper {
+
+    private final TrafficShaper parent;
+    private final TokenBucket read;
+    private final TokenBucket write;
+    private final boolean readShaped;
+    private final boolean writeShaped;
+
+    private TrafficShaper(final TrafficShaper parent, final long readRate, final long writeRate) {
+        this.parent = parent;
+        this.read = readRate > 0 ? new TokenBucket(readRate) : null;
+        this.write = writeRate > 0 ? new TokenBucket(writeRate) : null;
+        this.readShaped = this.read != null || (parent != null && parent.readShaped);
+        this.writeShaped = this.write != null || (parent != null && parent.writeShaped);
+    }
+
+    static TrafficShaper global(final ReactorConfig config) {
+        return new TrafficShaper(null, config.option(ReactorOption.GLOBAL_READ_RATE),
+                config.option(ReactorOption.GLOBAL_WRITE_RATE));
+    }
+
+    TrafficShaper worker(final ReactorConfig config) {
+        return new TrafficShaper(this, config.option(ReactorOption.WORKER_READ_RATE),
+                config.option(ReactorOption.WORKER_WRITE_RATE));
+    }
+
+    /**
+     * Returns the shaper of a new session, this worker shaper itself if no session limits are set.
+     */
+    TrafficShaper session(final ReactorConfig config) {
+        final long readRate = config.option(ReactorOption.SESSION_READ_RATE);
+        final long writeRate = config.option(ReactorOption.SESSION_WRITE_RATE);
+        return readRate > 0 || writeRate > 0 ? new TrafficShaper(this, readRate, writeRate) : this;
+    }
+
+    boolean isEnabled() {
+        return this.readShaped || this.writeShaped;
+    }
+
+    /**
+     * Checks if any level limits the given operation.
+     *
+     * @param op {@link SelectionKey#OP_READ} or {@link SelectionKey#OP_WRITE}.
+     */
+    boolean isEnabled(final int op) {
+        return op == SelectionKey.OP_READ ? this.readShaped : this.writeShaped;
+    }
+
+    /**
+     * Returns the number of bytes that can be transferred now for the given operation.
+     *
+     * @param op  {@link SelectionKey#OP_READ} or {@link SelectionKey#OP_WRITE}.
+     * @param now the current {@link System#nanoTime()}.
+     * @return the available bytes, {@link Long#MAX_VALUE} if unlimited.
+     */
+    long available(final int op, final long now) {
+        final TokenBucket bucket = bucket(op);
+        final long available = bucket == null ? Long.MAX_VALUE : bucket.available(now);
+        return this.parent == null ? available : Math.min(available, this.parent.available(op, now));
+    }
+
+    void consume(final int op, final long bytes) {
+        final TokenBucket bucket = bucket(op);
+        if (bucket != null) {
+            bucket.consume(bytes);
+        }
+        if (this.parent != null) {
+            this.parent.consume(op, bytes);
+        }
+    }
+
+    /**
+     * Returns how long until every level has bytes available for the given operation.
+     *
+     * @param op  {@link SelectionKey#OP_READ} or {@link SelectionKey#OP_WRITE}.
+     * @param now the current {@link System#nanoTime()}.
+     * @return the delay in nanoseconds.
+     */
+    long delayNanos(final int op, final long now) {
+        final TokenBucket bucket = bucket(op);
+        final long delay = bucket == null ? 0 : bucket.delayNanos(now);
+        return this.parent == null ? delay : Math.max(delay, this.parent.delayNanos(op, now));
+    }
+
+    private TokenBucket bucket(final int op) {
+        return op == SelectionKey.OP_READ ? this.read : this.write;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the loop utilization of each worker between consecutive samples. Not thread safe, meant to be used by a
+ * single periodic task.
+ */
+final class UtilizationSampler {
+
+    private final Map<DefaultWorker, Sample> samples = new IdentityHashMap<>();
+
+    /**
+     * Samples the given workers.
+     *
+     * @param workers the workers to sample.
+     * @return the fraction of time each worker loop spent processing since the previous sample, between 0 and 1, or
+     * {@link Double#NaN} for workers sampled for the first time.
+     */
+    double[] sample(final List<DefaultWorker> workers) {
+        // forget the retired workers
+        this.samples.keySet().retainAll(workers);
+
+        final long now = System.nanoTime();
+        final double[] utilizations = new double[workers.size()];
+        for (int i = 0; i < utilizations.length; i++) {
+            final DefaultWorker worker = workers.get(i);
+            final long busy = worker.busyNanos();
+            final Sample previous = this.samples.put(worker, new Sample(busy, now));
+
+            final long elapsed = previous == null ? 0 : now - previous.at;
+            utilizations[i] = elapsed <= 0 ? Double.NaN : Math.min(1, (busy - previous.busyNanos) / (double) elapsed);
+        }
+
+        return utilizations;
+    }
+
+    private static final class Sample {
+
+        private final long busyNanos;
+        private final long at;
+
+        private Sample(final long busyNanos, final long at) {
+            this.busyNanos = busyNanos;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Periodically compares the worker loop utilizations and asks the busiest worker to move sessions to the least
+ * busy one when the difference goes over the threshold.
+ */
+final class WorkerBalancer implements Runnable {
+
+    private final UtilizationSampler sampler = new UtilizationSampler();
+    private final Supplier<List<DefaultWorker>> workers;
+    private final double threshold;
+
+    WorkerBalancer(final Supplier<List<DefaultWorker>> workers, final double threshold) {
+        this.workers = workers;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void run() {
+        final List<DefaultWorker> current = this.workers.get();
+        final double[] utilizations = this.sampler.sample(current);
+
+        DefaultWorker busiest = null;
+        DefaultWorker idlest = null;
+        double max = -1;
+        double min = 2;
+        for (int i = 0; i < utilizations.length; i++) {
+            final DefaultWorker worker = current.get(i);
+            final double utilization = utilizations[i];
+            if (Double.isNaN(utilization)) {
+                // joined since the previous sample
+                continue;
+            }
+            if (utilization > max) {
+                max = utilization;
+                busiest = worker;
+            }
+            if (utilization < min) {
+                min = utilization;
+                idlest = worker;
+            }
+        }
+
+        if (busiest != null && busiest != idlest && max - min >= this.threshold) {
+            busiest.rebalance(idlest, max - min, max);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically adds a worker when the average loop utilization goes over the scale up threshold, or retires one
+ * when it drops under the scale down threshold and the remaining workers would stay under the scale up threshold.
+ */
+final class WorkerScaler implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(WorkerScaler.class.getName());
+
+    private final UtilizationSampler sampler = new UtilizationSampler();
+    private final MultiworkerDispatcher dispatcher;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final double scaleUp;
+    private final double scaleDown;
+
+    WorkerScaler(final MultiworkerDispatcher dispatcher, final ReactorConfig config) {
+        this.dispatcher = dispatcher;
+        this.minWorkers = config.option(ReactorOption.MIN_WORKERS);
+        final int max = config.option(ReactorOption.MAX_WORKERS);
+        this.maxWorkers = max == 0 ? Runtime.getRuntime().availableProcessors() : max;
+        this.scaleUp = config.option(ReactorOption.SCALE_UP_UTILIZATION);
+        this.scaleDown = config.option(ReactorOption.SCALE_DOWN_UTILIZATION);
+        Preconditions.checkArgument(this.minWorkers > 0, "min workers <= 0");
+        Preconditions.checkArgument(this.maxWorkers >= this.minWorkers, "max workers < min workers");
+        Preconditions.checkArgument(this.scaleDown < this.scaleUp, "scale down utilization >= scale up utilization");
+    }
+
+    @Override
+    public void run() {
+        final List<DefaultWorker> current = this.dispatcher.workerList();
+        final int size = current.size();
+
+        double total = 0;
+        for (final double utilization : this.sampler.sample(current)) {
+            if (Double.isNaN(utilization)) {
+                // let the workers added by the previous run settle first
+                return;
+            }
+            total += utilization;
+        }
+
+        try {
+            if (total / size > this.scaleUp && size < this.maxWorkers) {
+                LOG.log(Level.INFO, "Adding worker, average utilization {0}", total / size);
+                this.dispatcher.resize(size + 1);
+            } else if (size > this.minWorkers && total / size < this.scaleDown && total / (size - 1) < this.scaleUp) {
+                LOG.log(Level.INFO, "Retiring worker, average utilization {0}", total / size);
+                this.dispatcher.resize(size - 1);
+            }
+        } catch (final IOException e) {
+            LOG.log(Level.WARNING, "Unable to add worker", e);
+        }
+    }
+}
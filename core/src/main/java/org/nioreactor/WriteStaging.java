@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Write staging of a worker: the sessions with queued output to flush at the end of the loop iteration and a pool of
+ * direct chunks the consolidated writes are copied into. Event loop only.
+ */
+final class WriteStaging {
+
+    static final int CHUNK_SIZE = 16384;
+    private static final int POOLED_CHUNKS = 64;
+    // buffers per gathering write
+    static final int MAX_GATHER = 64;
+
+    private final boolean consolidating;
+    private final int maxWrites;
+    private final int maxBytes;
+    private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+    private final List<SessionChannel> dirty = new ArrayList<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    WriteStaging(final ReactorConfig config) {
+        this.consolidating = config.option(ReactorOption.FLUSH_CONSOLIDATION);
+        this.maxWrites = config.option(ReactorOption.FLUSH_MAX_WRITES);
+        this.maxBytes = config.option(ReactorOption.FLUSH_MAX_BYTES);
+        Preconditions.checkArgument(this.maxWrites > 0, "flush max writes <= 0");
+        Preconditions.checkArgument(this.maxBytes > 0, "flush max bytes <= 0");
+    }
+
+    /**
+     * Checks if writes made on the event loop are staged until the end of the iteration.
+     */
+    boolean isConsolidating() {
+        return this.consolidating;
+    }
+
+    int maxWrites() {
+        return this.maxWrites;
+    }
+
+    int maxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Returns an empty chunk, in read mode with no content.
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer chunk = this.chunks.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+        final ByteBuffer created = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        created.limit(0);
+        return created;
+    }
+
+    void release(final ByteBuffer chunk) {
+        if (this.chunks.size() < POOLED_CHUNKS) {
+            chunk.clear().limit(0);
+            this.chunks.push(chunk);
+        }
+    }
+
+    /**
+     * Returns the array gathering writes are made from. Callers clear the references they set.
+     */
+    ByteBuffer[] gather() {
+        return this.gather;
+    }
+
+    /**
+     * Flushes the given channel at the end of the loop iteration.
+     */
+    void flushLater(final SessionChannel channel) {
+        this.dirty.add(channel);
+    }
+
+    /**
+     * Flushes the channels staged so far. Channels of sessions moved to another worker meanwhile are left to
+     * their new worker.
+     *
+     * @param owner the worker running this loop.
+     */
+    void flush(final DefaultWorker owner) {
+        if (this.dirty.isEmpty()) {
+            return;
+        }
+
+        for (final SessionChannel channel : this.dirty) {
+            try {
+                channel.flush(owner);
+            } catch (final IOException ex) {
+                channel.session().close();
+            }
+        }
+        this.dirty.clear();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.example;
+
+import org.nioreactor.BlockingEventListener;
+import org.nioreactor.BlockingSession;
+import org.nioreactor.ServerBuilder;
+import org.nioreactor.ServerPromise;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Echo Server example written with blocking-style sessions.
+ */
+public final class BlockingEchoServer {
+
+    private final static Logger LOG = Logger.getLogger(BlockingEchoServer.class.getName());
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private BlockingEchoServer() {
+    }
+
+    public static void main(final String[] args) {
+        try {
+            final ServerPromise server = ServerBuilder.builder(BlockingEventListener.factory(BlockingEchoServer::echo))
+                    .bind(8080);
+            LOG.info("Server started. Press any key to shutdown...");
+            System.in.read();
+            server.shutdown();
+        } catch (final IOException e) {
+            LOG.log(Level.SEVERE, "I/O error: ", e);
+        }
+    }
+
+    private static void echo(final BlockingSession session) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (session.read(buffer) >= 0) {
+            buffer.flip();
+            session.write(buffer);
+            buffer.clear();
+        }
+    }
+}
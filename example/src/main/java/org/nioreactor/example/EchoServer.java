@@ -53,35 +53,35 @@ public final class EchoServer {
 
     private static final class EchoEventListener implements EventListener {
 
-        public static final int BUFFER_SIZE = 1024;
         private final static Logger LOG = Logger.getLogger(EchoEventListener.class.getName());
-        private static final AttributeKey<ByteBuffer> BUFFER = new AttributeKey<>("BUFFER", ByteBuffer.class);
+        private static final AttributeKey<ByteBuffer> PENDING = new AttributeKey<>("PENDING", ByteBuffer.class);
 
         @Override
         public void connected(final SessionContext session) {
-            LOG.fine("connected: " + session.remoteAddress());
+            LOG.log(Level.FINE, "connected: {0}", session.remoteAddress());
 
-            session.putAttribute(BUFFER, ByteBuffer.allocateDirect(BUFFER_SIZE));
             session.interestEvent(EventKey.READ);
         }
 
         @Override
         public void inputReady(final SessionContext session) {
-            LOG.fine("readable: " + session.remoteAddress());
+            LOG.log(Level.FINE, "readable: {0}", session.remoteAddress());
 
-            final ByteBuffer buffer = session.getAttribute(BUFFER);
             try {
-                final int count = session.channel().read(buffer);
-                if (count < 0) {
+                // the receive buffer belongs to the worker, keep a copy of what the socket does not take
+                final ByteBuffer buffer = session.receive();
+                if (buffer == null) {
                     session.close();
-                } else {
-                    if (buffer.position() > 0) {
-                        session.interestEvent(buffer.hasRemaining() ?
-                                // we have info in buffer and it's not full
-                                EventKey.READ_WRITE :
-                                // buffer is full. Set it to write only mode
-                                EventKey.WRITE);
-                    }
+                    return;
+                }
+
+                session.channel().write(buffer);
+                if (buffer.hasRemaining()) {
+                    final ByteBuffer pending = ByteBuffer.allocate(buffer.remaining());
+                    pending.put(buffer).flip();
+                    session.putAttribute(PENDING, pending);
+                    // stop reading until the pending data is written
+                    session.interestEvent(EventKey.WRITE);
                 }
             } catch (final IOException e) {
                 LOG.log(Level.SEVERE, "I/O error: ", e);
@@ -91,17 +91,16 @@ public final class EchoServer {
 
         @Override
         public void outputReady(final SessionContext session) {
-            LOG.fine("writable: " + session.remoteAddress());
+            LOG.log(Level.FINE, "writable: {0}", session.remoteAddress());
 
-            final ByteBuffer buffer = session.getAttribute(BUFFER);
+            final ByteBuffer pending = session.getAttribute(PENDING);
             try {
-                buffer.flip();
-                session.channel().write(buffer);
-                if (!buffer.hasRemaining()) {
+                session.channel().write(pending);
+                if (!pending.hasRemaining()) {
                     // nothing to write, set to read mode
+                    session.removeAttribute(PENDING);
                     session.interestEvent(EventKey.READ);
                 }
-                buffer.compact();
             } catch (final IOException ex) {
                 LOG.log(Level.SEVERE, "I/O error: ", ex);
                 session.close();
@@ -110,7 +109,7 @@ public final class EchoServer {
 
         @Override
         public void disconnected(final SessionContext session) {
-            LOG.fine("disconnected: " + session.remoteAddress());
+            LOG.log(Level.FINE, "disconnected: {0}", session.remoteAddress());
         }
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.example;
+
+import org.nioreactor.ServerBuilder;
+import org.nioreactor.ServerPromise;
+import org.nioreactor.http.EncodedResponse;
+import org.nioreactor.http.HttpEventListener;
+import org.nioreactor.http.HttpRequest;
+import org.nioreactor.http.HttpResponse;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP Server example.
+ * <p/>
+ * {@code /plaintext} answers with a pre-encoded response, {@code /echo} returns the request body.
+ */
+public final class HttpServer {
+
+    private final static Logger LOG = Logger.getLogger(HttpServer.class.getName());
+
+    private static final EncodedResponse HELLO = EncodedResponse.of(200, "text/plain", "Hello, World!")
+            .withHeader("Server", "nioreactor");
+    private static final EncodedResponse NOT_FOUND = EncodedResponse.of(404, "text/plain", "Not Found");
+
+    private HttpServer() {
+    }
+
+    public static void main(final String[] args) {
+        try {
+            final ServerPromise server = ServerBuilder.builder(HttpEventListener.factory(HttpServer::handle)).bind(8080);
+            LOG.info("Server started. Press any key to shutdown...");
+            System.in.read();
+            server.shutdown();
+        } catch (final IOException e) {
+            LOG.log(Level.SEVERE, "I/O error: ", e);
+        }
+    }
+
+    private static void handle(final HttpRequest request, final HttpResponse response) {
+        switch (request.path()) {
+            case "/plaintext":
+                response.send(HELLO);
+                break;
+            case "/echo":
+                response.contentType("application/octet-stream").body(request.body());
+                break;
+            default:
+                response.send(NOT_FOUND);
+        }
+    }
+}
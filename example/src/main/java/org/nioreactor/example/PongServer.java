@@ -50,9 +50,9 @@ public final class PongServer {
             Runtime.getRuntime().addShutdownHook(new Thread() {
                 @Override
                 public void run() {
-                    server.shutdown();
+                    server.shutdownGracefully(1, 10, TimeUnit.SECONDS);
                     try {
-                        server.await(10, TimeUnit.SECONDS);
+                        server.await(15, TimeUnit.SECONDS);
                     } catch (final InterruptedException e) {
                         // We're shutting down, so just ignore.
                     }
@@ -78,7 +78,7 @@ public final class PongServer {
 
         @Override
         public void connected(final SessionContext session) {
-            LOG.fine("connected:" + session.remoteAddress());
+            LOG.log(Level.FINE, "connected: {0}", session.remoteAddress());
 
             session.putAttribute(BUFFER, buffer.duplicate());
             session.interestEvent(EventKey.WRITE);
@@ -86,12 +86,12 @@ public final class PongServer {
 
         @Override
         public void inputReady(final SessionContext session) {
-            LOG.fine("readable:" + session.remoteAddress());
+            LOG.log(Level.FINE, "readable: {0}", session.remoteAddress());
         }
 
         @Override
         public void outputReady(final SessionContext session) {
-            LOG.fine("writable:" + session.remoteAddress());
+            LOG.log(Level.FINE, "writable: {0}", session.remoteAddress());
 
             final ByteBuffer sessionBuffer = session.getAttribute(BUFFER);
             try {
@@ -109,7 +109,7 @@ public final class PongServer {
 
         @Override
         public void disconnected(final SessionContext session) {
-            LOG.fine("disconnected:" + session.remoteAddress());
+            LOG.log(Level.FINE, "disconnected: {0}", session.remoteAddress());
         }
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import org.nioreactor.util.Preconditions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable response encoded once and copied as is on every send. Only the {@code Date} and {@code Connection}
+ * headers are added per request.
+ */
+public final class EncodedResponse {
+
+    private final int status;
+    private final byte[] head;
+    private final byte[] body;
+
+    private EncodedResponse(final int status, final byte[] head, final byte[] body) {
+        this.status = status;
+        this.head = head;
+        this.body = body;
+    }
+
+    /**
+     * Encodes a response with the given status, content type and body.
+     *
+     * @param status      the status code.
+     * @param contentType the content type, or {@code null} for none.
+     * @param body        the body.
+     * @return the encoded response.
+     */
+    public static EncodedResponse of(final int status, final String contentType, final byte[] body) {
+        Preconditions.checkArgument(HttpStatus.isValid(status), "invalid status: " + status);
+        Preconditions.checkNotNull(body, "body is null");
+
+        final StringBuilder head = new StringBuilder();
+        if (contentType != null) {
+            HttpResponse.checkHeader(HttpResponse.CONTENT_TYPE, contentType);
+            head.append(HttpResponse.CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+        }
+        if (!HttpStatus.isBodiless(status)) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+
+        return new EncodedResponse(status, concat(HttpStatus.statusLine(status), encode(head)),
+                HttpStatus.isBodiless(status) ? new byte[0] : body.clone());
+    }
+
+    /**
+     * Encodes a response with the given status, content type and UTF-8 text body.
+     *
+     * @param status      the status code.
+     * @param contentType the content type, or {@code null} for none.
+     * @param body        the body.
+     * @return the encoded response.
+     */
+    public static EncodedResponse of(final int status, final String contentType, final String body) {
+        return of(status, contentType, Preconditions.checkNotNull(body, "body is null").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a copy of this response with another header.
+     *
+     * @param name  the header name.
+     * @param value the header value.
+     * @return the encoded response.
+     */
+    public EncodedResponse withHeader(final String name, final String value) {
+        HttpResponse.checkHeader(name, value);
+        return new EncodedResponse(this.status, concat(this.head, encode(name + ": " + value + "\r\n")), this.body);
+    }
+
+    private static byte[] encode(final CharSequence value) {
+        return value.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    int status() {
+        return this.status;
+    }
+
+    byte[] head() {
+        return this.head;
+    }
+
+    byte[] body() {
+        return this.body;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import org.nioreactor.EventKey;
+import org.nioreactor.SessionContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * State of an HTTP connection.
+ * <p>
+ * Responses of the requests found in a read, pipelined or not, are encoded into the shared output buffer of the
+ * thread and written with a single call. Output the socket does not take is copied aside and, until it is flushed,
+ * reading stops and unparsed input is kept, so a slow reader cannot make the server buffer without bound.
+ */
+final class HttpConnection {
+
+    private static final Logger LOG = Logger.getLogger(HttpConnection.class.getName());
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final SessionContext session;
+    private final HttpHandler handler;
+    private final HttpRequestParser parser;
+    private final HttpResponse response = new HttpResponse();
+    private final byte[] scratch = new byte[64];
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+
+    // set while processing input
+    private ByteBuffer out;
+    private ByteBuffer pendingInput;
+    private boolean closing;
+
+    HttpConnection(final SessionContext session, final HttpHandler handler, final int maxHeadSize,
+                   final int maxBodySize) {
+        this.session = session;
+        this.handler = handler;
+        this.parser = new HttpRequestParser(maxHeadSize, maxBodySize);
+    }
+
+    /**
+     * Parses and handles the requests found in the given input.
+     */
+    void process(final HttpEventListener.IoBuffers buffers, final ByteBuffer in) throws IOException {
+        this.out = buffers.output;
+        this.out.clear();
+        try {
+            while (in.hasRemaining() && !this.closing && this.pending.isEmpty()) {
+                final boolean complete;
+                try {
+                    complete = this.parser.parse(in);
+                } catch (final HttpParseException ex) {
+                    LOG.log(Level.FINE, "Bad request from {0}: {1}", new Object[]{this.session.remoteAddress(), ex.getMessage()});
+                    error(buffers.date, ex.status());
+                    break;
+                }
+
+                if (!complete) {
+                    if (this.parser.takeExpectContinue()) {
+                        put(CONTINUE);
+                    }
+                    break;
+                }
+
+                handle(buffers.date);
+                this.parser.reset();
+            }
+            flush();
+        } finally {
+            this.out = null;
+        }
+
+        if (in.hasRemaining() && !this.closing) {
+            // output is blocked, keep the rest for later
+            this.pendingInput = copy(in);
+        }
+        updateInterest();
+    }
+
+    private void handle(final HttpDate date) throws IOException {
+        final HttpRequest request = this.parser.request();
+        final HttpResponse res = this.response;
+        res.reset();
+        try {
+            this.handler.handle(request, res);
+        } catch (final RuntimeException ex) {
+            LOG.log(Level.SEVERE, "Unexpected error handling " + request, ex);
+            res.reset();
+            res.status(500).close();
+        }
+
+        final boolean keepAlive = request.isKeepAlive() && !res.isClose();
+        res.encode(this, date, request.isHead(), request.minorVersion, keepAlive);
+        this.closing = !keepAlive;
+    }
+
+    private void error(final HttpDate date, final int status) throws IOException {
+        final HttpResponse res = this.response;
+        res.reset();
+        res.status(status);
+        res.encode(this, date, false, 1, false);
+        this.closing = true;
+    }
+
+    /**
+     * Writes the output left by previous calls.
+     */
+    void flushPending(final HttpEventListener.IoBuffers buffers) throws IOException {
+        ByteBuffer data;
+        while ((data = this.pending.peek()) != null) {
+            this.session.channel().write(data);
+            if (data.hasRemaining()) {
+                return;
+            }
+            this.pending.poll();
+        }
+
+        final ByteBuffer in = this.pendingInput;
+        if (in != null && !this.closing) {
+            this.pendingInput = null;
+            process(buffers, in);
+        } else {
+            updateInterest();
+        }
+    }
+
+    private void updateInterest() {
+        if (!this.pending.isEmpty()) {
+            this.session.interestEvent(EventKey.WRITE);
+        } else if (this.closing) {
+            this.session.close();
+        } else {
+            this.session.interestEvent(EventKey.READ);
+        }
+    }
+
+    void put(final byte[] src) throws IOException {
+        put(src, 0, src.length);
+    }
+
+    private void put(final byte[] src, final int offset, final int length) throws IOException {
+        if (this.out.remaining() >= length && this.pending.isEmpty()) {
+            this.out.put(src, offset, length);
+        } else {
+            put(ByteBuffer.wrap(src, offset, length));
+        }
+    }
+
+    void put(final ByteBuffer src) throws IOException {
+        final ByteBuffer output = this.out;
+        while (src.hasRemaining()) {
+            if (!this.pending.isEmpty()) {
+                this.pending.add(copy(src));
+                return;
+            }
+            if (!output.hasRemaining()) {
+                flush();
+                continue;
+            }
+
+            final int count = Math.min(src.remaining(), output.remaining());
+            final int limit = src.limit();
+            src.limit(src.position() + count);
+            output.put(src);
+            src.limit(limit);
+        }
+    }
+
+    void putAscii(final String value) throws IOException {
+        final byte[] bytes = this.scratch;
+        for (int start = 0; start < value.length(); start += bytes.length) {
+            final int end = Math.min(value.length(), start + bytes.length);
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = (byte) value.charAt(i);
+            }
+            put(bytes, 0, end - start);
+        }
+    }
+
+    void putDecimal(final long value) throws IOException {
+        final byte[] bytes = this.scratch;
+        int position = bytes.length;
+        long remaining = value;
+        do {
+            bytes[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        put(bytes, position, bytes.length - position);
+    }
+
+    void putHex(final int value) throws IOException {
+        final byte[] bytes = this.scratch;
+        int position = bytes.length;
+        int remaining = value;
+        do {
+            bytes[--position] = (byte) Character.forDigit(remaining & 0xf, 16);
+            remaining >>>= 4;
+        } while (remaining != 0);
+        put(bytes, position, bytes.length - position);
+    }
+
+    private void flush() throws IOException {
+        final ByteBuffer output = this.out;
+        output.flip();
+        if (this.pending.isEmpty()) {
+            while (output.hasRemaining() && this.session.channel().write(output) > 0) {
+                // keep writing while the socket takes it
+            }
+        }
+        if (output.hasRemaining()) {
+            this.pending.add(copy(output));
+        }
+        output.clear();
+    }
+
+    private static ByteBuffer copy(final ByteBuffer src) {
+        final ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+        copy.put(src);
+        copy.flip();
+        return copy;
+    }
+}
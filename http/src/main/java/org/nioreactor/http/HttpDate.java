@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Pre-encoded {@code Date} header, re-encoded at most once per second. Not thread safe.
+ */
+final class HttpDate {
+
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private long second = Long.MIN_VALUE;
+    private byte[] header;
+
+    /**
+     * Returns the encoded header line, including the trailing CRLF.
+     */
+    byte[] header() {
+        final long now = System.currentTimeMillis() / 1000;
+        if (now != this.second) {
+            this.second = now;
+            this.header = ("Date: " + FORMAT.format(Instant.ofEpochSecond(now)) + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return this.header;
+    }
+}
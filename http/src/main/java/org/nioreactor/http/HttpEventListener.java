@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import org.nioreactor.AttributeKey;
+import org.nioreactor.EventKey;
+import org.nioreactor.EventListener;
+import org.nioreactor.EventListenerFactory;
+import org.nioreactor.SessionContext;
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event listener serving HTTP/1.1 with keep-alive, pipelining and the chunked transfer encoding.
+ * <p>
+ * Reads and writes go through direct buffers owned by the thread running the callbacks, normally the worker, so
+ * idle connections hold no buffers. Responses of pipelined requests are written together.
+ */
+public class HttpEventListener implements EventListener {
+
+    public static final int DEFAULT_MAX_HEAD_SIZE = 8192;
+    public static final int DEFAULT_MAX_BODY_SIZE = 1 << 20;
+
+    private static final Logger LOG = Logger.getLogger(HttpEventListener.class.getName());
+
+    private static final AttributeKey<HttpConnection> CONNECTION =
+            new AttributeKey<>("HttpEventListener.CONNECTION", HttpConnection.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<IoBuffers> BUFFERS = ThreadLocal.withInitial(IoBuffers::new);
+
+    private final HttpHandler handler;
+    private final int maxHeadSize;
+    private final int maxBodySize;
+
+    public HttpEventListener(final HttpHandler handler, final int maxHeadSize, final int maxBodySize) {
+        this.handler = Preconditions.checkNotNull(handler, "handler is null");
+        Preconditions.checkArgument(maxHeadSize > 0, "max head size <= 0");
+        Preconditions.checkArgument(maxBodySize >= 0, "max body size < 0");
+        this.maxHeadSize = maxHeadSize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Creates a listener factory with the default request limits.
+     *
+     * @param handler the request handler.
+     * @return the event listener factory.
+     */
+    public static EventListenerFactory factory(final HttpHandler handler) {
+        return factory(handler, DEFAULT_MAX_HEAD_SIZE, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * Creates a listener factory.
+     *
+     * @param handler     the request handler.
+     * @param maxHeadSize the maximum size of the request line and headers, answered with {@code 431} above it.
+     * @param maxBodySize the maximum size of a request body, answered with {@code 413} above it.
+     * @return the event listener factory.
+     */
+    public static EventListenerFactory factory(final HttpHandler handler, final int maxHeadSize, final int maxBodySize) {
+        Preconditions.checkNotNull(handler, "handler is null");
+        return () -> new HttpEventListener(handler, maxHeadSize, maxBodySize);
+    }
+
+    @Override
+    public void connected(final SessionContext session) {
+        session.putAttribute(CONNECTION, new HttpConnection(session, this.handler, this.maxHeadSize, this.maxBodySize));
+        session.interestEvent(EventKey.READ);
+    }
+
+    @Override
+    public void inputReady(final SessionContext session) {
+        final HttpConnection connection = session.getAttribute(CONNECTION);
+        final IoBuffers buffers = BUFFERS.get();
+        final ByteBuffer in = buffers.input;
+        try {
+            in.clear();
+            if (session.channel().read(in) < 0) {
+                session.close();
+                return;
+            }
+            in.flip();
+            connection.process(buffers, in);
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "I/O error", ex);
+            session.close();
+        }
+    }
+
+    @Override
+    public void outputReady(final SessionContext session) {
+        try {
+            session.getAttribute(CONNECTION).flushPending(BUFFERS.get());
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "I/O error", ex);
+            session.close();
+        }
+    }
+
+    @Override
+    public void disconnected(final SessionContext session) {
+        session.removeAttribute(CONNECTION);
+    }
+
+    /**
+     * Direct buffers reused by all the connections handled on a thread.
+     */
+    static final class IoBuffers {
+
+        final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final HttpDate date = new HttpDate();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+/**
+ * Handles HTTP requests.
+ * <p>
+ * Called on the thread that processes the session events, usually the worker thread, so handlers must not block.
+ * The request and the response are reused for the next request of the connection and must not be kept once the
+ * call returns.
+ */
+@FunctionalInterface
+public interface HttpHandler {
+
+    /**
+     * Handles the given request.
+     *
+     * @param request  the request.
+     * @param response the response to fill in. Sent once the call returns.
+     */
+    void handle(HttpRequest request, HttpResponse response);
+}
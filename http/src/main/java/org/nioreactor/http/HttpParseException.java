@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+/**
+ * Thrown when a request cannot be parsed. Carries the status code sent back before closing the connection.
+ */
+final class HttpParseException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    HttpParseException(final int status, final String message) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    int status() {
+        return this.status;
+    }
+}
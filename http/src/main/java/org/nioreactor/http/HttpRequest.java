@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP request.
+ * <p>
+ * The request head is kept as raw bytes and strings are only decoded when asked for. Instances are reused for the
+ * next request of the connection, so they are only valid during {@link HttpHandler#handle}.
+ */
+public final class HttpRequest {
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT"};
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    private static final byte[][] ENCODED_METHODS = new byte[METHODS.length][];
+
+    static {
+        for (int i = 0; i < METHODS.length; i++) {
+            ENCODED_METHODS[i] = METHODS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // set by the parser
+    byte[] head;
+    int uriStart;
+    int uriEnd;
+    int minorVersion;
+    int headerCount;
+    int[] headers = new int[64];
+    byte[] body;
+    int bodyLength;
+    boolean keepAlive;
+
+    private String method;
+    private String uri;
+
+    HttpRequest() {
+    }
+
+    void method(final byte[] bytes, final int start, final int end) {
+        for (int i = 0; i < ENCODED_METHODS.length; i++) {
+            if (regionEquals(bytes, start, end, ENCODED_METHODS[i])) {
+                this.method = METHODS[i];
+                return;
+            }
+        }
+
+        this.method = new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean regionEquals(final byte[] bytes, final int start, final int end, final byte[] other) {
+        if (end - start != other.length) {
+            return false;
+        }
+        for (int i = 0; i < other.length; i++) {
+            if (bytes[start + i] != other[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    void reset() {
+        this.uri = null;
+        this.headerCount = 0;
+        this.bodyLength = 0;
+    }
+
+    /**
+     * Returns the request method. Standard methods are returned as constants.
+     *
+     * @return the method.
+     */
+    public String method() {
+        return this.method;
+    }
+
+    /**
+     * Checks if this is a {@code HEAD} request.
+     *
+     * @return {@code true} if this is a {@code HEAD} request, {@code false} otherwise.
+     */
+    public boolean isHead() {
+        return "HEAD".equals(this.method);
+    }
+
+    /**
+     * Returns the request target as sent by the client.
+     *
+     * @return the request URI.
+     */
+    public String uri() {
+        if (this.uri == null) {
+            this.uri = new String(this.head, this.uriStart, this.uriEnd - this.uriStart, StandardCharsets.UTF_8);
+        }
+
+        return this.uri;
+    }
+
+    /**
+     * Returns the request target without the query string.
+     *
+     * @return the path.
+     */
+    public String path() {
+        final String target = uri();
+        final int query = target.indexOf('?');
+        return query < 0 ? target : target.substring(0, query);
+    }
+
+    /**
+     * Returns the query string, without the leading {@code ?}.
+     *
+     * @return the query string, or {@code null} if there is none.
+     */
+    public String query() {
+        final String target = uri();
+        final int query = target.indexOf('?');
+        return query < 0 ? null : target.substring(query + 1);
+    }
+
+    /**
+     * Returns the protocol version.
+     *
+     * @return {@code HTTP/1.1} or {@code HTTP/1.0}.
+     */
+    public String version() {
+        return this.minorVersion == 1 ? "HTTP/1.1" : "HTTP/1.0";
+    }
+
+    /**
+     * Returns the value of the first header with the given name, compared case insensitively.
+     *
+     * @param name the header name.
+     * @return the header value, or {@code null} if not present.
+     */
+    public String header(final String name) {
+        for (int i = 0; i < this.headerCount; i++) {
+            if (nameEquals(i, name)) {
+                return headerValue(i);
+            }
+        }
+
+        return null;
+    }
+
+    private boolean nameEquals(final int index, final String name) {
+        final int start = this.headers[index * 4];
+        final int end = this.headers[index * 4 + 1];
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (HttpRequestParser.toLowerCase(this.head[start + i]) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of headers.
+     *
+     * @return the header count.
+     */
+    public int headerCount() {
+        return this.headerCount;
+    }
+
+    /**
+     * Returns the name of the header at the given index.
+     *
+     * @param index the header index.
+     * @return the header name.
+     */
+    public String headerName(final int index) {
+        return decode(checkIndex(index) * 4);
+    }
+
+    /**
+     * Returns the value of the header at the given index.
+     *
+     * @param index the header index.
+     * @return the header value.
+     */
+    public String headerValue(final int index) {
+        return decode(checkIndex(index) * 4 + 2);
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= this.headerCount) {
+            throw new IndexOutOfBoundsException("header index: " + index);
+        }
+
+        return index;
+    }
+
+    private String decode(final int offset) {
+        final int start = this.headers[offset];
+        return new String(this.head, start, this.headers[offset + 1] - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the request body, decoded from the chunked encoding if needed.
+     *
+     * @return a read-only view of the body, empty if there is none.
+     */
+    public ByteBuffer body() {
+        return this.bodyLength == 0 ? EMPTY : ByteBuffer.wrap(this.body, 0, this.bodyLength).asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks if the connection is kept open after this request, following the protocol version and the
+     * {@code Connection} header.
+     *
+     * @return {@code true} if the connection is persistent, {@code false} otherwise.
+     */
+    public boolean isKeepAlive() {
+        return this.keepAlive;
+    }
+
+    @Override
+    public String toString() {
+        return this.method + ' ' + uri() + ' ' + version();
+    }
+}
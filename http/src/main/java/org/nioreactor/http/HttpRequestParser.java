@@ -0,0 +1,527 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.1 request parser.
+ * <p>
+ * Bytes are consumed as they arrive, so a request may span any number of reads and a read may hold several
+ * pipelined requests. The head is copied once into a reusable array and header fields are kept as offsets into it.
+ * Not thread safe.
+ */
+final class HttpRequestParser {
+
+    private static final int MAX_HEADERS = 128;
+
+    private static final byte[] CONTENT_LENGTH = ascii("content-length");
+    private static final byte[] TRANSFER_ENCODING = ascii("transfer-encoding");
+    private static final byte[] CONNECTION = ascii("connection");
+    private static final byte[] EXPECT = ascii("expect");
+    private static final byte[] CHUNKED = ascii("chunked");
+    private static final byte[] CLOSE = ascii("close");
+    private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+    private static final byte[] CONTINUE = ascii("100-continue");
+
+    private enum State {
+        HEAD, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILER, COMPLETE
+    }
+
+    private final HttpRequest request = new HttpRequest();
+    private final int maxHeadSize;
+    private final int maxBodySize;
+
+    private State state = State.HEAD;
+    private byte[] head = new byte[1024];
+    private int headLength;
+    private long contentLength;
+    private long chunkRemaining;
+    private boolean chunkSizeDigits;
+    private boolean chunkExtension;
+    private boolean lineEnding;
+    private int lineLength;
+    private int trailerLength;
+    private boolean expectContinue;
+
+    HttpRequestParser(final int maxHeadSize, final int maxBodySize) {
+        this.maxHeadSize = maxHeadSize;
+        this.maxBodySize = maxBodySize;
+        this.request.body = new byte[0];
+    }
+
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static int toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    /**
+     * Returns the parsed request. Valid once {@link #parse} returned {@code true} and until {@link #reset}.
+     */
+    HttpRequest request() {
+        return this.request;
+    }
+
+    /**
+     * Checks, once, if the client waits for a {@code 100 Continue} before sending the body.
+     */
+    boolean takeExpectContinue() {
+        final boolean expect = this.expectContinue;
+        this.expectContinue = false;
+        return expect;
+    }
+
+    /**
+     * Prepares for the next request of the connection.
+     */
+    void reset() {
+        this.state = State.HEAD;
+        this.headLength = 0;
+        this.expectContinue = false;
+        this.request.reset();
+    }
+
+    /**
+     * Consumes bytes from the given buffer until a request is complete or the buffer is exhausted. Bytes past the end
+     * of the request are left in the buffer.
+     *
+     * @param in the input.
+     * @return {@code true} if a request is complete, {@code false} if more input is needed.
+     * @throws HttpParseException if the request is malformed or over the limits.
+     */
+    boolean parse(final ByteBuffer in) throws HttpParseException {
+        while (true) {
+            switch (this.state) {
+                case HEAD:
+                    if (!parseHead(in)) {
+                        return false;
+                    }
+                    break;
+                case BODY:
+                    if (!readBody(in)) {
+                        return false;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (!readChunkSize(in)) {
+                        return false;
+                    }
+                    break;
+                case CHUNK_DATA:
+                    if (!readChunkData(in)) {
+                        return false;
+                    }
+                    break;
+                case CHUNK_DATA_END:
+                    if (!readChunkDataEnd(in)) {
+                        return false;
+                    }
+                    break;
+                case TRAILER:
+                    if (!readTrailer(in)) {
+                        return false;
+                    }
+                    break;
+                case COMPLETE:
+                    return true;
+                default:
+                    throw new IllegalStateException(this.state.name());
+            }
+        }
+    }
+
+    private boolean parseHead(final ByteBuffer in) throws HttpParseException {
+        if (this.headLength == 0) {
+            // empty lines before the request line are ignored
+            while (in.hasRemaining() && (in.get(in.position()) == '\r' || in.get(in.position()) == '\n')) {
+                in.get();
+            }
+        }
+
+        final int scanFrom = Math.max(this.headLength - 3, 0);
+        final int count = Math.min(in.remaining(), this.maxHeadSize - this.headLength);
+        if (this.headLength + count > this.head.length) {
+            this.head = Arrays.copyOf(this.head, Math.min(Math.max(this.head.length * 2, this.headLength + count),
+                    this.maxHeadSize));
+        }
+        in.get(this.head, this.headLength, count);
+        this.headLength += count;
+
+        final int end = headEnd(scanFrom);
+        if (end < 0) {
+            if (this.headLength >= this.maxHeadSize) {
+                throw new HttpParseException(431, "request head too large");
+            }
+            return false;
+        }
+
+        // give back the bytes past the head
+        in.position(in.position() - (this.headLength - end));
+        this.headLength = end;
+        parseRequestHead();
+        return true;
+    }
+
+    private int headEnd(final int from) {
+        final byte[] bytes = this.head;
+        for (int i = from; i + 3 < this.headLength; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+
+        return -1;
+    }
+
+    private void parseRequestHead() throws HttpParseException {
+        final HttpRequest req = this.request;
+        final byte[] bytes = this.head;
+        req.head = bytes;
+
+        // request line
+        final int lineEnd = indexOf(bytes, 0, this.headLength, (byte) '\r');
+        final int methodEnd = indexOf(bytes, 0, lineEnd, (byte) ' ');
+        final int uriEnd = methodEnd < 0 ? -1 : indexOf(bytes, methodEnd + 1, lineEnd, (byte) ' ');
+        if (methodEnd <= 0 || uriEnd <= methodEnd + 1) {
+            throw new HttpParseException(400, "malformed request line");
+        }
+        if (lineEnd - uriEnd - 1 != 8 || !startsWith(bytes, uriEnd + 1, "HTTP/1.") || bytes[uriEnd + 8] < '0'
+                || bytes[uriEnd + 8] > '1') {
+            throw new HttpParseException(505, "unsupported version");
+        }
+        req.method(bytes, 0, methodEnd);
+        req.uriStart = methodEnd + 1;
+        req.uriEnd = uriEnd;
+        req.minorVersion = bytes[uriEnd + 8] - '0';
+
+        // header fields
+        long length = -1;
+        boolean chunked = false;
+        boolean close = false;
+        boolean keepAlive = false;
+        this.expectContinue = false;
+
+        int lineStart = lineEnd + 2;
+        int count = 0;
+        while (lineStart < this.headLength - 2) {
+            final int end = indexOf(bytes, lineStart, this.headLength, (byte) '\r');
+            if (bytes[lineStart] == ' ' || bytes[lineStart] == '\t') {
+                throw new HttpParseException(400, "obsolete line folding");
+            }
+            final int colon = indexOf(bytes, lineStart, end, (byte) ':');
+            if (colon <= lineStart) {
+                throw new HttpParseException(400, "malformed header");
+            }
+            if (count == MAX_HEADERS) {
+                throw new HttpParseException(431, "too many headers");
+            }
+
+            int valueStart = colon + 1;
+            while (valueStart < end && (bytes[valueStart] == ' ' || bytes[valueStart] == '\t')) {
+                valueStart++;
+            }
+            int valueEnd = end;
+            while (valueEnd > valueStart && (bytes[valueEnd - 1] == ' ' || bytes[valueEnd - 1] == '\t')) {
+                valueEnd--;
+            }
+
+            if (req.headers.length < (count + 1) * 4) {
+                req.headers = Arrays.copyOf(req.headers, req.headers.length * 2);
+            }
+            req.headers[count * 4] = lineStart;
+            req.headers[count * 4 + 1] = colon;
+            req.headers[count * 4 + 2] = valueStart;
+            req.headers[count * 4 + 3] = valueEnd;
+            count++;
+
+            if (nameEquals(bytes, lineStart, colon, CONTENT_LENGTH)) {
+                final long value = parseLength(bytes, valueStart, valueEnd);
+                if (length >= 0 && length != value) {
+                    throw new HttpParseException(400, "conflicting content length");
+                }
+                length = value;
+            } else if (nameEquals(bytes, lineStart, colon, TRANSFER_ENCODING)) {
+                // other codings would reach the handler still encoded
+                if (chunked || !nameEquals(bytes, valueStart, valueEnd, CHUNKED)) {
+                    throw new HttpParseException(501, "unsupported transfer encoding");
+                }
+                chunked = true;
+            } else if (nameEquals(bytes, lineStart, colon, CONNECTION)) {
+                close |= containsToken(bytes, valueStart, valueEnd, CLOSE);
+                keepAlive |= containsToken(bytes, valueStart, valueEnd, KEEP_ALIVE);
+            } else if (nameEquals(bytes, lineStart, colon, EXPECT)) {
+                this.expectContinue = containsToken(bytes, valueStart, valueEnd, CONTINUE);
+            }
+
+            lineStart = end + 2;
+        }
+        req.headerCount = count;
+        req.keepAlive = req.minorVersion == 1 ? !close : keepAlive && !close;
+
+        if (chunked && length >= 0) {
+            // ambiguous framing, see RFC 7230 section 3.3.3
+            throw new HttpParseException(400, "both content length and chunked encoding");
+        }
+        if (length > this.maxBodySize) {
+            throw new HttpParseException(413, "body too large");
+        }
+
+        if (chunked) {
+            this.state = State.CHUNK_SIZE;
+            resetChunkSize();
+        } else if (length > 0) {
+            this.contentLength = length;
+            ensureBodyCapacity((int) length);
+            this.state = State.BODY;
+        } else {
+            this.expectContinue = false;
+            this.state = State.COMPLETE;
+        }
+    }
+
+    private static int indexOf(final byte[] bytes, final int from, final int to, final byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final int from, final String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean nameEquals(final byte[] bytes, final int start, final int end, final byte[] lowerCaseName) {
+        if (end - start != lowerCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            if (toLowerCase(bytes[start + i]) != lowerCaseName[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean containsToken(final byte[] bytes, final int start, final int end, final byte[] token) {
+        int tokenStart = start;
+        while (tokenStart < end) {
+            int tokenEnd = indexOf(bytes, tokenStart, end, (byte) ',');
+            if (tokenEnd < 0) {
+                tokenEnd = end;
+            }
+
+            int s = tokenStart;
+            int e = tokenEnd;
+            while (s < e && bytes[s] == ' ') {
+                s++;
+            }
+            while (e > s && bytes[e - 1] == ' ') {
+                e--;
+            }
+            if (nameEquals(bytes, s, e, token)) {
+                return true;
+            }
+
+            tokenStart = tokenEnd + 1;
+        }
+
+        return false;
+    }
+
+    private static long parseLength(final byte[] bytes, final int start, final int end) throws HttpParseException {
+        if (start == end || end - start > 18) {
+            throw new HttpParseException(400, "invalid content length");
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new HttpParseException(400, "invalid content length");
+            }
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    private void ensureBodyCapacity(final int capacity) {
+        if (this.request.body.length < capacity) {
+            this.request.body = Arrays.copyOf(this.request.body,
+                    Math.min(Math.max(this.request.body.length * 2, capacity), this.maxBodySize));
+        }
+    }
+
+    private boolean readBody(final ByteBuffer in) {
+        final HttpRequest req = this.request;
+        final int count = (int) Math.min(in.remaining(), this.contentLength - req.bodyLength);
+        in.get(req.body, req.bodyLength, count);
+        req.bodyLength += count;
+
+        if (req.bodyLength < this.contentLength) {
+            return false;
+        }
+
+        this.state = State.COMPLETE;
+        return true;
+    }
+
+    private void resetChunkSize() {
+        this.chunkRemaining = 0;
+        this.chunkSizeDigits = false;
+        this.chunkExtension = false;
+        this.lineEnding = false;
+        this.lineLength = 0;
+    }
+
+    /**
+     * Checks the line ending of a chunk size or trailer line: {@code '\r'} is only allowed right before
+     * {@code '\n'}, and {@code '\n'} only right after {@code '\r'}.
+     *
+     * @return {@code true} if the byte ends the line, {@code false} if it is part of the line.
+     */
+    private boolean lineEnd(final byte b) throws HttpParseException {
+        if (this.lineEnding) {
+            if (b != '\n') {
+                throw new HttpParseException(400, "bare CR");
+            }
+            this.lineEnding = false;
+            return true;
+        }
+        if (b == '\n') {
+            throw new HttpParseException(400, "bare LF");
+        }
+        if (b == '\r') {
+            this.lineEnding = true;
+        }
+
+        return false;
+    }
+
+    private boolean readChunkSize(final ByteBuffer in) throws HttpParseException {
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (lineEnd(b)) {
+                if (!this.chunkSizeDigits) {
+                    throw new HttpParseException(400, "invalid chunk size");
+                }
+                if (this.chunkRemaining == 0) {
+                    this.lineLength = 0;
+                    this.trailerLength = 0;
+                    this.state = State.TRAILER;
+                } else {
+                    if (this.request.bodyLength + this.chunkRemaining > this.maxBodySize) {
+                        throw new HttpParseException(413, "body too large");
+                    }
+                    ensureBodyCapacity((int) (this.request.bodyLength + this.chunkRemaining));
+                    this.state = State.CHUNK_DATA;
+                }
+                return true;
+            }
+            if (b == '\r') {
+                continue;
+            }
+            if (++this.lineLength > this.maxHeadSize) {
+                throw new HttpParseException(400, "chunk size line too long");
+            }
+            if (this.chunkExtension) {
+                continue;
+            }
+            if (b == ';' || b == ' ' || b == '\t') {
+                this.chunkExtension = true;
+                continue;
+            }
+
+            final int digit = Character.digit(b, 16);
+            if (digit < 0 || this.chunkRemaining > this.maxBodySize) {
+                throw new HttpParseException(400, "invalid chunk size");
+            }
+            this.chunkRemaining = this.chunkRemaining * 16 + digit;
+            this.chunkSizeDigits = true;
+        }
+
+        return false;
+    }
+
+    private boolean readChunkData(final ByteBuffer in) {
+        final HttpRequest req = this.request;
+        final int count = (int) Math.min(in.remaining(), this.chunkRemaining);
+        in.get(req.body, req.bodyLength, count);
+        req.bodyLength += count;
+        this.chunkRemaining -= count;
+
+        if (this.chunkRemaining > 0) {
+            return false;
+        }
+
+        this.state = State.CHUNK_DATA_END;
+        return true;
+    }
+
+    private boolean readChunkDataEnd(final ByteBuffer in) throws HttpParseException {
+        // exactly CRLF, anything else means the chunk is longer than its declared size
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (b != (this.lineEnding ? '\n' : '\r')) {
+                throw new HttpParseException(400, "chunk data longer than chunk size");
+            }
+            if (this.lineEnding) {
+                resetChunkSize();
+                this.state = State.CHUNK_SIZE;
+                return true;
+            }
+            this.lineEnding = true;
+        }
+
+        return false;
+    }
+
+    private boolean readTrailer(final ByteBuffer in) throws HttpParseException {
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (lineEnd(b)) {
+                if (this.lineLength == 0) {
+                    this.state = State.COMPLETE;
+                    return true;
+                }
+                this.lineLength = 0;
+            } else if (b != '\r') {
+                if (++this.trailerLength > this.maxHeadSize) {
+                    throw new HttpParseException(431, "trailer too large");
+                }
+                this.lineLength++;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP response, encoded and sent once {@link HttpHandler#handle} returns.
+ * <p>
+ * The body is sent with a {@code Content-Length}, or with the chunked encoding, one chunk per {@link #write}, once
+ * {@link #chunked()} is called. Instances are reused for the next request of the connection.
+ */
+public final class HttpResponse {
+
+    static final String CONTENT_TYPE = "Content-Type";
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEADER_SEPARATOR = {':', ' '};
+    private static final byte[] CONTENT_TYPE_HEADER = (CONTENT_TYPE + ": ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_LENGTH_HEADER = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNKED_HEADER = "Transfer-Encoding: chunked\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE_HEADER = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE_HEADER = "Connection: keep-alive\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<String> headers = new ArrayList<>();
+    private final List<ByteBuffer> body = new ArrayList<>();
+    private int status;
+    private String contentType;
+    private boolean chunked;
+    private boolean close;
+    private EncodedResponse encoded;
+
+    HttpResponse() {
+        reset();
+    }
+
+    static void checkHeader(final String name, final String value) {
+        Preconditions.checkNotNull(name, "name is null");
+        Preconditions.checkNotNull(value, "value is null");
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            Preconditions.checkArgument(c > ' ' && c < 127 && c != ':', "invalid header name: " + name);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            Preconditions.checkArgument(c != '\r' && c != '\n' && c < 256, "invalid header value: " + value);
+        }
+    }
+
+    void reset() {
+        this.headers.clear();
+        this.body.clear();
+        this.status = 200;
+        this.contentType = null;
+        this.chunked = false;
+        this.close = false;
+        this.encoded = null;
+    }
+
+    /**
+     * Sets the status code. Defaults to {@code 200}.
+     *
+     * @param status the status code.
+     * @return this response.
+     */
+    public HttpResponse status(final int status) {
+        Preconditions.checkArgument(HttpStatus.isValid(status), "invalid status: " + status);
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * Adds a header.
+     *
+     * @param name  the header name.
+     * @param value the header value.
+     * @return this response.
+     */
+    public HttpResponse header(final String name, final String value) {
+        checkHeader(name, value);
+        this.headers.add(name);
+        this.headers.add(value);
+        return this;
+    }
+
+    /**
+     * Sets the content type.
+     *
+     * @param contentType the content type.
+     * @return this response.
+     */
+    public HttpResponse contentType(final String contentType) {
+        checkHeader(CONTENT_TYPE, contentType);
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * Replaces the body.
+     *
+     * @param body the body. Not copied, it must not change until the response is sent.
+     * @return this response.
+     */
+    public HttpResponse body(final byte[] body) {
+        return body(ByteBuffer.wrap(Preconditions.checkNotNull(body, "body is null")));
+    }
+
+    /**
+     * Replaces the body with the given UTF-8 text.
+     *
+     * @param body the body.
+     * @return this response.
+     */
+    public HttpResponse body(final String body) {
+        return body(Preconditions.checkNotNull(body, "body is null").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces the body.
+     *
+     * @param body the remaining bytes of the buffer. Not copied, it must not change until the response is sent.
+     * @return this response.
+     */
+    public HttpResponse body(final ByteBuffer body) {
+        this.body.clear();
+        return write(body);
+    }
+
+    /**
+     * Appends to the body. With the chunked encoding each call produces a chunk.
+     *
+     * @param data the remaining bytes of the buffer. Not copied, it must not change until the response is sent.
+     * @return this response.
+     */
+    public HttpResponse write(final ByteBuffer data) {
+        this.body.add(Preconditions.checkNotNull(data, "data is null").duplicate());
+        return this;
+    }
+
+    /**
+     * Sends the body with the chunked transfer encoding.
+     *
+     * @return this response.
+     */
+    public HttpResponse chunked() {
+        this.chunked = true;
+        return this;
+    }
+
+    /**
+     * Closes the connection once the response is sent.
+     *
+     * @return this response.
+     */
+    public HttpResponse close() {
+        this.close = true;
+        return this;
+    }
+
+    /**
+     * Sends a pre-encoded response. Status, headers and body set on this response are ignored.
+     *
+     * @param response the encoded response.
+     * @return this response.
+     */
+    public HttpResponse send(final EncodedResponse response) {
+        this.encoded = Preconditions.checkNotNull(response, "response is null");
+        return this;
+    }
+
+    boolean isClose() {
+        return this.close;
+    }
+
+    /**
+     * Encodes this response into the connection output.
+     */
+    void encode(final HttpConnection out, final HttpDate date, final boolean head, final int minorVersion,
+                final boolean keepAlive) throws IOException {
+        if (this.encoded != null) {
+            out.put(this.encoded.head());
+            out.put(date.header());
+            putConnection(out, minorVersion, keepAlive);
+            out.put(CRLF);
+            if (!head) {
+                out.put(this.encoded.body());
+            }
+            return;
+        }
+
+        final boolean bodiless = HttpStatus.isBodiless(this.status);
+        out.put(HttpStatus.statusLine(this.status));
+        out.put(date.header());
+        if (this.contentType != null) {
+            out.put(CONTENT_TYPE_HEADER);
+            out.putAscii(this.contentType);
+            out.put(CRLF);
+        }
+        for (int i = 0; i < this.headers.size(); i += 2) {
+            out.putAscii(this.headers.get(i));
+            out.put(HEADER_SEPARATOR);
+            out.putAscii(this.headers.get(i + 1));
+            out.put(CRLF);
+        }
+        // HTTP/1.0 clients do not understand the chunked encoding
+        final boolean chunkedBody = this.chunked && minorVersion == 1;
+        if (!bodiless) {
+            if (chunkedBody) {
+                out.put(CHUNKED_HEADER);
+            } else {
+                out.put(CONTENT_LENGTH_HEADER);
+                out.putDecimal(contentLength());
+                out.put(CRLF);
+            }
+        }
+        putConnection(out, minorVersion, keepAlive);
+        out.put(CRLF);
+
+        if (head || bodiless) {
+            return;
+        }
+        for (final ByteBuffer data : this.body) {
+            if (chunkedBody) {
+                if (!data.hasRemaining()) {
+                    // an empty chunk would end the body
+                    continue;
+                }
+                out.putHex(data.remaining());
+                out.put(CRLF);
+                out.put(data);
+                out.put(CRLF);
+            } else {
+                out.put(data);
+            }
+        }
+        if (chunkedBody) {
+            out.put(LAST_CHUNK);
+        }
+    }
+
+    private static void putConnection(final HttpConnection out, final int minorVersion, final boolean keepAlive)
+            throws IOException {
+        if (!keepAlive) {
+            out.put(CLOSE_HEADER);
+        } else if (minorVersion == 0) {
+            out.put(KEEP_ALIVE_HEADER);
+        }
+    }
+
+    private long contentLength() {
+        long length = 0;
+        for (final ByteBuffer data : this.body) {
+            length += data.remaining();
+        }
+
+        return length;
+    }
+}
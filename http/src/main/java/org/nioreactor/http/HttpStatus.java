@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.http;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Status codes with their reason phrases and pre-encoded status lines.
+ */
+final class HttpStatus {
+
+    private static final String[] REASONS = new String[600];
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    static {
+        reason(100, "Continue");
+        reason(101, "Switching Protocols");
+        reason(200, "OK");
+        reason(201, "Created");
+        reason(202, "Accepted");
+        reason(204, "No Content");
+        reason(206, "Partial Content");
+        reason(301, "Moved Permanently");
+        reason(302, "Found");
+        reason(303, "See Other");
+        reason(304, "Not Modified");
+        reason(307, "Temporary Redirect");
+        reason(308, "Permanent Redirect");
+        reason(400, "Bad Request");
+        reason(401, "Unauthorized");
+        reason(403, "Forbidden");
+        reason(404, "Not Found");
+        reason(405, "Method Not Allowed");
+        reason(408, "Request Timeout");
+        reason(409, "Conflict");
+        reason(411, "Length Required");
+        reason(413, "Payload Too Large");
+        reason(414, "URI Too Long");
+        reason(415, "Unsupported Media Type");
+        reason(429, "Too Many Requests");
+        reason(431, "Request Header Fields Too Large");
+        reason(500, "Internal Server Error");
+        reason(501, "Not Implemented");
+        reason(502, "Bad Gateway");
+        reason(503, "Service Unavailable");
+        reason(504, "Gateway Timeout");
+        reason(505, "HTTP Version Not Supported");
+
+        for (int status = 100; status < STATUS_LINES.length; status++) {
+            STATUS_LINES[status] = ("HTTP/1.1 " + status + ' ' + reason(status) + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private HttpStatus() {
+    }
+
+    private static void reason(final int status, final String reason) {
+        REASONS[status] = reason;
+    }
+
+    static boolean isValid(final int status) {
+        return status >= 100 && status < STATUS_LINES.length;
+    }
+
+    static String reason(final int status) {
+        final String reason = REASONS[status];
+        return reason == null ? "Unknown" : reason;
+    }
+
+    static byte[] statusLine(final int status) {
+        return STATUS_LINES[status];
+    }
+
+    /**
+     * Checks if responses with the given status never carry a body.
+     */
+    static boolean isBodiless(final int status) {
+        return status < 200 || status == 204 || status == 304;
+    }
+}
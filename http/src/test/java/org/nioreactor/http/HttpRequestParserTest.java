@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nioreactor.http;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpRequestParserTest {
+
+    private static final String CHUNKED_HEAD = "POST /upload HTTP/1.1\r\nHost: a\r\nTransfer-Encoding: chunked\r\n\r\n";
+
+    private final HttpRequestParser parser = new HttpRequestParser(1024, 1024);
+
+    @Test
+    public void decodesChunkedBody() throws HttpParseException {
+        final ByteBuffer in = bytes(CHUNKED_HEAD + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Sum: 1\r\n\r\n");
+
+        assertTrue(this.parser.parse(in));
+        assertEquals("hello world", body());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void decodesChunkedBodyOneByteAtATime() throws HttpParseException {
+        final ByteBuffer in = bytes(CHUNKED_HEAD + "5\r\nhello\r\n0\r\n\r\n");
+        final ByteBuffer one = ByteBuffer.allocate(1);
+
+        boolean complete = false;
+        while (in.hasRemaining()) {
+            assertFalse(complete);
+            one.clear();
+            one.put(in.get());
+            one.flip();
+            complete = this.parser.parse(one);
+            assertFalse(one.hasRemaining());
+        }
+        assertTrue(complete);
+        assertEquals("hello", body());
+    }
+
+    @Test
+    public void rejectsChunkLongerThanItsSize() {
+        assertStatus(400, CHUNKED_HEAD + "5\r\nhelloXX\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsChunkDataWithoutCrLf() {
+        assertStatus(400, CHUNKED_HEAD + "5\r\nhello\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsBareCrInChunkSize() {
+        assertStatus(400, CHUNKED_HEAD + "1\r0\r\nx\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsBareLfInChunkSize() {
+        assertStatus(400, CHUNKED_HEAD + "1\nx\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsOversizedChunkSizeLine() {
+        final StringBuilder extension = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            extension.append('a');
+        }
+        assertStatus(400, CHUNKED_HEAD + "1;" + extension + "\r\nx\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsOtherTransferCodings() {
+        assertStatus(501, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n0\r\n\r\n");
+        assertStatus(501, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nTransfer-Encoding: chunked\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsContentLengthWithChunked() {
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 3\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsOversizedTrailer() {
+        final StringBuilder trailer = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            trailer.append("X-Trailer-").append(i).append(": value\r\n");
+        }
+        assertStatus(431, CHUNKED_HEAD + "0\r\n" + trailer + "\r\n");
+    }
+
+    @Test
+    public void leavesPipelinedRequestsInTheBuffer() throws HttpParseException {
+        final ByteBuffer in = bytes(CHUNKED_HEAD + "3\r\nabc\r\n0\r\n\r\n"
+                + "POST /b HTTP/1.1\r\nContent-Length: 2\r\n\r\nxy"
+                + "GET /c HTTP/1.1\r\n\r\n");
+
+        assertTrue(this.parser.parse(in));
+        assertEquals("/upload", this.parser.request().uri());
+        assertEquals("abc", body());
+
+        this.parser.reset();
+        assertTrue(this.parser.parse(in));
+        assertEquals("/b", this.parser.request().uri());
+        assertEquals("xy", body());
+
+        this.parser.reset();
+        assertTrue(this.parser.parse(in));
+        assertEquals("GET", this.parser.request().method());
+        assertEquals("/c", this.parser.request().uri());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void waitsForTheRestOfAPipelinedRequest() throws HttpParseException {
+        final ByteBuffer in = bytes("GET /a HTTP/1.1\r\n\r\nGET /b HTT");
+
+        assertTrue(this.parser.parse(in));
+        this.parser.reset();
+        assertFalse(this.parser.parse(in));
+
+        assertTrue(this.parser.parse(bytes("P/1.1\r\n\r\n")));
+        assertEquals("/b", this.parser.request().uri());
+    }
+
+    private void assertStatus(final int status, final String input) {
+        final HttpRequestParser fresh = new HttpRequestParser(1024, 1024);
+        try {
+            fresh.parse(bytes(input));
+            fail("expected status " + status);
+        } catch (final HttpParseException ex) {
+            assertEquals(status, ex.status());
+        }
+    }
+
+    private String body() {
+        final ByteBuffer body = this.parser.request().body();
+        final byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuffer bytes(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+}
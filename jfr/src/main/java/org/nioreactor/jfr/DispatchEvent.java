@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Accepted connection picked up by a worker.
+ */
+@Name("org.nioreactor.Dispatch")
+@Label("Dispatch")
+@Category("nioreactor")
+@Description("Accepted connection picked up by a worker.")
+@StackTrace(false)
+final class DispatchEvent extends Event {
+
+    @Label("Session Id")
+    long sessionId;
+
+    @Label("Remote Address")
+    String remoteAddress;
+
+    @Label("Latency")
+    @Description("Time the connection waited in the worker queue")
+    @Timespan
+    long latency;
+}
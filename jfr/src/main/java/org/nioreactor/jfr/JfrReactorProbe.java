@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.jfr;
+
+import jdk.jfr.EventType;
+import org.nioreactor.ReactorProbe;
+import org.nioreactor.SessionContext;
+
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probe recording reactor events with JDK Flight Recorder, under the {@code nioreactor} category.
+ * <p>
+ * Events are only built while a recording has them enabled. Loop iterations and callbacks are timed as long as the
+ * stall or slow callback events are enabled, and recorded when they exceed the thresholds given here.
+ * <pre>
+ * ServerBuilder.builder(factory).reactorOption(ReactorOption.PROBE, new JfrReactorProbe())...
+ * java -XX:StartFlightRecording=filename=reactor.jfr ...
+ * </pre>
+ */
+public class JfrReactorProbe implements ReactorProbe {
+
+    private static final EventType DISPATCH = EventType.getEventType(DispatchEvent.class);
+    private static final EventType LOOP_STALL = EventType.getEventType(LoopStallEvent.class);
+    private static final EventType SLOW_CALLBACK = EventType.getEventType(SlowCallbackEvent.class);
+
+    private final long loopStallNanos;
+    private final long slowCallbackNanos;
+
+    /**
+     * Creates a probe recording loop iterations over 10ms and callbacks over 1ms.
+     */
+    public JfrReactorProbe() {
+        this(10, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a probe with the given thresholds.
+     *
+     * @param loopStall    the loop iteration duration from which a stall is recorded.
+     * @param slowCallback the listener callback duration from which it is recorded.
+     * @param unit         the time unit of the thresholds.
+     */
+    public JfrReactorProbe(final long loopStall, final long slowCallback, final TimeUnit unit) {
+        if (loopStall < 0 || slowCallback < 0) {
+            throw new IllegalArgumentException("threshold < 0");
+        }
+        this.loopStallNanos = unit.toNanos(loopStall);
+        this.slowCallbackNanos = unit.toNanos(slowCallback);
+    }
+
+    @Override
+    public boolean isTiming() {
+        return DISPATCH.isEnabled() || LOOP_STALL.isEnabled() || SLOW_CALLBACK.isEnabled();
+    }
+
+    @Override
+    public void accepted(final SocketChannel channel, final boolean dispatched) {
+        final AcceptEvent event = new AcceptEvent();
+        if (event.shouldCommit()) {
+            final Socket socket = channel.socket();
+            event.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+            event.localAddress = String.valueOf(socket.getLocalSocketAddress());
+            event.dispatched = dispatched;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void dispatched(final SessionContext session, final long latencyNanos) {
+        final DispatchEvent event = new DispatchEvent();
+        if (event.shouldCommit()) {
+            event.sessionId = session.id();
+            event.remoteAddress = String.valueOf(session.remoteAddress());
+            event.latency = latencyNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void connected(final SessionContext session) {
+        final SessionConnectedEvent event = new SessionConnectedEvent();
+        if (event.shouldCommit()) {
+            event.sessionId = session.id();
+            event.remoteAddress = String.valueOf(session.remoteAddress());
+            event.commit();
+        }
+    }
+
+    @Override
+    public void disconnected(final SessionContext session) {
+        final SessionDisconnectedEvent event = new SessionDisconnectedEvent();
+        if (event.shouldCommit()) {
+            event.sessionId = session.id();
+            event.remoteAddress = String.valueOf(session.remoteAddress());
+            event.commit();
+        }
+    }
+
+    @Override
+    public void loopIteration(final long ioNanos, final long taskNanos, final long sessionNanos, final int readyKeys) {
+        final long durationNanos = ioNanos + taskNanos + sessionNanos;
+        if (durationNanos < this.loopStallNanos) {
+            return;
+        }
+
+        final LoopStallEvent event = new LoopStallEvent();
+        if (event.shouldCommit()) {
+            event.processingTime = durationNanos;
+            event.ioTime = ioNanos;
+            event.taskTime = taskNanos;
+            event.sessionTime = sessionNanos;
+            event.readyKeys = readyKeys;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void callback(final SessionContext session, final String callback, final long durationNanos) {
+        if (durationNanos < this.slowCallbackNanos) {
+            return;
+        }
+
+        final SlowCallbackEvent event = new SlowCallbackEvent();
+        if (event.shouldCommit()) {
+            event.sessionId = session.id();
+            event.callback = callback;
+            event.callbackTime = durationNanos;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Worker loop iteration slower than the probe threshold.
+ */
+@Name("org.nioreactor.LoopStall")
+@Label("Loop Stall")
+@Category("nioreactor")
+@Description("Worker loop iteration slower than the probe threshold.")
+@StackTrace(false)
+final class LoopStallEvent extends Event {
+
+    @Label("Processing Time")
+    @Description("Processing time of the iteration, select excluded")
+    @Timespan
+    long processingTime;
+
+    @Label("I/O Time")
+    @Description("Time spent on ready channels and output flushing")
+    @Timespan
+    long ioTime;
+
+    @Label("Task Time")
+    @Description("Time spent running tasks")
+    @Timespan
+    long taskTime;
+
+    @Label("Session Time")
+    @Description("Time spent cleaning up closed sessions and registering new channels")
+    @Timespan
+    long sessionTime;
+
+    @Label("Ready Keys")
+    int readyKeys;
+}
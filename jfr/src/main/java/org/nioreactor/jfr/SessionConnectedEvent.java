@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Session handed to its listener.
+ */
+@Name("org.nioreactor.SessionConnected")
+@Label("Session Connected")
+@Category("nioreactor")
+@Description("Session handed to its listener.")
+@StackTrace(false)
+final class SessionConnectedEvent extends Event {
+
+    @Label("Session Id")
+    long sessionId;
+
+    @Label("Remote Address")
+    String remoteAddress;
+}
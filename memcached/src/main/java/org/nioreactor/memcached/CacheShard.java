@@ -0,0 +1,798 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Slice of the key space with its own slab pages, index and lock.
+ * <p>
+ * Items are stored off-heap in fixed size chunks taken from 1MB pages, each page being carved for a single slab
+ * class. The index is an open addressing table of chunk handles, so the heap footprint does not depend on item sizes.
+ * When a slab class runs out of chunks and no page is left, an item of the same class is evicted by a CLOCK sweep;
+ * a class without pages takes one over from the class holding the most.
+ * <p>
+ * Item layout: state, key length, value length, key hash, client flags, expiration, cas, key and value bytes.
+ */
+final class CacheShard {
+
+    static final int HEADER_SIZE = 26;
+
+    private static final int STATE = 0;
+    private static final int KEY_LENGTH = 1;
+    private static final int VALUE_LENGTH = 2;
+    private static final int HASH = 6;
+    private static final int FLAGS = 10;
+    private static final int EXPIRES = 14;
+    private static final int CAS = 18;
+
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+    private static final byte PINNED = 4;
+
+    private static final int MIN_TABLE_SIZE = 1024;
+
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final SlabCache cache;
+    private final int index;
+    private final int indexBits;
+    private final SlabClass[] classes;
+
+    // guarded by mainLock
+    private ByteBuffer[] pages = new ByteBuffer[8];
+    private int[] pageClasses = new int[8];
+    private int pageCount = 0;
+    private long[] handles = new long[MIN_TABLE_SIZE];
+    private int[] hashes = new int[MIN_TABLE_SIZE];
+    private int size = 0;
+    private long casSequence = 0;
+    private int flushTime = 0;
+
+    // statistics, guarded by mainLock
+    private long bytes = 0;
+    private long totalItems = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long sets = 0;
+    private long evictions = 0;
+    private long reclaimed = 0;
+
+    CacheShard(final SlabCache cache, final int index, final int indexBits, final int[] chunkSizes) {
+        this.cache = cache;
+        this.index = index;
+        this.indexBits = indexBits;
+        this.classes = new SlabClass[chunkSizes.length];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            this.classes[i] = new SlabClass(chunkSizes[i]);
+        }
+    }
+
+    /**
+     * Copies the item with the given key.
+     *
+     * @return {@code true} if found, {@code false} otherwise.
+     */
+    boolean get(final ByteBuffer src, final int keyOffset, final int keyLength, final int hash, final ItemView item,
+                final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            final int slot = lookup(src, keyOffset, keyLength, hash, now);
+            if (slot < 0) {
+                this.misses++;
+                return false;
+            }
+
+            final long handle = this.handles[slot];
+            final ByteBuffer page = page(handle);
+            final int offset = offset(handle);
+            page.put(offset + STATE, (byte) (page.get(offset + STATE) | REFERENCED));
+
+            final int length = page.getInt(offset + VALUE_LENGTH);
+            item.flags = page.getInt(offset + FLAGS);
+            item.cas = page.getLong(offset + CAS);
+            item.length = length;
+            item.ensureCapacity(length);
+            final ByteBuffer value = page.duplicate();
+            value.position(offset + HEADER_SIZE + keyLength);
+            value.get(item.value, 0, length);
+
+            this.hits++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the value found in {@code src} at {@code dataOffset}, depending on the mode.
+     */
+    Reply store(final StoreMode mode, final ByteBuffer src, final int keyOffset, final int keyLength, final int hash,
+                final int flags, final int expires, final int dataOffset, final int dataLength, final long cas,
+                final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            this.sets++;
+            final int slot = lookup(src, keyOffset, keyLength, hash, now);
+            long existing = slot < 0 ? 0 : this.handles[slot];
+
+            switch (mode) {
+                case ADD:
+                    if (existing != 0) {
+                        reference(existing);
+                        return Reply.NOT_STORED;
+                    }
+                    break;
+                case REPLACE:
+                case APPEND:
+                case PREPEND:
+                    if (existing == 0) {
+                        return Reply.NOT_STORED;
+                    }
+                    break;
+                case CAS:
+                    if (existing == 0) {
+                        return Reply.NOT_FOUND;
+                    }
+                    if (page(existing).getLong(offset(existing) + CAS) != cas) {
+                        return Reply.EXISTS;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            final boolean concat = mode == StoreMode.APPEND || mode == StoreMode.PREPEND;
+            final int existingLength = existing == 0 ? 0 : page(existing).getInt(offset(existing) + VALUE_LENGTH);
+            final int valueLength = concat ? existingLength + dataLength : dataLength;
+            if ((long) HEADER_SIZE + keyLength + valueLength > SlabCache.PAGE_SIZE) {
+                return Reply.TOO_LARGE;
+            }
+
+            final long handle = allocate(HEADER_SIZE + keyLength + valueLength, existing);
+            if (handle == 0) {
+                if (mode == StoreMode.SET && existing != 0) {
+                    // do not leave the stale value behind
+                    unlink(existing);
+                }
+                return Reply.OUT_OF_MEMORY;
+            }
+            if (existing != 0 && !isLinked(existing, src, keyOffset, keyLength, hash, now)) {
+                // pinned items survive allocation, but never read a chunk that may have been reused
+                existing = 0;
+                if (mode != StoreMode.SET) {
+                    free(handle);
+                    return mode == StoreMode.CAS ? Reply.NOT_FOUND : Reply.NOT_STORED;
+                }
+            }
+
+            final ByteBuffer page = page(handle);
+            final int offset = offset(handle);
+            final int valueOffset = offset + HEADER_SIZE + keyLength;
+            if (concat) {
+                final ByteBuffer existingPage = page(existing);
+                final int existingOffset = offset(existing);
+                final int existingValue = existingOffset + HEADER_SIZE + keyLength;
+                writeHeader(page, offset, keyLength, valueLength, hash, existingPage.getInt(existingOffset + FLAGS),
+                        existingPage.getInt(existingOffset + EXPIRES));
+                if (mode == StoreMode.APPEND) {
+                    copy(existingPage, existingValue, page, valueOffset, existingLength);
+                    copy(src, dataOffset, page, valueOffset + existingLength, dataLength);
+                } else {
+                    copy(src, dataOffset, page, valueOffset, dataLength);
+                    copy(existingPage, existingValue, page, valueOffset + dataLength, existingLength);
+                }
+            } else {
+                writeHeader(page, offset, keyLength, valueLength, hash, flags, expires);
+                copy(src, dataOffset, page, valueOffset, dataLength);
+            }
+            copy(src, keyOffset, page, offset + HEADER_SIZE, keyLength);
+
+            if (existing != 0) {
+                // allocation may have moved index entries
+                unlink(existing);
+            }
+            link(hash, handle);
+            return Reply.STORED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the delta to the numeric value of an item, the result being set to {@code item.number}.
+     */
+    Reply arithmetic(final ByteBuffer src, final int keyOffset, final int keyLength, final int hash,
+                     final boolean increment, final long delta, final ItemView item, final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            final int slot = lookup(src, keyOffset, keyLength, hash, now);
+            if (slot < 0) {
+                return Reply.NOT_FOUND;
+            }
+
+            final long existing = this.handles[slot];
+            final ByteBuffer existingPage = page(existing);
+            final int existingOffset = offset(existing);
+            final int existingLength = existingPage.getInt(existingOffset + VALUE_LENGTH);
+            final int existingValue = existingOffset + HEADER_SIZE + keyLength;
+            final long current;
+            try {
+                current = parseUnsigned(existingPage, existingValue, existingLength);
+            } catch (final NumberFormatException ex) {
+                return Reply.NON_NUMERIC;
+            }
+
+            final long result;
+            if (increment) {
+                result = current + delta;
+            } else {
+                result = Long.compareUnsigned(current, delta) < 0 ? 0 : current - delta;
+            }
+            final byte[] digits = Long.toUnsignedString(result).getBytes(StandardCharsets.US_ASCII);
+            item.number = result;
+
+            final int itemSize = HEADER_SIZE + keyLength + digits.length;
+            if (itemSize <= this.classes[this.pageClasses[pageIndex(existing)]].chunkSize) {
+                this.bytes += digits.length - existingLength;
+                existingPage.putInt(existingOffset + VALUE_LENGTH, digits.length);
+                existingPage.putLong(existingOffset + CAS, nextCas());
+                put(existingPage, existingValue, digits);
+                reference(existing);
+                return Reply.STORED;
+            }
+
+            final long handle = allocate(itemSize, existing);
+            if (handle == 0) {
+                return Reply.OUT_OF_MEMORY;
+            }
+            if (!isLinked(existing, src, keyOffset, keyLength, hash, now)) {
+                free(handle);
+                return Reply.NOT_FOUND;
+            }
+            final ByteBuffer page = page(handle);
+            final int offset = offset(handle);
+            writeHeader(page, offset, keyLength, digits.length, hash, existingPage.getInt(existingOffset + FLAGS),
+                    existingPage.getInt(existingOffset + EXPIRES));
+            copy(existingPage, existingOffset + HEADER_SIZE, page, offset + HEADER_SIZE, keyLength);
+            put(page, offset + HEADER_SIZE + keyLength, digits);
+            unlink(existing);
+            link(hash, handle);
+            return Reply.STORED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the expiration of an item.
+     */
+    Reply touch(final ByteBuffer src, final int keyOffset, final int keyLength, final int hash, final int expires,
+                final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            final int slot = lookup(src, keyOffset, keyLength, hash, now);
+            if (slot < 0) {
+                return Reply.NOT_FOUND;
+            }
+
+            final long handle = this.handles[slot];
+            page(handle).putInt(offset(handle) + EXPIRES, expires);
+            reference(handle);
+            return Reply.TOUCHED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an item.
+     */
+    Reply delete(final ByteBuffer src, final int keyOffset, final int keyLength, final int hash, final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            final int slot = lookup(src, keyOffset, keyLength, hash, now);
+            if (slot < 0) {
+                return Reply.NOT_FOUND;
+            }
+
+            final long handle = this.handles[slot];
+            removeSlot(slot);
+            release(handle);
+            return Reply.DELETED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates all the items once {@code time} is reached.
+     */
+    void flush(final int time, final int now) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            if (time <= now) {
+                clear();
+            } else {
+                this.flushTime = time;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the shard statistics to the given counters, in {@link SlabCache#stats()} order.
+     */
+    void stats(final long[] counters) {
+        final ReentrantLock lock = this.mainLock;
+        lock.lock();
+        try {
+            counters[0] += this.size;
+            counters[1] += this.totalItems;
+            counters[2] += this.bytes;
+            counters[3] += (long) this.pageCount * SlabCache.PAGE_SIZE;
+            counters[4] += this.hits;
+            counters[5] += this.misses;
+            counters[6] += this.sets;
+            counters[7] += this.evictions;
+            counters[8] += this.reclaimed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // index
+
+    private int lookup(final ByteBuffer src, final int keyOffset, final int keyLength, final int hash, final int now) {
+        if (this.flushTime != 0 && this.flushTime <= now) {
+            this.flushTime = 0;
+            clear();
+        }
+
+        final long[] table = this.handles;
+        final int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.hashes[slot] == hash && keyEquals(table[slot], src, keyOffset, keyLength)) {
+                final long handle = table[slot];
+                final int expires = page(handle).getInt(offset(handle) + EXPIRES);
+                if (expires != 0 && expires <= now) {
+                    removeSlot(slot);
+                    release(handle);
+                    this.reclaimed++;
+                    return -1;
+                }
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the given item is still the one indexed under its key.
+     */
+    private boolean isLinked(final long handle, final ByteBuffer src, final int keyOffset, final int keyLength,
+                             final int hash, final int now) {
+        final int slot = lookup(src, keyOffset, keyLength, hash, now);
+        return slot >= 0 && this.handles[slot] == handle;
+    }
+
+    private boolean keyEquals(final long handle, final ByteBuffer src, final int keyOffset, final int keyLength) {
+        final ByteBuffer page = page(handle);
+        final int offset = offset(handle);
+        if ((page.get(offset + KEY_LENGTH) & 0xff) != keyLength) {
+            return false;
+        }
+        final int key = offset + HEADER_SIZE;
+        for (int i = 0; i < keyLength; i++) {
+            if (page.get(key + i) != src.get(keyOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void link(final int hash, final long handle) {
+        if ((this.size + 1) * 2 > this.handles.length) {
+            resize(this.handles.length * 2);
+        }
+        insert(this.handles, this.hashes, hash, handle);
+        this.size++;
+        this.totalItems++;
+    }
+
+    private static void insert(final long[] table, final int[] tableHashes, final int hash, final long handle) {
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = handle;
+        tableHashes[slot] = hash;
+    }
+
+    private void resize(final int capacity) {
+        final long[] table = new long[capacity];
+        final int[] tableHashes = new int[capacity];
+        for (int i = 0; i < this.handles.length; i++) {
+            if (this.handles[i] != 0) {
+                insert(table, tableHashes, this.hashes[i], this.handles[i]);
+            }
+        }
+        this.handles = table;
+        this.hashes = tableHashes;
+    }
+
+    /**
+     * Returns the index slot of an item, {@code -1} if the item is not in the index.
+     */
+    private int slotOf(final long handle) {
+        final long[] table = this.handles;
+        final int mask = table.length - 1;
+        for (int slot = page(handle).getInt(offset(handle) + HASH) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == handle) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes an item from the index and releases its chunk.
+     *
+     * @return {@code false} if the item is not in the index, its chunk being left alone.
+     */
+    private boolean unlink(final long handle) {
+        final int slot = slotOf(handle);
+        if (slot < 0) {
+            return false;
+        }
+        removeSlot(slot);
+        release(handle);
+        return true;
+    }
+
+    /**
+     * Backward shift deletion, so lookups never need tombstones.
+     */
+    private void removeSlot(final int removed) {
+        final long[] table = this.handles;
+        final int[] tableHashes = this.hashes;
+        final int mask = table.length - 1;
+        int hole = removed;
+        int slot = removed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (table[slot] == 0) {
+                break;
+            }
+            final int home = tableHashes[slot] & mask;
+            // move the entry back unless its home lies cyclically in (hole, slot]
+            final boolean stays = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!stays) {
+                table[hole] = table[slot];
+                tableHashes[hole] = tableHashes[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+        this.size--;
+    }
+
+    private void clear() {
+        for (int i = 0; i < this.handles.length; i++) {
+            if (this.handles[i] != 0) {
+                release(this.handles[i]);
+            }
+        }
+        if (this.handles.length > MIN_TABLE_SIZE) {
+            this.handles = new long[MIN_TABLE_SIZE];
+            this.hashes = new int[MIN_TABLE_SIZE];
+        } else {
+            Arrays.fill(this.handles, 0);
+        }
+        this.size = 0;
+    }
+
+    // slabs
+
+    /**
+     * Takes a chunk for an item of the given size.
+     *
+     * @param pinned item that must survive the allocation, or {@code 0}.
+     * @return the chunk handle, {@code 0} if no memory could be found.
+     */
+    private long allocate(final int itemSize, final long pinned) {
+        final int classIndex = this.cache.slabClass(itemSize);
+        final SlabClass slabClass = this.classes[classIndex];
+        if (slabClass.freeCount == 0) {
+            // page reassignment evicts too
+            if (pinned != 0) {
+                setState(pinned, PINNED, true);
+            }
+            try {
+                if (!grow(classIndex) && !evict(slabClass)) {
+                    return 0;
+                }
+            } finally {
+                if (pinned != 0) {
+                    setState(pinned, PINNED, false);
+                }
+            }
+        }
+        return slabClass.free[--slabClass.freeCount];
+    }
+
+    /**
+     * Gives back a chunk taken by {@link #allocate} that holds no item yet.
+     */
+    private void free(final long handle) {
+        this.classes[this.pageClasses[pageIndex(handle)]].push(handle);
+    }
+
+    private boolean grow(final int classIndex) {
+        if (this.cache.reservePage()) {
+            if (this.pageCount == this.pages.length) {
+                this.pages = Arrays.copyOf(this.pages, this.pageCount * 2);
+                this.pageClasses = Arrays.copyOf(this.pageClasses, this.pageCount * 2);
+            }
+            this.pages[this.pageCount] = ByteBuffer.allocateDirect(SlabCache.PAGE_SIZE);
+            assign(this.pageCount++, classIndex);
+            return true;
+        }
+        return this.classes[classIndex].pageCount == 0 && reassign(classIndex);
+    }
+
+    private void assign(final int pageIndex, final int classIndex) {
+        this.pageClasses[pageIndex] = classIndex;
+        final SlabClass slabClass = this.classes[classIndex];
+        slabClass.addPage(pageIndex);
+        for (int chunk = slabClass.perPage - 1; chunk >= 0; chunk--) {
+            slabClass.push(handle(pageIndex, chunk * slabClass.chunkSize));
+        }
+    }
+
+    /**
+     * Moves a page from the class holding the most pages, evicting its items.
+     */
+    private boolean reassign(final int classIndex) {
+        SlabClass victim = null;
+        for (int i = 0; i < this.classes.length; i++) {
+            if (i != classIndex && (victim == null || this.classes[i].pageCount > victim.pageCount)) {
+                victim = this.classes[i];
+            }
+        }
+        if (victim == null || victim.pageCount == 0) {
+            return false;
+        }
+
+        for (int i = victim.pageCount - 1; i >= 0; i--) {
+            final int pageIndex = victim.pages[i];
+            if (!isPinned(pageIndex, victim)) {
+                final ByteBuffer page = this.pages[pageIndex];
+                for (int chunk = 0; chunk < victim.perPage; chunk++) {
+                    final int offset = chunk * victim.chunkSize;
+                    if ((page.get(offset + STATE) & USED) != 0) {
+                        unlink(handle(pageIndex, offset));
+                        this.evictions++;
+                    }
+                }
+                victim.removePage(i);
+                assign(pageIndex, classIndex);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPinned(final int pageIndex, final SlabClass slabClass) {
+        final ByteBuffer page = this.pages[pageIndex];
+        for (int chunk = 0; chunk < slabClass.perPage; chunk++) {
+            if ((page.get(chunk * slabClass.chunkSize + STATE) & PINNED) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * CLOCK sweep: referenced items get a second chance, expired items go first.
+     */
+    private boolean evict(final SlabClass slabClass) {
+        final int now = this.cache.now();
+        final int steps = 2 * slabClass.pageCount * slabClass.perPage;
+        for (int step = 0; step < steps; step++) {
+            final int pageIndex = slabClass.pages[slabClass.handPage];
+            final int offset = slabClass.handChunk * slabClass.chunkSize;
+            if (++slabClass.handChunk == slabClass.perPage) {
+                slabClass.handChunk = 0;
+                slabClass.handPage = (slabClass.handPage + 1) % slabClass.pageCount;
+            }
+
+            final ByteBuffer page = this.pages[pageIndex];
+            final byte state = page.get(offset + STATE);
+            if ((state & USED) == 0 || (state & PINNED) != 0) {
+                continue;
+            }
+            final int expires = page.getInt(offset + EXPIRES);
+            if (expires != 0 && expires <= now) {
+                unlink(handle(pageIndex, offset));
+                this.reclaimed++;
+                return true;
+            }
+            if ((state & REFERENCED) != 0) {
+                page.put(offset + STATE, (byte) (state & ~REFERENCED));
+                continue;
+            }
+            unlink(handle(pageIndex, offset));
+            this.evictions++;
+            return true;
+        }
+        return false;
+    }
+
+    private void release(final long handle) {
+        final ByteBuffer page = page(handle);
+        final int offset = offset(handle);
+        this.bytes -= HEADER_SIZE + (page.get(offset + KEY_LENGTH) & 0xff) + page.getInt(offset + VALUE_LENGTH);
+        page.put(offset + STATE, (byte) 0);
+        this.classes[this.pageClasses[pageIndex(handle)]].push(handle);
+    }
+
+    private void writeHeader(final ByteBuffer page, final int offset, final int keyLength, final int valueLength,
+                             final int hash, final int flags, final int expires) {
+        page.put(offset + STATE, USED);
+        page.put(offset + KEY_LENGTH, (byte) keyLength);
+        page.putInt(offset + VALUE_LENGTH, valueLength);
+        page.putInt(offset + HASH, hash);
+        page.putInt(offset + FLAGS, flags);
+        page.putInt(offset + EXPIRES, expires);
+        page.putLong(offset + CAS, nextCas());
+        this.bytes += HEADER_SIZE + keyLength + valueLength;
+    }
+
+    private void reference(final long handle) {
+        setState(handle, REFERENCED, true);
+    }
+
+    private void setState(final long handle, final byte bit, final boolean set) {
+        final ByteBuffer page = page(handle);
+        final int offset = offset(handle);
+        final byte state = page.get(offset + STATE);
+        page.put(offset + STATE, (byte) (set ? state | bit : state & ~bit));
+    }
+
+    private long nextCas() {
+        // the shard index keeps values unique across shards
+        return (++this.casSequence << this.indexBits) | this.index;
+    }
+
+    private ByteBuffer page(final long handle) {
+        return this.pages[pageIndex(handle)];
+    }
+
+    private static long handle(final int pageIndex, final int offset) {
+        return ((long) (pageIndex + 1) << 32) | offset;
+    }
+
+    private static int pageIndex(final long handle) {
+        return (int) (handle >>> 32) - 1;
+    }
+
+    private static int offset(final long handle) {
+        return (int) handle;
+    }
+
+    private static void copy(final ByteBuffer src, final int srcOffset, final ByteBuffer dst, final int dstOffset,
+                             final int length) {
+        final ByteBuffer from = src.duplicate();
+        from.limit(srcOffset + length);
+        from.position(srcOffset);
+        final ByteBuffer to = dst.duplicate();
+        to.clear();
+        to.position(dstOffset);
+        to.put(from);
+    }
+
+    private static void put(final ByteBuffer dst, final int offset, final byte[] src) {
+        for (int i = 0; i < src.length; i++) {
+            dst.put(offset + i, src[i]);
+        }
+    }
+
+    /**
+     * Parses an unsigned 64-bit decimal.
+     *
+     * @throws NumberFormatException if not a number or out of range.
+     */
+    static long parseUnsigned(final ByteBuffer src, final int offset, final int length) {
+        if (length == 0 || length > 20) {
+            throw new NumberFormatException("invalid length: " + length);
+        }
+
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            final int digit = src.get(offset + i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("not a digit at " + i);
+            }
+            // 2^64 - 1 = 18446744073709551615
+            if (Long.compareUnsigned(value, 1844674407370955161L) > 0 || value == 1844674407370955161L && digit > 5) {
+                throw new NumberFormatException("out of range");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Chunks of one size.
+     */
+    private static final class SlabClass {
+
+        private final int chunkSize;
+        private final int perPage;
+        private int[] pages = new int[4];
+        private int pageCount = 0;
+        private long[] free = new long[64];
+        private int freeCount = 0;
+        private int handPage = 0;
+        private int handChunk = 0;
+
+        private SlabClass(final int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.perPage = SlabCache.PAGE_SIZE / chunkSize;
+        }
+
+        private void addPage(final int pageIndex) {
+            if (this.pageCount == this.pages.length) {
+                this.pages = Arrays.copyOf(this.pages, this.pageCount * 2);
+            }
+            this.pages[this.pageCount++] = pageIndex;
+        }
+
+        private void removePage(final int position) {
+            final int pageIndex = this.pages[position];
+            this.pages[position] = this.pages[--this.pageCount];
+            this.handPage = 0;
+            this.handChunk = 0;
+
+            int kept = 0;
+            for (int i = 0; i < this.freeCount; i++) {
+                if (pageIndex(this.free[i]) != pageIndex) {
+                    this.free[kept++] = this.free[i];
+                }
+            }
+            this.freeCount = kept;
+        }
+
+        private void push(final long handle) {
+            if (this.freeCount == this.free.length) {
+                this.free = Arrays.copyOf(this.free, this.freeCount * 2);
+            }
+            this.free[this.freeCount++] = handle;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+/**
+ * Copy of a cached item taken while holding the shard lock. Reused across lookups.
+ */
+final class ItemView {
+
+    int flags;
+    long cas;
+    long number;
+    int length;
+    byte[] value = new byte[1024];
+
+    /**
+     * Makes room for a value of the given length.
+     */
+    void ensureCapacity(final int length) {
+        if (this.value.length < length) {
+            this.value = new byte[Math.max(length, this.value.length * 2)];
+        }
+    }
+}
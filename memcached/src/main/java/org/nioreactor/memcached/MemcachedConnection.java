@@ -0,0 +1,655 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import org.nioreactor.EventKey;
+import org.nioreactor.SessionContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * State of a memcached text protocol connection.
+ * <p>
+ * Commands are parsed in place from the input buffer. Input left over by a read, an incomplete command line or a
+ * data block still arriving, is copied to a buffer owned by the connection until the command completes. As with
+ * the HTTP codec, reading stops while output the socket did not take is pending.
+ */
+final class MemcachedConnection {
+
+    static final int MAX_LINE_LENGTH = 8192;
+    static final int MAX_TOKENS = MAX_LINE_LENGTH / 2 + 1;
+
+    private static final int MAX_KEY_LENGTH = 250;
+    private static final String VERSION = "1.0-nioreactor";
+
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] VALUE = ascii("VALUE ");
+    private static final byte[] STAT = ascii("STAT ");
+
+    private static final byte[] GET = ascii("get");
+    private static final byte[] GETS = ascii("gets");
+    private static final byte[] SET = ascii("set");
+    private static final byte[] ADD = ascii("add");
+    private static final byte[] REPLACE = ascii("replace");
+    private static final byte[] APPEND = ascii("append");
+    private static final byte[] PREPEND = ascii("prepend");
+    private static final byte[] CAS = ascii("cas");
+    private static final byte[] DELETE = ascii("delete");
+    private static final byte[] INCR = ascii("incr");
+    private static final byte[] DECR = ascii("decr");
+    private static final byte[] TOUCH = ascii("touch");
+    private static final byte[] FLUSH_ALL = ascii("flush_all");
+    private static final byte[] STATS = ascii("stats");
+    private static final byte[] VERSION_COMMAND = ascii("version");
+    private static final byte[] VERBOSITY = ascii("verbosity");
+    private static final byte[] QUIT = ascii("quit");
+    private static final byte[] NOREPLY = ascii("noreply");
+
+    private final SessionContext session;
+    private final SlabCache cache;
+    private final MemcachedEventListener.Connections connections;
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+    private final byte[] scratch = new byte[24];
+
+    // set while processing input
+    private ByteBuffer out;
+    private int[] tokens;
+
+    // unprocessed input, in read mode
+    private ByteBuffer partial;
+    // bytes the current command needs from its first byte, 0 if not known yet
+    private int needed;
+    // bytes of a rejected data block still to discard
+    private long skip;
+    private boolean closing;
+
+    MemcachedConnection(final SessionContext session, final SlabCache cache,
+                        final MemcachedEventListener.Connections connections) {
+        this.session = session;
+        this.cache = cache;
+        this.connections = connections;
+    }
+
+    /**
+     * Returns the buffer the next read goes to: the leftover input if any, otherwise the given thread buffer.
+     */
+    ByteBuffer readBuffer(final ByteBuffer threadBuffer) {
+        final ByteBuffer leftover = this.partial;
+        if (leftover == null) {
+            threadBuffer.clear();
+            return threadBuffer;
+        }
+        leftover.compact();
+        return leftover;
+    }
+
+    /**
+     * Executes the commands found in the given input.
+     */
+    void process(final MemcachedEventListener.IoBuffers buffers, final ByteBuffer in) throws IOException {
+        this.out = buffers.output;
+        this.tokens = buffers.tokens;
+        this.out.clear();
+        try {
+            while (in.hasRemaining() && !this.closing && this.pending.isEmpty()) {
+                if (this.skip > 0) {
+                    final int count = (int) Math.min(this.skip, in.remaining());
+                    in.position(in.position() + count);
+                    this.skip -= count;
+                } else if (!command(buffers.item, in)) {
+                    break;
+                }
+            }
+            flush();
+        } finally {
+            this.out = null;
+            this.tokens = null;
+        }
+
+        keep(in);
+        updateInterest();
+    }
+
+    /**
+     * Executes the command at the input position.
+     *
+     * @return {@code false} if the command is not complete yet.
+     */
+    private boolean command(final ItemView item, final ByteBuffer in) throws IOException {
+        final int start = in.position();
+        final int newline = indexOf(in, start, Math.min(in.limit(), start + MAX_LINE_LENGTH), (byte) '\n');
+        if (newline < 0) {
+            if (in.remaining() >= MAX_LINE_LENGTH) {
+                put(Reply.LINE_TOO_LONG.line());
+                this.closing = true;
+            }
+            this.needed = 0;
+            return false;
+        }
+
+        final int end = newline > start && in.get(newline - 1) == '\r' ? newline - 1 : newline;
+        final int count = tokenize(in, start, end);
+        final int next = newline + 1;
+        if (count == 0) {
+            in.position(next);
+            put(Reply.ERROR.line());
+            return true;
+        }
+
+        if (is(in, 0, SET)) {
+            return store(StoreMode.SET, in, count, start, next);
+        } else if (is(in, 0, ADD)) {
+            return store(StoreMode.ADD, in, count, start, next);
+        } else if (is(in, 0, REPLACE)) {
+            return store(StoreMode.REPLACE, in, count, start, next);
+        } else if (is(in, 0, APPEND)) {
+            return store(StoreMode.APPEND, in, count, start, next);
+        } else if (is(in, 0, PREPEND)) {
+            return store(StoreMode.PREPEND, in, count, start, next);
+        } else if (is(in, 0, CAS)) {
+            return store(StoreMode.CAS, in, count, start, next);
+        }
+
+        in.position(next);
+        try {
+            if (is(in, 0, GET)) {
+                get(item, in, count, false);
+            } else if (is(in, 0, GETS)) {
+                get(item, in, count, true);
+            } else if (is(in, 0, DELETE)) {
+                delete(in, count);
+            } else if (is(in, 0, INCR)) {
+                arithmetic(item, in, count, true);
+            } else if (is(in, 0, DECR)) {
+                arithmetic(item, in, count, false);
+            } else if (is(in, 0, TOUCH)) {
+                touch(in, count);
+            } else if (is(in, 0, FLUSH_ALL)) {
+                flushAll(in, count);
+            } else if (is(in, 0, STATS) && count == 1) {
+                stats();
+            } else if (is(in, 0, VERSION_COMMAND) && count == 1) {
+                putAscii("VERSION " + VERSION);
+                put(CRLF);
+            } else if (is(in, 0, VERBOSITY) && count >= 2 && count <= 3) {
+                reply(Reply.OK, noreply(in, count, 3));
+            } else if (is(in, 0, QUIT) && count == 1) {
+                this.closing = true;
+            } else {
+                put(Reply.ERROR.line());
+            }
+        } catch (final NumberFormatException ex) {
+            put(Reply.BAD_FORMAT.line());
+        }
+        return true;
+    }
+
+    /**
+     * {@code <command> <key> <flags> <exptime> <bytes> [<cas unique>] [noreply]} followed by the data block.
+     */
+    private boolean store(final StoreMode mode, final ByteBuffer in, final int count, final int start,
+                          final int next) throws IOException {
+        final int arguments = mode == StoreMode.CAS ? 6 : 5;
+        if (count != arguments && count != arguments + 1) {
+            in.position(next);
+            put(Reply.ERROR.line());
+            return true;
+        }
+
+        final long length;
+        try {
+            length = parse(in, 4);
+        } catch (final NumberFormatException ex) {
+            // the data block cannot be told apart from commands
+            in.position(next);
+            put(Reply.BAD_FORMAT.line());
+            this.closing = true;
+            return true;
+        }
+
+        final int keyLength = length(1);
+        final boolean noreply = noreply(in, count, arguments + 1);
+        final long flags;
+        final long exptime;
+        final long cas;
+        try {
+            flags = parse(in, 2);
+            exptime = parseSigned(in, 3);
+            cas = mode == StoreMode.CAS ? parse(in, 5) : 0;
+            if (keyLength > MAX_KEY_LENGTH || Long.compareUnsigned(flags, 0xffffffffL) > 0) {
+                throw new NumberFormatException("bad key or flags");
+            }
+        } catch (final NumberFormatException ex) {
+            in.position(next);
+            this.skip = length + 2;
+            put(Reply.BAD_FORMAT.line());
+            return true;
+        }
+
+        if (CacheShard.HEADER_SIZE + keyLength + length > SlabCache.PAGE_SIZE) {
+            in.position(next);
+            this.skip = length + 2;
+            put(Reply.TOO_LARGE.line());
+            return true;
+        }
+
+        final int total = next - start + (int) length + 2;
+        if (in.limit() - start < total) {
+            this.needed = total;
+            return false;
+        }
+        this.needed = 0;
+        in.position(start + total);
+
+        final int dataEnd = next + (int) length;
+        if (in.get(dataEnd) != '\r' || in.get(dataEnd + 1) != '\n') {
+            put(Reply.BAD_DATA_CHUNK.line());
+            return true;
+        }
+
+        final int keyOffset = this.tokens[2];
+        final int hash = SlabCache.hash(in, keyOffset, keyLength);
+        final Reply result = this.cache.shard(hash).store(mode, in, keyOffset, keyLength, hash, (int) flags,
+                this.cache.expires(exptime), next, (int) length, cas, this.cache.now());
+        reply(result, noreply);
+        return true;
+    }
+
+    /**
+     * {@code get <key>*} and {@code gets <key>*}.
+     */
+    private void get(final ItemView item, final ByteBuffer in, final int count, final boolean cas) throws IOException {
+        if (count < 2) {
+            put(Reply.ERROR.line());
+            return;
+        }
+
+        final int now = this.cache.now();
+        for (int token = 1; token < count; token++) {
+            final int keyOffset = this.tokens[token * 2];
+            final int keyLength = length(token);
+            if (keyLength > MAX_KEY_LENGTH) {
+                put(Reply.BAD_FORMAT.line());
+                return;
+            }
+
+            final int hash = SlabCache.hash(in, keyOffset, keyLength);
+            if (this.cache.shard(hash).get(in, keyOffset, keyLength, hash, item, now)) {
+                put(VALUE);
+                put(in, keyOffset, keyLength);
+                put((byte) ' ');
+                putDecimal(item.flags & 0xffffffffL);
+                put((byte) ' ');
+                putDecimal(item.length);
+                if (cas) {
+                    put((byte) ' ');
+                    putDecimal(item.cas);
+                }
+                put(CRLF);
+                put(item.value, 0, item.length);
+                put(CRLF);
+            }
+        }
+        put(Reply.END.line());
+    }
+
+    /**
+     * {@code delete <key> [0] [noreply]}.
+     */
+    private void delete(final ByteBuffer in, final int count) throws IOException {
+        final boolean noreply = noreply(in, count, count);
+        final int arguments = noreply ? count - 1 : count;
+        if (arguments < 2 || arguments > 3 || arguments == 3 && parse(in, 2) != 0) {
+            put(Reply.BAD_FORMAT.line());
+            return;
+        }
+
+        final int keyOffset = this.tokens[2];
+        final int keyLength = checkKey(1);
+        final int hash = SlabCache.hash(in, keyOffset, keyLength);
+        reply(this.cache.shard(hash).delete(in, keyOffset, keyLength, hash, this.cache.now()), noreply);
+    }
+
+    /**
+     * {@code incr|decr <key> <value> [noreply]}.
+     */
+    private void arithmetic(final ItemView item, final ByteBuffer in, final int count, final boolean increment)
+            throws IOException {
+        if (count != 3 && count != 4) {
+            put(Reply.ERROR.line());
+            return;
+        }
+
+        final long delta;
+        try {
+            delta = parse(in, 2);
+        } catch (final NumberFormatException ex) {
+            put(Reply.INVALID_DELTA.line());
+            return;
+        }
+
+        final boolean noreply = noreply(in, count, 4);
+        final int keyOffset = this.tokens[2];
+        final int keyLength = checkKey(1);
+        final int hash = SlabCache.hash(in, keyOffset, keyLength);
+        final Reply result = this.cache.shard(hash).arithmetic(in, keyOffset, keyLength, hash, increment, delta,
+                item, this.cache.now());
+        if (noreply) {
+            return;
+        }
+        if (result == Reply.STORED) {
+            putDecimal(item.number);
+            put(CRLF);
+        } else {
+            put(result.line());
+        }
+    }
+
+    /**
+     * {@code touch <key> <exptime> [noreply]}.
+     */
+    private void touch(final ByteBuffer in, final int count) throws IOException {
+        if (count != 3 && count != 4) {
+            put(Reply.ERROR.line());
+            return;
+        }
+
+        final boolean noreply = noreply(in, count, 4);
+        final int keyOffset = this.tokens[2];
+        final int keyLength = checkKey(1);
+        final int hash = SlabCache.hash(in, keyOffset, keyLength);
+        final int expires = this.cache.expires(parseSigned(in, 2));
+        reply(this.cache.shard(hash).touch(in, keyOffset, keyLength, hash, expires, this.cache.now()), noreply);
+    }
+
+    /**
+     * {@code flush_all [delay] [noreply]}.
+     */
+    private void flushAll(final ByteBuffer in, final int count) throws IOException {
+        final boolean noreply = noreply(in, count, count);
+        final int arguments = noreply ? count - 1 : count;
+        if (arguments > 2) {
+            put(Reply.ERROR.line());
+            return;
+        }
+
+        final long delay = arguments == 2 ? parseSigned(in, 1) : 0;
+        this.cache.flush((int) Math.min(Integer.MAX_VALUE, delay));
+        reply(Reply.OK, noreply);
+    }
+
+    private void stats() throws IOException {
+        stat("uptime", this.cache.uptime());
+        stat("time", System.currentTimeMillis() / 1000);
+        putAscii("STAT version " + VERSION);
+        put(CRLF);
+        stat("curr_connections", this.connections.current.get());
+        stat("total_connections", this.connections.total.get());
+        for (final Map.Entry<String, Long> stat : this.cache.stats().entrySet()) {
+            stat(stat.getKey(), stat.getValue());
+        }
+        put(Reply.END.line());
+    }
+
+    private void stat(final String name, final long value) throws IOException {
+        put(STAT);
+        putAscii(name);
+        put((byte) ' ');
+        putDecimal(value);
+        put(CRLF);
+    }
+
+    private void reply(final Reply reply, final boolean noreply) throws IOException {
+        if (!noreply) {
+            put(reply.line());
+        }
+    }
+
+    // tokens
+
+    private int tokenize(final ByteBuffer in, final int start, final int end) {
+        final int[] bounds = this.tokens;
+        int count = 0;
+        int position = start;
+        while (position < end) {
+            while (position < end && in.get(position) == ' ') {
+                position++;
+            }
+            if (position == end) {
+                break;
+            }
+            bounds[count * 2] = position;
+            while (position < end && in.get(position) != ' ') {
+                position++;
+            }
+            bounds[count * 2 + 1] = position;
+            count++;
+        }
+        return count;
+    }
+
+    private int length(final int token) {
+        return this.tokens[token * 2 + 1] - this.tokens[token * 2];
+    }
+
+    private int checkKey(final int token) {
+        final int length = length(token);
+        if (length > MAX_KEY_LENGTH) {
+            throw new NumberFormatException("key too long");
+        }
+        return length;
+    }
+
+    private boolean is(final ByteBuffer in, final int token, final byte[] word) {
+        final int offset = this.tokens[token * 2];
+        if (length(token) != word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (in.get(offset + i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks for {@code noreply} as the last token, at the given position.
+     */
+    private boolean noreply(final ByteBuffer in, final int count, final int position) {
+        return count == position && is(in, count - 1, NOREPLY);
+    }
+
+    private long parse(final ByteBuffer in, final int token) {
+        return CacheShard.parseUnsigned(in, this.tokens[token * 2], length(token));
+    }
+
+    private long parseSigned(final ByteBuffer in, final int token) {
+        final int offset = this.tokens[token * 2];
+        if (length(token) > 1 && in.get(offset) == '-') {
+            final long value = CacheShard.parseUnsigned(in, offset + 1, length(token) - 1);
+            if (value < 0) {
+                throw new NumberFormatException("out of range");
+            }
+            return -value;
+        }
+        final long value = parse(in, token);
+        if (value < 0) {
+            throw new NumberFormatException("out of range");
+        }
+        return value;
+    }
+
+    private static int indexOf(final ByteBuffer in, final int from, final int to, final byte value) {
+        for (int i = from; i < to; i++) {
+            if (in.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // input and output
+
+    /**
+     * Keeps the unprocessed input for the next read.
+     */
+    private void keep(final ByteBuffer in) {
+        if (!in.hasRemaining() || this.closing) {
+            this.partial = null;
+            return;
+        }
+
+        final int required = Math.max(this.needed, in.remaining() + MAX_LINE_LENGTH);
+        if (in == this.partial && in.capacity() >= required) {
+            return;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(required);
+        copy.put(in);
+        copy.flip();
+        this.partial = copy;
+    }
+
+    /**
+     * Writes the output left by previous calls.
+     */
+    void flushPending(final MemcachedEventListener.IoBuffers buffers) throws IOException {
+        ByteBuffer data;
+        while ((data = this.pending.peek()) != null) {
+            this.session.channel().write(data);
+            if (data.hasRemaining()) {
+                return;
+            }
+            this.pending.poll();
+        }
+
+        final ByteBuffer in = this.partial;
+        if (in != null && !this.closing) {
+            process(buffers, in);
+        } else {
+            updateInterest();
+        }
+    }
+
+    private void updateInterest() {
+        if (!this.pending.isEmpty()) {
+            this.session.interestEvent(EventKey.WRITE);
+        } else if (this.closing) {
+            this.session.close();
+        } else {
+            this.session.interestEvent(EventKey.READ);
+        }
+    }
+
+    private void put(final byte value) throws IOException {
+        if (this.out.hasRemaining() && this.pending.isEmpty()) {
+            this.out.put(value);
+        } else {
+            this.scratch[0] = value;
+            put(this.scratch, 0, 1);
+        }
+    }
+
+    private void put(final byte[] src) throws IOException {
+        put(src, 0, src.length);
+    }
+
+    private void put(final byte[] src, final int offset, final int length) throws IOException {
+        if (this.out.remaining() >= length && this.pending.isEmpty()) {
+            this.out.put(src, offset, length);
+        } else {
+            put(ByteBuffer.wrap(src, offset, length));
+        }
+    }
+
+    private void put(final ByteBuffer src, final int offset, final int length) throws IOException {
+        final ByteBuffer slice = src.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        put(slice);
+    }
+
+    private void put(final ByteBuffer src) throws IOException {
+        final ByteBuffer output = this.out;
+        while (src.hasRemaining()) {
+            if (!this.pending.isEmpty()) {
+                this.pending.add(copy(src));
+                return;
+            }
+            if (!output.hasRemaining()) {
+                flush();
+                continue;
+            }
+
+            final int count = Math.min(src.remaining(), output.remaining());
+            final int limit = src.limit();
+            src.limit(src.position() + count);
+            output.put(src);
+            src.limit(limit);
+        }
+    }
+
+    private void putAscii(final String value) throws IOException {
+        put(ascii(value));
+    }
+
+    private void putDecimal(final long value) throws IOException {
+        if (value < 0) {
+            putAscii(Long.toUnsignedString(value));
+            return;
+        }
+
+        final byte[] bytes = this.scratch;
+        int position = bytes.length;
+        long remaining = value;
+        do {
+            bytes[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        put(bytes, position, bytes.length - position);
+    }
+
+    private void flush() throws IOException {
+        final ByteBuffer output = this.out;
+        output.flip();
+        if (this.pending.isEmpty()) {
+            while (output.hasRemaining() && this.session.channel().write(output) > 0) {
+                // keep writing while the socket takes it
+            }
+        }
+        if (output.hasRemaining()) {
+            this.pending.add(copy(output));
+        }
+        output.clear();
+    }
+
+    private static ByteBuffer copy(final ByteBuffer src) {
+        final ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+        copy.put(src);
+        copy.flip();
+        return copy;
+    }
+
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import org.nioreactor.AttributeKey;
+import org.nioreactor.EventKey;
+import org.nioreactor.EventListener;
+import org.nioreactor.EventListenerFactory;
+import org.nioreactor.SessionContext;
+import org.nioreactor.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event listener serving the memcached text protocol from a {@link SlabCache}.
+ * <p>
+ * Reads and writes go through direct buffers owned by the thread running the callbacks, normally the worker, so
+ * idle connections hold no buffers.
+ */
+public class MemcachedEventListener implements EventListener {
+
+    private static final Logger LOG = Logger.getLogger(MemcachedEventListener.class.getName());
+
+    private static final AttributeKey<MemcachedConnection> CONNECTION =
+            new AttributeKey<>("MemcachedEventListener.CONNECTION", MemcachedConnection.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<IoBuffers> BUFFERS = ThreadLocal.withInitial(IoBuffers::new);
+
+    private final SlabCache cache;
+    private final Connections connections;
+
+    MemcachedEventListener(final SlabCache cache, final Connections connections) {
+        this.cache = cache;
+        this.connections = connections;
+    }
+
+    /**
+     * Creates a listener factory.
+     *
+     * @param cache the cache to serve.
+     * @return the event listener factory.
+     */
+    public static EventListenerFactory factory(final SlabCache cache) {
+        Preconditions.checkNotNull(cache, "cache is null");
+        final Connections connections = new Connections();
+        return () -> new MemcachedEventListener(cache, connections);
+    }
+
+    @Override
+    public void connected(final SessionContext session) {
+        this.connections.current.incrementAndGet();
+        this.connections.total.incrementAndGet();
+        session.putAttribute(CONNECTION, new MemcachedConnection(session, this.cache, this.connections));
+        session.interestEvent(EventKey.READ);
+    }
+
+    @Override
+    public void inputReady(final SessionContext session) {
+        final MemcachedConnection connection = session.getAttribute(CONNECTION);
+        final IoBuffers buffers = BUFFERS.get();
+        try {
+            final ByteBuffer in = connection.readBuffer(buffers.input);
+            if (session.channel().read(in) < 0) {
+                session.close();
+                return;
+            }
+            in.flip();
+            connection.process(buffers, in);
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "I/O error", ex);
+            session.close();
+        }
+    }
+
+    @Override
+    public void outputReady(final SessionContext session) {
+        try {
+            session.getAttribute(CONNECTION).flushPending(BUFFERS.get());
+        } catch (final IOException ex) {
+            LOG.log(Level.FINE, "I/O error", ex);
+            session.close();
+        }
+    }
+
+    @Override
+    public void disconnected(final SessionContext session) {
+        if (session.removeAttribute(CONNECTION) != null) {
+            this.connections.current.decrementAndGet();
+        }
+    }
+
+    /**
+     * Connection counters shared by the listeners of a server.
+     */
+    static final class Connections {
+
+        final AtomicInteger current = new AtomicInteger(0);
+        final AtomicLong total = new AtomicLong(0);
+    }
+
+    /**
+     * Buffers reused by all the connections handled on a thread.
+     */
+    static final class IoBuffers {
+
+        final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final int[] tokens = new int[MemcachedConnection.MAX_TOKENS * 2];
+        final ItemView item = new ItemView();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import org.nioreactor.ServerBuilder;
+import org.nioreactor.ServerPromise;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Memcached server.
+ * <p>
+ * Usage: {@code MemcachedServer [port] [memory in MB] [workers]}, defaults to port 11211, 64MB and one worker per
+ * available processor.
+ */
+public final class MemcachedServer {
+
+    private final static Logger LOG = Logger.getLogger(MemcachedServer.class.getName());
+
+    private static final int DEFAULT_PORT = 11211;
+    private static final long DEFAULT_MEMORY = 64;
+
+    private MemcachedServer() {
+    }
+
+    public static void main(final String[] args) {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final long memory = (args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MEMORY) << 20;
+        final int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        try {
+            final SlabCache cache = new SlabCache(memory, workers);
+            final ServerPromise server = ServerBuilder.builder(MemcachedEventListener.factory(cache))
+                    .workers(workers)
+                    .bind(port);
+            LOG.info("Server started on port " + port + ". Press any key to shutdown...");
+            System.in.read();
+            server.shutdown();
+        } catch (final IOException e) {
+            LOG.log(Level.SEVERE, "I/O error: ", e);
+        }
+    }
+}
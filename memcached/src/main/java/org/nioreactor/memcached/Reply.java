@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response lines of the text protocol.
+ */
+enum Reply {
+
+    STORED("STORED"),
+    NOT_STORED("NOT_STORED"),
+    EXISTS("EXISTS"),
+    NOT_FOUND("NOT_FOUND"),
+    DELETED("DELETED"),
+    TOUCHED("TOUCHED"),
+    OK("OK"),
+    END("END"),
+    ERROR("ERROR"),
+    NON_NUMERIC("CLIENT_ERROR cannot increment or decrement non-numeric value"),
+    INVALID_DELTA("CLIENT_ERROR invalid numeric delta argument"),
+    BAD_FORMAT("CLIENT_ERROR bad command line format"),
+    BAD_DATA_CHUNK("CLIENT_ERROR bad data chunk"),
+    LINE_TOO_LONG("CLIENT_ERROR line too long"),
+    TOO_LARGE("SERVER_ERROR object too large for cache"),
+    OUT_OF_MEMORY("SERVER_ERROR out of memory storing object");
+
+    private final byte[] line;
+
+    Reply(final String line) {
+        this.line = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the response line, including the line terminator.
+     *
+     * @return the encoded line, not to be modified.
+     */
+    byte[] line() {
+        return this.line;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import org.nioreactor.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap cache storing items in slab allocated chunks.
+ * <p>
+ * Keys are spread over shards, each one with its own pages, index and lock, so workers serving different keys do
+ * not contend. Pages are allocated on demand until the memory limit is reached, then items are evicted.
+ */
+public final class SlabCache {
+
+    /**
+     * Size of a slab page, also the largest item (header, key and value) the cache can hold.
+     */
+    public static final int PAGE_SIZE = 1 << 20;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final int CHUNK_ALIGNMENT = 8;
+
+    // exptime values above it are absolute unix times
+    private static final long MAX_RELATIVE_EXPTIME = TimeUnit.DAYS.toSeconds(30);
+
+    private final long maxBytes;
+    private final int[] chunkSizes;
+    private final CacheShard[] shards;
+    private final int shardBits;
+    private final AtomicInteger freePages;
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * Creates a cache with one shard per available processor, matching the default worker count.
+     *
+     * @param maxBytes the memory limit of the item pages.
+     */
+    public SlabCache(final long maxBytes) {
+        this(maxBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes the memory limit of the item pages.
+     * @param shards   the number of shards, rounded up to a power of two.
+     */
+    public SlabCache(final long maxBytes, final int shards) {
+        Preconditions.checkArgument(maxBytes >= PAGE_SIZE, "max bytes < " + PAGE_SIZE);
+        Preconditions.checkArgument(shards > 0 && shards <= 1 << 16, "shards out of range");
+
+        this.maxBytes = maxBytes;
+        this.chunkSizes = chunkSizes();
+        this.freePages = new AtomicInteger((int) Math.min(Integer.MAX_VALUE, maxBytes / PAGE_SIZE));
+
+        this.shardBits = 32 - Integer.numberOfLeadingZeros(shards - 1);
+        this.shards = new CacheShard[1 << this.shardBits];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new CacheShard(this, i, this.shardBits, this.chunkSizes);
+        }
+    }
+
+    private static int[] chunkSizes() {
+        final List<Integer> sizes = new ArrayList<>();
+        int size = MIN_CHUNK_SIZE;
+        while (size <= PAGE_SIZE / 2) {
+            sizes.add(size);
+            size = (int) (size * GROWTH_FACTOR);
+            size = (size + CHUNK_ALIGNMENT - 1) & -CHUNK_ALIGNMENT;
+        }
+        sizes.add(PAGE_SIZE);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the memory limit.
+     *
+     * @return the limit in bytes.
+     */
+    public long maxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Returns the cache statistics, named as in the memcached {@code stats} command.
+     *
+     * @return the statistics.
+     */
+    public Map<String, Long> stats() {
+        final long[] counters = new long[9];
+        for (final CacheShard shard : this.shards) {
+            shard.stats(counters);
+        }
+
+        final Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("curr_items", counters[0]);
+        stats.put("total_items", counters[1]);
+        stats.put("bytes", counters[2]);
+        stats.put("total_malloced", counters[3]);
+        stats.put("limit_maxbytes", this.maxBytes);
+        stats.put("cmd_get", counters[4] + counters[5]);
+        stats.put("cmd_set", counters[6]);
+        stats.put("get_hits", counters[4]);
+        stats.put("get_misses", counters[5]);
+        stats.put("evictions", counters[7]);
+        stats.put("reclaimed", counters[8]);
+        return stats;
+    }
+
+    /**
+     * Invalidates all the items, after the given delay in seconds.
+     */
+    void flush(final int delay) {
+        final int now = now();
+        for (final CacheShard shard : this.shards) {
+            shard.flush(delay <= 0 ? now : now + delay, now);
+        }
+    }
+
+    CacheShard shard(final int hash) {
+        return this.shards[(hash * 0x9E3779B9) >>> (32 - this.shardBits) & (this.shards.length - 1)];
+    }
+
+    /**
+     * Returns the index of the smallest slab class holding items of the given size.
+     */
+    int slabClass(final int itemSize) {
+        final int index = Arrays.binarySearch(this.chunkSizes, itemSize);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Takes a page from the memory budget.
+     *
+     * @return {@code true} if within the limit, {@code false} otherwise.
+     */
+    boolean reservePage() {
+        int pages;
+        do {
+            pages = this.freePages.get();
+            if (pages == 0) {
+                return false;
+            }
+        } while (!this.freePages.compareAndSet(pages, pages - 1));
+        return true;
+    }
+
+    /**
+     * Returns the current time in seconds since the cache was created, starting at {@code 1} so {@code 0} can mean
+     * "never".
+     */
+    int now() {
+        return (int) ((System.currentTimeMillis() - this.startMillis) / 1000) + 1;
+    }
+
+    long uptime() {
+        return (System.currentTimeMillis() - this.startMillis) / 1000;
+    }
+
+    /**
+     * Converts a protocol expiration time, either relative seconds or an absolute unix time, to cache time.
+     *
+     * @return the expiration, {@code 0} for never.
+     */
+    int expires(final long exptime) {
+        if (exptime == 0) {
+            return 0;
+        }
+        if (exptime < 0) {
+            // already expired
+            return 1;
+        }
+
+        final long expires = exptime <= MAX_RELATIVE_EXPTIME
+                ? now() + exptime
+                : exptime - this.startMillis / 1000 + 1;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, expires));
+    }
+
+    /**
+     * Hashes a key, FNV-1a followed by the murmur3 finalizer.
+     */
+    static int hash(final ByteBuffer src, final int offset, final int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            hash ^= src.get(offset + i);
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 Pedro Ribeiro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nioreactor.memcached;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheShardTest {
+
+    private final SlabCache cache = new SlabCache(SlabCache.PAGE_SIZE, 1);
+
+    @Test(timeout = 5000)
+    public void replacingItemDoesNotReassignItsPage() {
+        // fill the only page with small items
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(Reply.STORED, set("key" + i, 8));
+        }
+
+        // a larger item needs the page holding the item it replaces
+        assertEquals(Reply.OUT_OF_MEMORY, set("key19999", 5000));
+        assertFalse(get("key19999"));
+        assertTrue(get("key19998"));
+    }
+
+    @Test(timeout = 5000)
+    public void newItemTakesPageOverFromOtherClass() {
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(Reply.STORED, set("key" + i, 8));
+        }
+
+        assertEquals(Reply.STORED, set("large", 5000));
+        assertTrue(get("large"));
+        assertFalse(get("key19999"));
+    }
+
+    private Reply set(final String key, final int valueLength) {
+        final byte[] bytes = key.getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer src = ByteBuffer.allocate(bytes.length + valueLength);
+        src.put(bytes);
+        final int hash = SlabCache.hash(src, 0, bytes.length);
+        return this.cache.shard(hash).store(StoreMode.SET, src, 0, bytes.length, hash, 0, 0, bytes.length,
+                valueLength, 0, this.cache.now());
+    }
+
+    private boolean get(final String key) {
+        final ByteBuffer src = ByteBuffer.wrap(key.getBytes(StandardCharsets.US_ASCII));
+        final int hash = SlabCache.hash(src, 0, src.remaining());
+        return this.cache.shard(hash).get(src, 0, src.remaining(), hash, new ItemView(), this.cache.now());
+    }
+}